@@ -0,0 +1,101 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the ProGuard argument list for many injars and libraryjars, and reading the input files back from it
+ * as the up-to-date check does. The mojo's private helpers are called reflectively.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentsBenchmark {
+
+	@Param({ "100", "1000" })
+	int jars;
+
+	private List<File> files;
+
+	private ProGuardMojo mojo;
+
+	private Method buildJarReference;
+
+	private Method fileToString;
+
+	private List<String> args;
+
+	@Setup
+	public void setUp() throws Exception {
+		files = new ArrayList<File>();
+		for (int i = 0; i < jars; i++) {
+			files.add(new File("/home/build/.m2/repository/org/example/group" + (i % 40) + "/library-" + i
+					+ "/1.0/library with space-" + i + ".jar"));
+		}
+		mojo = new ProGuardMojo();
+		buildJarReference = ProGuardMojo.class.getDeclaredMethod("buildJarReference", File.class, String.class);
+		buildJarReference.setAccessible(true);
+		fileToString = ProGuardMojo.class.getDeclaredMethod("fileToString", File.class);
+		fileToString.setAccessible(true);
+		args = arguments();
+	}
+
+	@Benchmark
+	public int jarReferences() throws Exception {
+		int length = 0;
+		for (File file : files) {
+			length += ((String) buildJarReference.invoke(mojo, file, "!**.txt,!META-INF/**")).length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public List<String> arguments() throws Exception {
+		List<String> arguments = new ArrayList<String>();
+		for (int i = 0; i < files.size(); i++) {
+			arguments.add(i % 3 == 0 ? "-injars" : "-libraryjars");
+			arguments.add((String) fileToString.invoke(mojo, files.get(i)));
+		}
+		arguments.add("-printmapping");
+		arguments.add("proguard_map.txt");
+		return arguments;
+	}
+
+	@Benchmark
+	public List<File> inputFiles() throws IOException {
+		return ProGuardArgs.files(args, ProGuardArgs.INPUT_OPTIONS, new File("/home/build/project"));
+	}
+}
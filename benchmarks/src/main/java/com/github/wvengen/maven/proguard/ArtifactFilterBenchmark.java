@@ -0,0 +1,113 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching the exclusions and inclusions of a build against its dependency graph: every filter against every
+ * artifact (as the mojo originally did for each exclusion check), the indexed {@link ArtifactMatcher} and the full
+ * artifact classification.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArtifactFilterBenchmark {
+
+	@Param({ "1000", "10000" })
+	int artifacts;
+
+	private List<Artifact> graph;
+
+	private List<Exclusion> exclusions;
+
+	private ArtifactMatcher<Exclusion> exclusionMatcher;
+
+	private ArtifactMatcher<Inclusion> inclusionMatcher;
+
+	@Setup
+	public void setUp() {
+		graph = Fixtures.artifacts(artifacts);
+		exclusions = new ArrayList<Exclusion>();
+		for (int i = 0; i < 10; i++) {
+			exclusions.add(Fixtures.filter(new Exclusion(), "org.example.group" + (i * 7), "library-" + (i * 31)));
+			exclusions.add(Fixtures.filter(new Exclusion(), "org.example.group" + (i * 13 + 1), "*"));
+		}
+		for (int i = 0; i < 5; i++) {
+			exclusions.add(Fixtures.filter(new Exclusion(), "org.example.group" + i, "library-" + i + "[0-9]+"));
+			exclusions.add(Fixtures.filter(new Exclusion(), "org.example.group" + (i + 5) + "?", "*"));
+		}
+		exclusionMatcher = new ArtifactMatcher<Exclusion>(exclusions);
+		List<Inclusion> inclusions = new ArrayList<Inclusion>();
+		inclusions.add(Fixtures.filter(new Inclusion(), "org.example.group0", "*"));
+		inclusions.add(Fixtures.filter(new Inclusion(), "org.example.group2", "library-2.*"));
+		inclusionMatcher = new ArtifactMatcher<Inclusion>(inclusions);
+	}
+
+	@Benchmark
+	public int filterEveryExclusion() {
+		int excluded = 0;
+		for (Artifact artifact : graph) {
+			for (Exclusion exclusion : exclusions) {
+				if (exclusion.match(artifact)) {
+					excluded++;
+					break;
+				}
+			}
+		}
+		return excluded;
+	}
+
+	@Benchmark
+	public int matcher() {
+		int excluded = 0;
+		for (Artifact artifact : graph) {
+			if (exclusionMatcher.matches(artifact)) {
+				excluded++;
+			}
+		}
+		return excluded;
+	}
+
+	@Benchmark
+	public ArtifactClassification classify() {
+		return ArtifactClassification.classify(graph, inclusionMatcher, exclusionMatcher, true, false);
+	}
+
+	@Benchmark
+	public ArtifactClassification classifyWithoutFilters() {
+		return ArtifactClassification.classify(graph, new ArtifactMatcher<Inclusion>(Collections.<Inclusion> emptyList()),
+				new ArtifactMatcher<Exclusion>(Collections.<Exclusion> emptyList()), true, false);
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deleting deep directory trees such as an expanded WAR: {@link FileOperations#delete(File)} on the calling thread
+ * against {@link FileCleaner#delete(File)}, which the mojo uses and which only renames the tree before deleting it
+ * in the background. Every iteration deletes one freshly created tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class DeleteBenchmark {
+
+	/** Fan-out 4 and 4 files per directory: depth 5 has 341 directories, depth 7 has 5461 */
+	@Param({ "5", "7" })
+	int depth;
+
+	private File root;
+
+	private File tree;
+
+	private FileCleaner cleaner;
+
+	@Setup
+	public void setUp() throws Exception {
+		root = Fixtures.tempDir("delete-benchmark");
+		cleaner = FileCleaner.forTrash(new File(root, "trash"));
+	}
+
+	@Setup(Level.Iteration)
+	public void createTree() throws IOException {
+		tree = new File(root, "tree");
+		Fixtures.tree(tree, depth, 4, 4);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		cleaner.awaitIdle();
+		Fixtures.delete(root);
+	}
+
+	@Benchmark
+	public File cleanerDelete() throws IOException {
+		cleaner.delete(tree);
+		return tree;
+	}
+
+	@Benchmark
+	public File fileOperationsDelete() throws IOException {
+		FileOperations.delete(tree);
+		return tree;
+	}
+}
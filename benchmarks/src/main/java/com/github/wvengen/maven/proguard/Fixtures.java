@@ -0,0 +1,142 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * Synthetic, deterministic inputs of the benchmarks: dependency graphs, WARs and directory trees.
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Returns artifacts spread over groups the way large projects are: a few big groups and many small ones.
+	 */
+	static List<Artifact> artifacts(int count) {
+		Random random = new Random(count);
+		DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+		List<Artifact> artifacts = new ArrayList<Artifact>(count);
+		for (int i = 0; i < count; i++) {
+			int group = (int) Math.abs(random.nextGaussian() * count / 20);
+			String classifier = i % 25 == 0 ? "tests" : null;
+			String scope = i % 10 == 0 ? Artifact.SCOPE_RUNTIME : i % 17 == 0 ? Artifact.SCOPE_TEST
+					: Artifact.SCOPE_COMPILE;
+			DefaultArtifact artifact = new DefaultArtifact("org.example.group" + group, "library-" + i,
+					VersionRange.createFromVersion("1." + (i % 7) + ".0"), scope, "jar", classifier, handler);
+			artifact.setFile(new File("/repository/org/example/group" + group + "/library-" + i + ".jar"));
+			artifacts.add(artifact);
+		}
+		return artifacts;
+	}
+
+	static <T extends ArtifactFilter> T filter(T filter, String groupId, String artifactId) {
+		filter.groupId = groupId;
+		filter.artifactId = artifactId;
+		return filter;
+	}
+
+	/**
+	 * Writes a WAR with the given number of classes in WEB-INF/classes and libraries in WEB-INF/lib, named like
+	 * maven-war-plugin names them.
+	 */
+	static File war(File dir, int classes, List<Artifact> libraries) throws IOException {
+		File war = new File(dir, "app-" + classes + "-" + libraries.size() + ".war");
+		byte[] classFile = classFile(2048);
+		byte[] jar = jar(20);
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+		try {
+			out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+			out.write("Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+			for (int i = 0; i < classes; i++) {
+				out.putNextEntry(new ZipEntry("WEB-INF/classes/com/example/p" + (i % 50) + "/C" + i + ".class"));
+				out.write(classFile);
+			}
+			for (Artifact library : libraries) {
+				out.putNextEntry(new ZipEntry(WarArchive.LIB + library.getArtifactId() + "-" + library.getVersion()
+						+ (library.getClassifier() != null ? "-" + library.getClassifier() : "") + ".jar"));
+				out.write(jar);
+			}
+		} finally {
+			out.close();
+		}
+		return war;
+	}
+
+	private static byte[] jar(int classes) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		byte[] classFile = classFile(1024);
+		for (int i = 0; i < classes; i++) {
+			out.putNextEntry(new ZipEntry("lib/C" + i + ".class"));
+			out.write(classFile);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns bytes that compress about as well as class files do.
+	 */
+	private static byte[] classFile(int size) {
+		Random random = new Random(size);
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : 'a' + random.nextInt(8));
+		}
+		return data;
+	}
+
+	/**
+	 * Creates a directory tree with the given depth and fan-out, with files on every level.
+	 */
+	static void tree(File dir, int depth, int fanOut, int filesPerDir) throws IOException {
+		if (!dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Can't create " + dir);
+		}
+		for (int i = 0; i < filesPerDir; i++) {
+			Files.write(new File(dir, "f" + i + ".class").toPath(), new byte[128]);
+		}
+		if (depth > 1) {
+			for (int i = 0; i < fanOut; i++) {
+				tree(new File(dir, "d" + i), depth - 1, fanOut, filesPerDir);
+			}
+		}
+	}
+
+	static File tempDir(String prefix) throws IOException {
+		return Files.createTempDirectory(prefix).toFile();
+	}
+
+	static void delete(File file) throws IOException {
+		FileOperations.delete(file);
+	}
+}
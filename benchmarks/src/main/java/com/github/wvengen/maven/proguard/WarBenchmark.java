@@ -0,0 +1,116 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * WAR handling on generated WARs: opening and indexing WEB-INF/lib, resolving every dependency to its jar in
+ * WEB-INF/lib (what getClasspathElement does for each artifact) and extracting WEB-INF/classes, which replaced
+ * unzipping the whole WAR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarBenchmark {
+
+	@Param({ "100", "1000" })
+	int libraries;
+
+	@Param({ "2000", "20000" })
+	int classes;
+
+	private File dir;
+
+	private File war;
+
+	private List<Artifact> artifacts;
+
+	private WarArchive archive;
+
+	private File classesDir;
+
+	@Setup
+	public void setUp() throws IOException {
+		dir = Fixtures.tempDir("war-benchmark");
+		artifacts = Fixtures.artifacts(libraries);
+		war = Fixtures.war(dir, classes, artifacts);
+		archive = new WarArchive(war, new File(dir, "resolve"), new SystemStreamLog());
+		archive.getLibraryIndex().prepare(artifacts);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		archive.close();
+		Fixtures.delete(dir);
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteClasses() throws IOException {
+		if (classesDir != null) {
+			Fixtures.delete(classesDir);
+			classesDir = null;
+		}
+	}
+
+	@Benchmark
+	public int openAndIndex() throws IOException {
+		WarArchive opened = new WarArchive(war, new File(dir, "open"), new SystemStreamLog());
+		try {
+			return opened.getLibraryNames().size();
+		} finally {
+			opened.close();
+		}
+	}
+
+	@Benchmark
+	public int resolveLibraries() throws IOException {
+		int found = 0;
+		for (Artifact artifact : artifacts) {
+			if (archive.getLibraryIndex().find(artifact) != null) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int extractClasses() throws IOException {
+		classesDir = new File(dir, "classes");
+		return archive.extractClasses(classesDir);
+	}
+}
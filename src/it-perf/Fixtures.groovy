@@ -0,0 +1,208 @@
+/*
+ * Generates the inputs of the performance tests: valid class files, dependency jars with resources in a file
+ * repository, and application classes in target/classes. Everything is deterministic and written locally.
+ */
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class Fixtures {
+
+    static final String GROUP = "perf.fixtures"
+
+    static final String VERSION = "1.0"
+
+    /** Sizes at scale 1 */
+    static final int APP_CLASSES = 20000
+
+    static final int DEPENDENCIES = 500
+
+    static final int CLASSES_PER_DEPENDENCY = 40
+
+    static final int RESOURCE_KB_PER_DEPENDENCY = 560
+
+    /**
+     * Prepares a test project before its build: the repository and the application classes of every module, "."
+     * being a single-module project.
+     *
+     * @param variables the script variables of the invoker plugin
+     */
+    static void setup(File basedir, File localRepository, Map variables, List<String> modules) {
+        double scale = Double.parseDouble((String) variables.scale)
+        repository(new File((String) variables.fixturesDir, "repo"), localRepository, scale)
+        int classes = (int) (scaled(APP_CLASSES, scale) / modules.size())
+        modules.each { String module ->
+            appClasses(new File(basedir, module + "/target/classes"), module == "." ? "app" : module.replace("-", ""),
+                    classes, scale)
+        }
+    }
+
+    static int scaled(int count, double scale) {
+        Math.max(1, (int) Math.round(count * scale))
+    }
+
+    /**
+     * Writes the dependency jars and a pom artifact depending on all of them (perf.fixtures:deps:1.0:pom) to the
+     * repository directory, unless they exist for this scale. Stale copies are removed from the local repository.
+     */
+    static void repository(File repo, File localRepository, double scale) {
+        File marker = new File(repo, "scale.txt")
+        if (marker.isFile() && marker.text == Double.toString(scale)) {
+            return
+        }
+        repo.deleteDir()
+        new File(localRepository, GROUP.replace('.', '/')).deleteDir()
+        int count = scaled(DEPENDENCIES, scale)
+        Random random = new Random(42)
+        byte[] resource = new byte[RESOURCE_KB_PER_DEPENDENCY * 1024]
+        StringBuilder dependencies = new StringBuilder()
+        for (int d = 0; d < count; d++) {
+            String artifactId = "dep-" + d
+            File dir = artifactDir(repo, artifactId)
+            Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>()
+            for (int c = 0; c < CLASSES_PER_DEPENDENCY; c++) {
+                String name = "perf/lib/d" + d + "/L" + c
+                entries.put(name + ".class", classFile(name, c + 1 < CLASSES_PER_DEPENDENCY
+                        ? ["perf/lib/d" + d + "/L" + (c + 1)] : [], 8))
+            }
+            random.nextBytes(resource)
+            entries.put("perf/lib/d" + d + "/data.bin", resource)
+            jar(new File(dir, artifactId + "-" + VERSION + ".jar"), entries)
+            new File(dir, artifactId + "-" + VERSION + ".pom").text = pom(artifactId, "jar", "")
+            dependencies.append("<dependency><groupId>" + GROUP + "</groupId><artifactId>" + artifactId
+                    + "</artifactId><version>" + VERSION + "</version></dependency>\n")
+        }
+        new File(artifactDir(repo, "deps"), "deps-" + VERSION + ".pom").text = pom("deps", "pom",
+                "<dependencies>\n" + dependencies + "</dependencies>\n")
+        marker.text = Double.toString(scale)
+    }
+
+    /**
+     * Writes application classes to the classes directory: a call tree rooted at perf.app.p0.C0 in which every
+     * fifth subtree is unreachable, so shrinking has work to do, and calls into the dependency classes.
+     */
+    static void appClasses(File classesDir, String prefix, int count, double scale) {
+        int dependencies = scaled(DEPENDENCIES, scale)
+        for (int i = 0; i < count; i++) {
+            List<String> callees = []
+            if (i % 5 != 4) {
+                [2 * i + 1, 2 * i + 2].each { if (it < count) callees << appClass(prefix, it) }
+            }
+            callees << "perf/lib/d" + (i % dependencies) + "/L" + (i % CLASSES_PER_DEPENDENCY)
+            File file = new File(classesDir, appClass(prefix, i) + ".class")
+            file.parentFile.mkdirs()
+            file.bytes = classFile(appClass(prefix, i), callees, 12)
+        }
+    }
+
+    static String appClass(String prefix, int i) {
+        "perf/" + prefix + "/p" + (i % 100) + "/C" + i
+    }
+
+    private static File artifactDir(File repo, String artifactId) {
+        File dir = new File(repo, GROUP.replace('.', '/') + "/" + artifactId + "/" + VERSION)
+        dir.mkdirs()
+        dir
+    }
+
+    private static String pom(String artifactId, String packaging, String body) {
+        """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>${GROUP}</groupId>
+  <artifactId>${artifactId}</artifactId>
+  <version>${VERSION}</version>
+  <packaging>${packaging}</packaging>
+${body}</project>
+"""
+    }
+
+    private static void jar(File file, Map<String, byte[]> entries) {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))
+        try {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"))
+            out.write("Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"))
+            entries.each { String name, byte[] data ->
+                ZipEntry entry = new ZipEntry(name)
+                if (name.endsWith(".bin")) {
+                    // random data does not compress, jars store such resources
+                    CRC32 crc = new CRC32()
+                    crc.update(data)
+                    entry.method = ZipEntry.STORED
+                    entry.size = data.length
+                    entry.compressedSize = data.length
+                    entry.crc = crc.value
+                }
+                out.putNextEntry(entry)
+                out.write(data)
+            }
+        } finally {
+            out.close()
+        }
+    }
+
+    /**
+     * Returns a Java 5 class file (no stack maps needed) with a constructor, a static run() method that calls run()
+     * of the callees, and the given number of empty instance methods.
+     */
+    static byte[] classFile(String name, List<String> callees, int methods) {
+        List<Object[]> pool = []
+        Map<String, Integer> utf8 = [:]
+        def add = { Object[] entry -> pool << entry; pool.size() }
+        def text = { String s -> utf8.containsKey(s) ? utf8[s] : (utf8[s] = add([1, s] as Object[])) }
+        int thisClass = add([7, text(name)] as Object[])
+        int superClass = add([7, text("java/lang/Object")] as Object[])
+        int init = text("<init>")
+        int voidDesc = text("()V")
+        int superInit = add([10, superClass, add([12, init, voidDesc] as Object[])] as Object[])
+        int code = text("Code")
+        int run = text("run")
+        int runType = add([12, run, voidDesc] as Object[])
+        List<Integer> calls = callees.collect { add([10, add([7, text(it)] as Object[]), runType] as Object[]) }
+        List<Integer> names = (0..<methods).collect { text("m" + it) }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        DataOutputStream out = new DataOutputStream(bytes)
+        out.writeInt((int) 0xCAFEBABEL)
+        out.writeShort(0)
+        out.writeShort(49)
+        out.writeShort(pool.size() + 1)
+        pool.each { Object[] entry ->
+            out.writeByte((int) entry[0])
+            if (entry[0] == 1) {
+                out.writeUTF((String) entry[1])
+            } else {
+                entry[1..-1].each { out.writeShort((int) it) }
+            }
+        }
+        out.writeShort(0x21)
+        out.writeShort(thisClass)
+        out.writeShort(superClass)
+        out.writeShort(0)
+        out.writeShort(0)
+        out.writeShort(2 + methods)
+        def method = { int access, int nameIndex, int maxStack, int maxLocals, byte[] body ->
+            out.writeShort(access)
+            out.writeShort(nameIndex)
+            out.writeShort(voidDesc)
+            out.writeShort(1)
+            out.writeShort(code)
+            out.writeInt(12 + body.length)
+            out.writeShort(maxStack)
+            out.writeShort(maxLocals)
+            out.writeInt(body.length)
+            out.write(body)
+            out.writeShort(0)
+            out.writeShort(0)
+        }
+        method(0x1, init, 1, 1, [0x2a, 0xb7, superInit >> 8, superInit & 0xff, 0xb1] as byte[])
+        ByteArrayOutputStream runBody = new ByteArrayOutputStream()
+        calls.each { runBody.write(0xb8); runBody.write(it >> 8); runBody.write(it & 0xff) }
+        runBody.write(0xb1)
+        method(0x9, run, 0, 0, runBody.toByteArray())
+        names.each { method(0x1, it, 0, 1, [0xb1] as byte[]) }
+        out.writeShort(0)
+        out.flush()
+        bytes.toByteArray()
+    }
+}
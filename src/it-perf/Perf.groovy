@@ -0,0 +1,138 @@
+/*
+ * Measures a performance test build and compares it with the baseline: wall time of the build, peak RSS of the
+ * Maven JVM and of the forked ProGuard JVMs (from the proguard-metrics.json files the plugin writes) and the
+ * high-water mark of the disk the build uses on top of its inputs (sampled while the build runs).
+ */
+import groovy.json.JsonSlurper
+
+class Perf {
+
+    static final String METRICS = "proguard-metrics.json"
+
+    static final long MB = 1024 * 1024
+
+    /**
+     * Starts sampling the disk usage below the project directory, called before the build.
+     */
+    static void start(File basedir, String name) {
+        long initial = size(basedir)
+        File result = new File(basedir, "perf-disk.txt")
+        Thread sampler = new Thread("it-perf-" + name) {
+            void run() {
+                long peak = initial
+                try {
+                    while (!interrupted()) {
+                        peak = Math.max(peak, size(basedir))
+                        sleep(1000)
+                    }
+                } catch (InterruptedException e) {
+                    // stopped by finish()
+                }
+                peak = Math.max(peak, size(basedir))
+                result.text = Long.toString(peak - initial)
+            }
+        }
+        sampler.daemon = true
+        sampler.start()
+    }
+
+    /**
+     * Stops the disk sampler, records the metrics of the build and fails when one of them regresses beyond the
+     * baseline times the tolerance.
+     *
+     * @param variables the script variables of the invoker plugin: baseline, tolerance, updateBaseline, scale and
+     *        results, the file all measurements are appended to
+     */
+    static void finish(File basedir, String name, Map variables) {
+        Thread sampler = Thread.getAllStackTraces().keySet().find { it.name == "it-perf-" + name }
+        if (sampler != null) {
+            sampler.interrupt()
+            sampler.join()
+        }
+
+        Map<String, Long> measured = new LinkedHashMap<String, Long>()
+        measured.wallSeconds = (long) Math.ceil(wallSeconds(new File(basedir, "build.log")))
+        long mavenRss = 0
+        long forkRss = 0
+        int executions = 0
+        basedir.eachFileRecurse { File file ->
+            if (file.name == METRICS) {
+                def jvm = new JsonSlurper().parse(file).jvm
+                mavenRss = Math.max(mavenRss, (long) jvm.mavenPeakRss)
+                forkRss = Math.max(forkRss, (long) jvm.forkPeakRss)
+                executions++
+            }
+        }
+        if (executions == 0) {
+            throw new AssertionError("No " + METRICS + " below " + basedir)
+        }
+        measured.mavenRssMb = (mavenRss + MB - 1) / MB as long
+        measured.forkRssMb = (forkRss + MB - 1) / MB as long
+        File disk = new File(basedir, "perf-disk.txt")
+        measured.diskMb = disk.isFile() ? (Long.parseLong(disk.text) + MB - 1) / MB as long : 0
+
+        println "[it-perf] " + name + ": " + measured.collect { it.key + "=" + it.value }.join(", ")
+        File results = new File((String) variables.results)
+        results.parentFile.mkdirs()
+        results << measured.collect { name + "." + it.key + "=" + it.value + "\n" }.join("")
+
+        File baselineFile = new File((String) variables.baseline)
+        Properties baseline = new Properties()
+        if (baselineFile.isFile()) {
+            baselineFile.withInputStream { baseline.load(it) }
+        }
+        double scale = Double.parseDouble((String) variables.scale)
+        if (Boolean.parseBoolean((String) variables.updateBaseline)) {
+            baseline.setProperty("scale", Double.toString(scale))
+            measured.each { baseline.setProperty(name + "." + it.key, it.value.toString()) }
+            baselineFile.withOutputStream { baseline.store(it, "Performance test baseline, see src/it-perf/README.md") }
+            return
+        }
+        if (Double.parseDouble(baseline.getProperty("scale", "1.0")) != scale) {
+            println "[it-perf] " + name + ": baseline is for another scale, not compared"
+            return
+        }
+        double tolerance = Double.parseDouble((String) variables.tolerance)
+        List<String> regressions = []
+        measured.each { String metric, Long value ->
+            String limit = baseline.getProperty(name + "." + metric)
+            if (limit != null && value > Long.parseLong(limit) * tolerance) {
+                regressions << metric + " " + value + " > " + limit + " * " + tolerance
+            }
+        }
+        if (!regressions.isEmpty()) {
+            throw new AssertionError(name + " regressed: " + regressions.join(", "))
+        }
+    }
+
+    /**
+     * Returns the "Total time" Maven logs at the end of the build, e.g. "12.345 s", "01:02 min" or "01:02 h".
+     */
+    static double wallSeconds(File buildLog) {
+        def matcher = buildLog.text =~ /Total time:\s+(?:(\d+):)?(\d+(?:\.\d+)?) (s|min|h)/
+        if (!matcher.find()) {
+            throw new AssertionError("No total time in " + buildLog)
+        }
+        double first = matcher.group(1) != null ? Double.parseDouble(matcher.group(1)) : 0
+        double second = Double.parseDouble(matcher.group(2))
+        switch (matcher.group(3)) {
+            case "min": return first * 60 + second
+            case "h": return first * 3600 + second * 60
+            default: return second
+        }
+    }
+
+    static long size(File file) {
+        if (!file.isDirectory()) {
+            return file.length()
+        }
+        long total = 0
+        File[] files = file.listFiles()
+        if (files != null) {
+            for (File child : files) {
+                total += size(child)
+            }
+        }
+        total
+    }
+}
@@ -0,0 +1,4 @@
+// implicit script variables: File basedir, File localRepositoryPath; itPerfDir and the others from the profile
+def load = { String name -> new GroovyClassLoader(getClass().classLoader).parseClass(new File(itPerfDir, name)) }
+load("Fixtures.groovy").setup(basedir, localRepositoryPath, binding.variables, ["."])
+load("Perf.groovy").start(basedir, "assembly")
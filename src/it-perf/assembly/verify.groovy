@@ -0,0 +1,4 @@
+// implicit script variables: File basedir; itPerfDir and the others from the profile
+def perf = new GroovyClassLoader(getClass().classLoader).parseClass(new File(itPerfDir, "Perf.groovy"))
+assert new File(basedir, "target/assembly-1.0-small.jar").isFile()
+perf.finish(basedir, "assembly", binding.variables)
@@ -0,0 +1,4 @@
+// implicit script variables: File basedir, File localRepositoryPath; itPerfDir and the others from the profile
+def load = { String name -> new GroovyClassLoader(getClass().classLoader).parseClass(new File(itPerfDir, name)) }
+load("Fixtures.groovy").setup(basedir, localRepositoryPath, binding.variables, ["module-a", "module-b", "module-c", "module-d"])
+load("Perf.groovy").start(basedir, "reactor")
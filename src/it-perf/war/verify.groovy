@@ -0,0 +1,5 @@
+// implicit script variables: File basedir; itPerfDir and the others from the profile
+def perf = new GroovyClassLoader(getClass().classLoader).parseClass(new File(itPerfDir, "Perf.groovy"))
+assert new File(basedir, "target/proguard_map.txt").isFile()
+assert new File(basedir, "target/war-1.0.war").isFile()
+perf.finish(basedir, "war", binding.variables)
@@ -0,0 +1,194 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Puts every project artifact into exactly one {@link Role}, in a single pass over the artifacts, and remembers
+ * which rule decided it. Argument building and the assembly step both read from it.
+ */
+final class ArtifactClassification {
+
+	enum Role {
+		/** processed by ProGuard */
+		INJAR,
+		/** only used by ProGuard to resolve references */
+		LIBRARY,
+		/** library that the assembly step merges into the output jar */
+		ASSEMBLY_MERGE,
+		/** not passed to ProGuard at all */
+		EXCLUDED
+	}
+
+	static final class Entry {
+
+		private final Artifact artifact;
+
+		private final Inclusion inclusion;
+
+		private final int order;
+
+		private Role role;
+
+		private String rule;
+
+		Entry(Artifact artifact, Inclusion inclusion, int order, Role role, String rule) {
+			this.artifact = artifact;
+			this.inclusion = inclusion;
+			this.order = order;
+			this.role = role;
+			this.rule = rule;
+		}
+
+		Artifact getArtifact() {
+			return artifact;
+		}
+
+		/**
+		 * @return the assembly inclusion that matched the artifact, or null
+		 */
+		Inclusion getInclusion() {
+			return inclusion;
+		}
+
+		Role getRole() {
+			return role;
+		}
+
+		String getRule() {
+			return rule;
+		}
+
+		/**
+		 * Changes the role for a reason only known once the artifact file has been located.
+		 */
+		void reclassify(Role role, String rule) {
+			this.role = role;
+			this.rule = rule;
+		}
+	}
+
+	private static final List<String> CLASSPATH_SCOPES = Arrays.asList(Artifact.SCOPE_COMPILE,
+			Artifact.SCOPE_PROVIDED, Artifact.SCOPE_SYSTEM);
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	private final List<Inclusion> unmatchedInclusions = new ArrayList<Inclusion>();
+
+	private ArtifactClassification() {
+	}
+
+	/**
+	 * Classifies the artifacts. An artifact matched by an assembly inclusion becomes an injar (or an assembly merge
+	 * for library inclusions), other compile class path artifacts become libraries or injars depending on
+	 * includeDependency, includeDependencyInjar and the exclusions.
+	 */
+	static ArtifactClassification classify(Collection<Artifact> artifacts, ArtifactMatcher<Inclusion> inclusions,
+			ArtifactMatcher<Exclusion> exclusions, boolean includeDependency, boolean includeDependencyInjar) {
+		ArtifactClassification classification = new ArtifactClassification();
+		List<Inclusion> declared = inclusions.getFilters();
+		boolean[] matched = new boolean[declared.size()];
+		for (Artifact artifact : artifacts) {
+			Entry entry;
+			List<Integer> matches = inclusions.matchingIndexes(artifact);
+			for (Integer index : matches) {
+				matched[index] = true;
+			}
+			if (!matches.isEmpty()) {
+				int index = matches.get(0);
+				Inclusion inclusion = declared.get(index);
+				entry = new Entry(artifact, inclusion, index, inclusion.library ? Role.ASSEMBLY_MERGE : Role.INJAR,
+						"inclusion " + inclusion);
+			} else if (!artifact.getArtifactHandler().isAddedToClasspath()
+					|| !CLASSPATH_SCOPES.contains(artifact.getScope())) {
+				entry = new Entry(artifact, null, Integer.MAX_VALUE, Role.EXCLUDED, "scope " + artifact.getScope());
+			} else if (!includeDependency) {
+				entry = new Entry(artifact, null, Integer.MAX_VALUE, Role.EXCLUDED, "includeDependency=false");
+			} else {
+				Exclusion exclusion = exclusions.firstMatch(artifact);
+				if (exclusion != null) {
+					entry = new Entry(artifact, null, Integer.MAX_VALUE, Role.EXCLUDED, "exclusion " + exclusion);
+				} else if (includeDependencyInjar) {
+					entry = new Entry(artifact, null, Integer.MAX_VALUE, Role.INJAR, "includeDependencyInjar");
+				} else {
+					entry = new Entry(artifact, null, Integer.MAX_VALUE, Role.LIBRARY, "compile dependency");
+				}
+			}
+			classification.entries.add(entry);
+		}
+		for (int i = 0; i < matched.length; i++) {
+			if (!matched[i]) {
+				classification.unmatchedInclusions.add(declared.get(i));
+			}
+		}
+		return classification;
+	}
+
+	/**
+	 * Returns the entries with the given role, artifacts matched by inclusions first in declaration order of the
+	 * inclusions, all others in project order.
+	 */
+	List<Entry> getEntries(Role role) {
+		List<Entry> result = new ArrayList<Entry>();
+		for (Entry entry : entries) {
+			if (entry.role == role) {
+				result.add(entry);
+			}
+		}
+		Collections.sort(result, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the assembly inclusions that did not match any artifact. An inclusion that only matches artifacts
+	 * claimed by earlier inclusions did match and is not reported.
+	 */
+	List<Inclusion> getUnmatchedInclusions() {
+		return unmatchedInclusions;
+	}
+
+	/**
+	 * Returns a human readable table of all artifacts, their role and the rule that decided it.
+	 */
+	String report() {
+		StringBuilder report = new StringBuilder();
+		for (Role role : Role.values()) {
+			List<Entry> roleEntries = getEntries(role);
+			report.append(role).append(" (").append(roleEntries.size()).append(")\n");
+			for (Entry entry : roleEntries) {
+				Artifact artifact = entry.artifact;
+				report.append("  ").append(artifact.getGroupId()).append(':').append(artifact.getArtifactId())
+						.append(':').append(artifact.getVersion());
+				if (artifact.getClassifier() != null) {
+					report.append(':').append(artifact.getClassifier());
+				}
+				report.append(" <- ").append(entry.rule).append('\n');
+			}
+		}
+		return report.toString();
+	}
+}
@@ -22,7 +22,6 @@ package com.github.wvengen.maven.proguard;
 
 import org.apache.maven.artifact.Artifact;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -30,31 +29,151 @@ public class ArtifactFilter {
 
     private static final String WILDCARD = "*";
 
+    private static final String REGEX_CHARS = "\\.[]{}()*+?^$|";
+
     protected String groupId;
 
     protected String artifactId;
 
     protected String classifier;
 
+    /**
+     * Patterns compiled for the current field values, see {@link #compile()}.
+     */
+    private transient volatile Compiled compiled;
+
     public boolean match(Artifact artifact) {
-        boolean artifactMatch = WILDCARD.equals(artifactId) || artifact.getArtifactId().equals(this.artifactId) ||
-                (artifactId != null && getMatcher(artifact).matches());
-        boolean groupMatch = artifact.getGroupId().equals(this.groupId);
-        boolean classifierMatch = ((this.classifier == null) && (artifact.getClassifier() == null)) || ((this.classifier != null) && this.classifier.equals(artifact.getClassifier()));
-        return artifactMatch && groupMatch && classifierMatch;
+        Compiled c = compile();
+        return c.artifactMatch(artifact.getArtifactId()) && c.groupMatch(artifact.getGroupId())
+                && c.classifierMatch(artifact.getClassifier());
+    }
+
+    /**
+     * Returns the compiled form of this filter, compiling it on first use (or after a field changed).
+     * <p>
+     * artifactId is '*', the artifactId itself or a regular expression (an invalid one only matches literally),
+     * groupId and classifier are taken literally unless they contain the glob wildcards '*' or '?'. A classifier of
+     * '*' also matches artifacts without classifier.
+     * </p>
+     */
+    Compiled compile() {
+        Compiled c = compiled;
+        if (c == null || !c.isFor(this)) {
+            c = new Compiled(this);
+            compiled = c;
+        }
+        return c;
+    }
+
+    /**
+     * Whether artifactId may also match as a regular expression, so it can't be looked up by a plain string comparison.
+     */
+    boolean isArtifactIdPattern() {
+        return artifactId != null && !WILDCARD.equals(artifactId) && containsAny(artifactId, REGEX_CHARS);
+    }
+
+    /**
+     * Whether groupId contains glob wildcards.
+     */
+    boolean isGroupIdPattern() {
+        return groupId != null && containsAny(groupId, "*?");
+    }
+
+    private static boolean containsAny(String value, String chars) {
+        for (int i = 0; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private Matcher getMatcher(Artifact artifact) {
-        try {
-            Pattern compile = Pattern.compile(artifactId);
-            return compile.matcher(artifact.getArtifactId());
-        } catch (PatternSyntaxException e) {
-            throw new IllegalArgumentException("Invalid regex artifact filter: " + this, e);
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
         }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
     }
 
     @Override
     public String toString() {
         return "groupId:" + groupId + ", artifactId:" + artifactId + ", classifier:" + classifier;
     }
+
+    /**
+     * Immutable, precompiled form of a filter. Literal values are compared with equals, only patterns go through
+     * a regular expression.
+     */
+    static final class Compiled {
+
+        private final String groupId;
+
+        private final String artifactId;
+
+        private final String classifier;
+
+        private final Pattern groupPattern;
+
+        private final Pattern artifactPattern;
+
+        private final Pattern classifierPattern;
+
+        Compiled(ArtifactFilter filter) {
+            this.groupId = filter.groupId;
+            this.artifactId = filter.artifactId;
+            this.classifier = filter.classifier;
+            this.groupPattern = filter.isGroupIdPattern() ? globToPattern(groupId) : null;
+            this.classifierPattern = (classifier != null && !WILDCARD.equals(classifier) && containsAny(classifier, "*?"))
+                    ? globToPattern(classifier) : null;
+            Pattern pattern = null;
+            if (filter.isArtifactIdPattern()) {
+                try {
+                    pattern = Pattern.compile(artifactId);
+                } catch (PatternSyntaxException e) {
+                    // e.g. c++-lib, which can still match literally
+                }
+            }
+            this.artifactPattern = pattern;
+        }
+
+        private boolean isFor(ArtifactFilter filter) {
+            return groupId == filter.groupId && artifactId == filter.artifactId && classifier == filter.classifier;
+        }
+
+        boolean groupMatch(String value) {
+            return groupPattern != null ? groupPattern.matcher(value).matches() : value.equals(groupId);
+        }
+
+        boolean artifactMatch(String value) {
+            return WILDCARD.equals(artifactId) || value.equals(artifactId)
+                    || (artifactPattern != null && artifactPattern.matcher(value).matches());
+        }
+
+        boolean classifierMatch(String value) {
+            if (classifier == null) {
+                return value == null;
+            }
+            if (WILDCARD.equals(classifier)) {
+                return true;
+            }
+            if (classifierPattern != null) {
+                return value != null && classifierPattern.matcher(value).matches();
+            }
+            return classifier.equals(value);
+        }
+    }
 }
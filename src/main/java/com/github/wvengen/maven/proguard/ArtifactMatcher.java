@@ -0,0 +1,134 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable matcher over a list of filters, compiled once per execution.
+ * <p>
+ * Filters with a literal groupId and a literal (or '*') artifactId are found through hash lookups, only filters
+ * that actually use a pattern are tried one by one. When several filters match, the one declared first wins, just
+ * as when the filters are tried in order.
+ * </p>
+ */
+final class ArtifactMatcher<T extends ArtifactFilter> {
+
+	private static final String WILDCARD = "*";
+
+	private final List<T> filters;
+
+	/** groupId -> artifactId (or '*') -> indexes of filters */
+	private final Map<String, Map<String, List<Integer>>> literals = new HashMap<String, Map<String, List<Integer>>>();
+
+	private final List<Integer> patterns = new ArrayList<Integer>();
+
+	ArtifactMatcher(List<T> filters) {
+		this.filters = filters == null ? Collections.<T>emptyList() : new ArrayList<T>(filters);
+		for (int i = 0; i < this.filters.size(); i++) {
+			T filter = this.filters.get(i);
+			filter.compile();
+			if (filter.groupId == null || filter.artifactId == null) {
+				// can't match anything, as before
+				continue;
+			}
+			if (filter.isGroupIdPattern() || filter.isArtifactIdPattern()) {
+				patterns.add(i);
+			} else {
+				Map<String, List<Integer>> byArtifactId = literals.get(filter.groupId);
+				if (byArtifactId == null) {
+					byArtifactId = new HashMap<String, List<Integer>>();
+					literals.put(filter.groupId, byArtifactId);
+				}
+				List<Integer> indexes = byArtifactId.get(filter.artifactId);
+				if (indexes == null) {
+					indexes = new ArrayList<Integer>(1);
+					byArtifactId.put(filter.artifactId, indexes);
+				}
+				indexes.add(i);
+			}
+		}
+	}
+
+	List<T> getFilters() {
+		return Collections.unmodifiableList(filters);
+	}
+
+	/**
+	 * Returns the first declared filter matching the artifact, or null.
+	 */
+	T firstMatch(Artifact artifact) {
+		int best = Integer.MAX_VALUE;
+		Map<String, List<Integer>> byArtifactId = literals.get(artifact.getGroupId());
+		if (byArtifactId != null) {
+			best = first(byArtifactId.get(artifact.getArtifactId()), artifact, best);
+			best = first(byArtifactId.get(WILDCARD), artifact, best);
+		}
+		best = first(patterns, artifact, best);
+		return best == Integer.MAX_VALUE ? null : filters.get(best);
+	}
+
+	/**
+	 * Returns the indexes of all filters matching the artifact in declaration order, the first one is the index of
+	 * {@link #firstMatch(Artifact)}.
+	 */
+	List<Integer> matchingIndexes(Artifact artifact) {
+		List<Integer> result = new ArrayList<Integer>(1);
+		Map<String, List<Integer>> byArtifactId = literals.get(artifact.getGroupId());
+		if (byArtifactId != null) {
+			all(byArtifactId.get(artifact.getArtifactId()), artifact, result);
+			all(byArtifactId.get(WILDCARD), artifact, result);
+		}
+		all(patterns, artifact, result);
+		Collections.sort(result);
+		return result;
+	}
+
+	boolean matches(Artifact artifact) {
+		return firstMatch(artifact) != null;
+	}
+
+	private int first(List<Integer> indexes, Artifact artifact, int best) {
+		if (indexes == null) {
+			return best;
+		}
+		for (Integer index : indexes) {
+			if (index >= best) {
+				break;
+			}
+			if (filters.get(index).match(artifact)) {
+				return index;
+			}
+		}
+		return best;
+	}
+
+	private void all(List<Integer> indexes, Artifact artifact, List<Integer> result) {
+		if (indexes == null) {
+			return;
+		}
+		for (Integer index : indexes) {
+			if (filters.get(index).match(artifact)) {
+				result.add(index);
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Machine-wide cache of ProGuard outputs, addressed by the fingerprint of the run (see {@link UpToDateCheck}).
+ * <p>
+ * Every entry is an {@link OutputSnapshot}. Entries are assembled in a private temporary directory and moved into
+ * place with a single rename, so concurrent builds only ever see complete entries; when two builds store the same
+ * key the first one wins. Hits refresh the modification time of the entry, which drives least-recently-used
+ * eviction once the cache grows beyond its maximum size. Evicted entries are renamed away before they are
+ * deleted, so a concurrent reader either restores them completely or not at all.
+ * </p>
+ */
+class BuildCache {
+
+	private static final String TMP_DIR = "tmp";
+
+	private final File directory;
+
+	private final long maxSize;
+
+	BuildCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	private File entry(String key) {
+		return new File(new File(directory, key.substring(0, 2)), key);
+	}
+
+	/**
+	 * Restores the outputs stored under the given key.
+	 *
+	 * @return false on a cache miss
+	 */
+	boolean restore(String key, List<File> outputs) throws IOException {
+		File entry = entry(key);
+		if (!entry.isDirectory()) {
+			return false;
+		}
+		try {
+			if (!OutputSnapshot.restore(entry, outputs)) {
+				// a file of the entry was modified through one of its links, drop it so it can be stored again
+				remove(entry);
+				return false;
+			}
+		} catch (IOException e) {
+			// evicted by a concurrent build while we were reading it
+			return false;
+		}
+		entry.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Stores the outputs under the given key and evicts old entries if the cache became too large.
+	 */
+	void store(String key, List<File> outputs) throws IOException {
+		File entry = entry(key);
+		if (entry.isDirectory()) {
+			return;
+		}
+		File tmp = new File(new File(directory, TMP_DIR), UUID.randomUUID().toString());
+		try {
+			OutputSnapshot.save(tmp, outputs, new Properties());
+			if (!entry.getParentFile().isDirectory() && !entry.getParentFile().mkdirs()
+					&& !entry.getParentFile().isDirectory()) {
+				throw new IOException("Can't create " + entry.getParentFile());
+			}
+			try {
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				throw new IOException("Cache directory " + directory + " does not support atomic renames", e);
+			} catch (IOException e) {
+				if (!entry.isDirectory()) {
+					throw e;
+				}
+				// stored concurrently by another build
+			}
+		} finally {
+			FileOperations.delete(tmp);
+		}
+		evict();
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache fits into its maximum size.
+	 */
+	void evict() throws IOException {
+		List<File> entries = new ArrayList<File>();
+		long size = 0;
+		File[] prefixes = directory.listFiles();
+		if (prefixes == null) {
+			return;
+		}
+		for (File prefix : prefixes) {
+			File[] files = prefix.listFiles();
+			if (TMP_DIR.equals(prefix.getName()) || files == null) {
+				continue;
+			}
+			for (File file : files) {
+				Properties info = OutputSnapshot.read(file);
+				if (info != null) {
+					entries.add(file);
+					size += Long.parseLong(info.getProperty("size", "0"));
+				}
+			}
+		}
+		if (size <= maxSize) {
+			return;
+		}
+		final Map<File, Long> lastUsed = new HashMap<File, Long>();
+		for (File file : entries) {
+			lastUsed.put(file, file.lastModified());
+		}
+		Collections.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return lastUsed.get(a).compareTo(lastUsed.get(b));
+			}
+		});
+		for (File file : entries) {
+			if (size <= maxSize) {
+				break;
+			}
+			Properties info = OutputSnapshot.read(file);
+			if (info != null && remove(file)) {
+				size -= Long.parseLong(info.getProperty("size", "0"));
+			}
+		}
+	}
+
+	/**
+	 * Renames an entry away and deletes it.
+	 *
+	 * @return false if the entry was already removed by someone else
+	 */
+	private boolean remove(File entry) throws IOException {
+		File trash = new File(new File(directory, TMP_DIR), UUID.randomUUID().toString());
+		if (!trash.getParentFile().isDirectory() && !trash.getParentFile().mkdirs()) {
+			throw new IOException("Can't create " + trash.getParentFile());
+		}
+		try {
+			Files.move(entry.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			return false;
+		}
+		FileOperations.delete(trash);
+		return true;
+	}
+
+	/**
+	 * Parses sizes such as <code>512m</code> or <code>2g</code>, a plain number is taken as bytes.
+	 */
+	static long parseSize(String value) {
+		String size = value.trim().toLowerCase(Locale.ENGLISH);
+		long unit = 1;
+		char suffix = size.length() > 0 ? size.charAt(size.length() - 1) : ' ';
+		if (suffix == 'k') {
+			unit = 1024L;
+		} else if (suffix == 'm') {
+			unit = 1024L * 1024;
+		} else if (suffix == 'g') {
+			unit = 1024L * 1024 * 1024;
+		} else if (suffix == 't') {
+			unit = 1024L * 1024 * 1024 * 1024;
+		}
+		if (unit != 1) {
+			size = size.substring(0, size.length() - 1);
+		}
+		try {
+			return Long.parseLong(size.trim()) * unit;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid size: " + value);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Class loader that looks into its own jars before asking the parent, so a ProGuard jar picked by the plugin
+ * always wins over any ProGuard version that happens to be on the plugin class path.
+ */
+class ChildFirstClassLoader extends URLClassLoader {
+
+	ChildFirstClassLoader(URL[] urls, ClassLoader parent) {
+		super(urls, parent);
+	}
+
+	@Override
+	protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		Class<?> c = findLoadedClass(name);
+		if (c == null) {
+			if (name.startsWith("java.")) {
+				c = super.loadClass(name, false);
+			} else {
+				try {
+					c = findClass(name);
+				} catch (ClassNotFoundException e) {
+					c = super.loadClass(name, false);
+				}
+			}
+		}
+		if (resolve) {
+			resolveClass(c);
+		}
+		return c;
+	}
+
+	@Override
+	public URL getResource(String name) {
+		URL url = findResource(name);
+		if (url == null) {
+			url = super.getResource(name);
+		}
+		return url;
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Dynamic Class Data Sharing (JDK 13 and later) for the forked ProGuard JVM. The first fork for a class path and JDK
+ * dumps the classes it loaded into an archive; later forks map that archive instead of loading and verifying the
+ * ProGuard classes again. Archives are keyed by the JDK and by path, size and modification time of every class path
+ * entry, so a new ProGuard jar or JDK gets a new archive and the old ones are removed.
+ */
+final class ClassDataSharing {
+
+	private static final String EXTENSION = ".jsa";
+
+	private final File archive;
+
+	private final String prefix;
+
+	private File dump;
+
+	private ClassDataSharing(File archive, String prefix) {
+		this.archive = archive;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Returns the archive for forks with the given class path on the running JDK, or null if the JDK can't create
+	 * dynamic archives.
+	 */
+	static ClassDataSharing forClassPath(File cacheDir, List<File> classPath) throws IOException {
+		if (featureVersion() < 13) {
+			return null;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(System.getProperty("java.home")).append('\n');
+		key.append(System.getProperty("java.vm.vendor")).append('\n');
+		key.append(System.getProperty("java.vm.version")).append('\n');
+		for (File entry : classPath) {
+			key.append(entry.getAbsolutePath()).append('|').append(FileOperations.summary(entry)).append('\n');
+		}
+		digest.update(key.toString().getBytes("UTF-8"));
+		String name = classPath.get(0).getName();
+		String prefix = name.endsWith(".jar") ? name.substring(0, name.length() - 4) + "-" : name + "-";
+		File archive = new File(cacheDir, prefix + UpToDateCheck.toHex(digest.digest()).substring(0, 16) + EXTENSION);
+		return new ClassDataSharing(archive, prefix);
+	}
+
+	/**
+	 * Returns the JVM arguments of the next fork: the archive if it exists, the options to dump it otherwise.
+	 */
+	List<String> jvmArgs() throws IOException {
+		List<String> args = new ArrayList<String>();
+		// keep messages about classes that can't be archived out of the build log
+		args.add("-Xlog:cds=off,cds+dynamic=off");
+		if (archive.isFile()) {
+			args.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+			dump = null;
+		} else {
+			File dir = archive.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+				throw new IOException("Can't create " + dir);
+			}
+			dump = new File(dir, archive.getName() + "." + UUID.randomUUID() + ".tmp");
+			args.add("-XX:ArchiveClassesAtExit=" + dump.getAbsolutePath());
+		}
+		return args;
+	}
+
+	boolean isDumping() {
+		return dump != null;
+	}
+
+	File getArchive() {
+		return archive;
+	}
+
+	/**
+	 * Publishes the archive dumped by a successful fork and removes archives of previous class paths.
+	 */
+	void completed(boolean success) throws IOException {
+		if (dump == null) {
+			return;
+		}
+		try {
+			if (success && dump.length() > 0) {
+				Files.move(dump.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+				File[] archives = archive.getParentFile().listFiles();
+				if (archives != null) {
+					for (File file : archives) {
+						String name = file.getName();
+						if (name.startsWith(prefix) && name.endsWith(EXTENSION) && !file.equals(archive)
+								&& name.length() == archive.getName().length()) {
+							file.delete();
+						}
+					}
+				}
+			}
+		} finally {
+			dump.delete();
+			dump = null;
+		}
+	}
+
+	private static int featureVersion() {
+		String version = System.getProperty("java.specification.version", "1");
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		try {
+			return Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * How {@link RawZipWriter} compresses the entries it adds: the deflate level, the extensions of content that is
+ * already compressed and stored as it is, and the number of threads that deflate entries in parallel.
+ */
+final class Compression {
+
+	/** Archives, images, fonts and media: deflating them again costs time and gains next to nothing */
+	static final List<String> DEFAULT_STORED_EXTENSIONS = Arrays.asList("jar", "war", "ear", "zip", "gz", "tgz",
+			"bz2", "xz", "7z", "png", "jpg", "jpeg", "gif", "webp", "woff", "woff2", "mp3", "mp4");
+
+	/** Single-threaded at the default level, storing nothing */
+	static final Compression DEFAULT = new Compression(Deflater.DEFAULT_COMPRESSION, 1, null);
+
+	private final int level;
+
+	private final int threads;
+
+	private final Set<String> storedExtensions = new HashSet<String>();
+
+	/**
+	 * @param level the deflate level, 0 to store all entries, -1 for the default level
+	 * @param threads the number of threads compressing entries, 0 for one per processor
+	 * @param storedExtensions extensions (without the dot, case insensitive) of entries that are stored
+	 */
+	Compression(int level, int threads, Collection<String> storedExtensions) {
+		if (level < -1 || level > 9) {
+			throw new IllegalArgumentException("Invalid compression level " + level + ", use -1 to 9");
+		}
+		this.level = level;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		if (storedExtensions != null) {
+			for (String extension : storedExtensions) {
+				this.storedExtensions.add(extension.toLowerCase(Locale.ENGLISH).replaceFirst("^\\.", ""));
+			}
+		}
+	}
+
+	/**
+	 * Returns the deflate level for an entry, 0 if it is stored.
+	 */
+	int levelFor(String name) {
+		if (level == 0 || storedExtensions.isEmpty()) {
+			return level;
+		}
+		int dot = name.lastIndexOf('.');
+		if (dot > name.lastIndexOf('/')
+				&& storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH))) {
+			return 0;
+		}
+		return level;
+	}
+
+	int getThreads() {
+		return threads;
+	}
+}
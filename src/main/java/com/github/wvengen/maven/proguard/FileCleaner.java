@@ -0,0 +1,198 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes temporary files and directories off the build's critical path. A directory is renamed into a trash
+ * directory, which frees its path at once, and deleted on a background thread; files and directories that can't be
+ * renamed (e.g. on another file system) are deleted right away. Deletions still running when the JVM exits are
+ * finished by a shutdown hook, and whatever is left in the trash is deleted by the next build.
+ * <p>
+ * Each execution gets a cleaner of its own, so it only reports the failures of its own deletions; the background
+ * threads are shared by all of them.
+ * </p>
+ */
+final class FileCleaner {
+
+	/** How long the shutdown hook waits for running deletions */
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+	/** Trash directories whose leftovers have been scheduled for deletion in this JVM */
+	private static final Set<File> SWEPT = new HashSet<File>();
+
+	private static ExecutorService executor;
+
+	private final File trash;
+
+	private final List<String> failures = new ArrayList<String>();
+
+	/** Number of scheduled deletions that haven't finished, guarded by this; only read by {@link #awaitIdle()} */
+	private int pending;
+
+	private FileCleaner(File trash) {
+		this.trash = trash;
+	}
+
+	/**
+	 * Returns a new cleaner using the given trash directory, which must be on the same file system as the files it
+	 * deletes. The first call for a trash directory in a JVM schedules the deletion of leftovers of earlier builds.
+	 */
+	static FileCleaner forTrash(File trash) {
+		FileCleaner cleaner = new FileCleaner(trash.getAbsoluteFile());
+		boolean sweep;
+		synchronized (SWEPT) {
+			sweep = SWEPT.add(cleaner.trash);
+		}
+		File[] leftovers = sweep ? cleaner.trash.listFiles() : null;
+		if (leftovers != null) {
+			for (File leftover : leftovers) {
+				cleaner.deleteInBackground(leftover);
+			}
+		}
+		return cleaner;
+	}
+
+	/**
+	 * Deletes a file or directory tree. When this returns the path is free: a directory has been moved into the
+	 * trash, other paths have been deleted.
+	 *
+	 * @throws IOException naming the exact path that could not be deleted
+	 */
+	void delete(File path) throws IOException {
+		if (!path.exists()) {
+			return;
+		}
+		if (path.isDirectory()) {
+			File target = new File(trash, path.getName() + "-" + UUID.randomUUID());
+			if (trash.isDirectory() || trash.mkdirs()) {
+				try {
+					Files.move(path.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+					deleteInBackground(target);
+					return;
+				} catch (IOException e) {
+					// another file system or a locked file, delete in place
+				}
+			}
+		}
+		deleteNow(path);
+	}
+
+	/**
+	 * Deletes a file or directory tree on the calling thread.
+	 *
+	 * @throws IOException naming the exact path that could not be deleted
+	 */
+	static void deleteNow(File path) throws IOException {
+		try {
+			FileOperations.delete(path);
+		} catch (FileSystemException e) {
+			throw new IOException(describe(e), e);
+		}
+	}
+
+	private void deleteInBackground(final File path) {
+		synchronized (this) {
+			pending++;
+		}
+		executor().execute(new Runnable() {
+			public void run() {
+				try {
+					FileOperations.delete(path);
+				} catch (FileSystemException e) {
+					addFailure(describe(e));
+				} catch (IOException e) {
+					addFailure("Can't delete " + path + ": " + e);
+				} finally {
+					synchronized (FileCleaner.this) {
+						pending--;
+						FileCleaner.this.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns and forgets the failures of the background deletions of this cleaner so far, for the build log.
+	 * Deletions still running are not waited for; what they fail to delete is left to the next build.
+	 */
+	synchronized List<String> takeFailures() {
+		List<String> taken = new ArrayList<String>(failures);
+		failures.clear();
+		return taken;
+	}
+
+	private synchronized void addFailure(String failure) {
+		failures.add(failure);
+	}
+
+	private static String describe(FileSystemException e) {
+		String reason = e.getReason() != null ? e.getReason() : e.getClass().getSimpleName();
+		return "Can't delete " + e.getFile() + ": " + reason;
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			final ExecutorService created = Executors.newFixedThreadPool(2, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "proguard-file-cleaner");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					created.shutdown();
+					try {
+						created.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						// the next build deletes what is left
+					}
+				}
+			});
+			executor = created;
+		}
+		return executor;
+	}
+
+	/**
+	 * Waits until the deletions scheduled by this cleaner are done.
+	 * <p>
+	 * For tests only, so they can check the result of a background deletion. Builds never wait for the deletions;
+	 * the mojo reports whatever has failed so far through {@link #takeFailures()}.
+	 * </p>
+	 */
+	synchronized void awaitIdle() throws InterruptedException {
+		while (pending > 0) {
+			wait();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * File system helpers shared by the up-to-date check and the build cache.
+ */
+final class FileOperations {
+
+	private FileOperations() {
+	}
+
+	/**
+	 * Returns a short description of a file or directory tree (count, size and latest modification time) that
+	 * changes whenever its content is rewritten.
+	 */
+	static String summary(File file) throws IOException {
+		if (!file.exists()) {
+			return "missing";
+		}
+		if (file.isFile()) {
+			return file.length() + ":" + file.lastModified();
+		}
+		final long[] summary = new long[3];
+		Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+				summary[0]++;
+				summary[1] += attributes.size();
+				summary[2] = Math.max(summary[2], attributes.lastModifiedTime().toMillis());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return "dir:" + summary[0] + ":" + summary[1] + ":" + summary[2];
+	}
+
+	/**
+	 * Hard links files where the file system allows it and copies them otherwise.
+	 */
+	static void linkOrCopy(File source, File target) throws IOException {
+		copy(source, target, true);
+	}
+
+	/**
+	 * Copies a file or directory tree, keeping the modification times. Unlike {@link #linkOrCopy(File, File)} the
+	 * target can be rewritten in place without touching the source.
+	 */
+	static void copy(File source, File target) throws IOException {
+		copy(source, target, false);
+	}
+
+	private static void copy(File source, File target, final boolean link) throws IOException {
+		final Path from = source.toPath();
+		final Path to = target.toPath();
+		Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+				Files.createDirectories(to.resolve(from.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Path copy = from.equals(file) ? to : to.resolve(from.relativize(file).toString());
+				if (!link) {
+					Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+					return FileVisitResult.CONTINUE;
+				}
+				try {
+					Files.createLink(copy, file);
+				} catch (IOException e) {
+					Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+				} catch (UnsupportedOperationException e) {
+					Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Deletes a file or directory tree, failing on the first path that can't be deleted.
+	 */
+	static void delete(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) throws IOException {
+				Files.delete(path);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Tells whether a path stays inside a directory once normalized, to reject archive entries such as
+	 * <code>../../x</code>.
+	 */
+	static boolean isInside(File dir, File file) {
+		Path base = dir.toPath().toAbsolutePath().normalize();
+		return file.toPath().toAbsolutePath().normalize().startsWith(base);
+	}
+
+	static void load(Properties properties, File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes properties through a temporary file, so readers never see a partially written file.
+	 */
+	static void store(Properties properties, File file) throws IOException {
+		if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+			throw new IOException("Can't create " + file.getParentFile());
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipException;
+
+/**
+ * Estimates the heap ProGuard needs from the size of its inputs. Only the central directories of the archives are
+ * read, so the estimate is cheap even for large class paths.
+ * <p>
+ * ProGuard keeps every program class fully parsed (code, attributes, optimization info), while library classes
+ * are only kept with their members, so program bytes weigh more than library bytes. The factors are rough
+ * estimates, not measurements; the estimate is logged with every run and a run that runs out of heap is retried
+ * once with twice the heap.
+ * </p>
+ */
+final class HeapEstimator {
+
+	private static final long MB = 1024L * 1024;
+
+	/** Heap of an empty ProGuard run */
+	private static final long BASE = 96 * MB;
+
+	/** Heap per uncompressed byte of program classes */
+	private static final int PROGRAM_FACTOR = 6;
+
+	/** Heap per uncompressed byte of library classes */
+	private static final int LIBRARY_FACTOR = 2;
+
+	/** Heap per class, for the class pools and name maps */
+	private static final long PER_CLASS = 1536;
+
+	static final long MIN_HEAP = 256 * MB;
+
+	private long programClasses;
+
+	private long programBytes;
+
+	private long libraryClasses;
+
+	private long libraryBytes;
+
+	/**
+	 * Counts a program jar or directory.
+	 */
+	void addProgram(File file) throws IOException {
+		long[] counts = count(file);
+		programClasses += counts[0];
+		programBytes += counts[1];
+	}
+
+	/**
+	 * Counts a library jar or directory.
+	 */
+	void addLibrary(File file) throws IOException {
+		long[] counts = count(file);
+		libraryClasses += counts[0];
+		libraryBytes += counts[1];
+	}
+
+	/**
+	 * Returns the estimated heap in bytes, rounded up to 32m and between 256m and the given maximum.
+	 */
+	long estimate(long max) {
+		long heap = BASE + programBytes * PROGRAM_FACTOR + libraryBytes * LIBRARY_FACTOR
+				+ (programClasses + libraryClasses) * PER_CLASS;
+		heap = (heap + 32 * MB - 1) / (32 * MB) * (32 * MB);
+		return Math.max(MIN_HEAP, Math.min(heap, max));
+	}
+
+	private static long[] count(File file) throws IOException {
+		long[] counts = new long[2];
+		if (file.isDirectory()) {
+			countTree(file, counts);
+		} else if (file.isFile()) {
+			RawZipFile zip;
+			try {
+				zip = new RawZipFile(file);
+			} catch (ZipException e) {
+				return counts;
+			}
+			try {
+				for (RawZipFile.Entry entry : zip.getEntries()) {
+					if (entry.getName().endsWith(".class")) {
+						counts[0]++;
+						counts[1] += entry.getSize();
+					}
+				}
+			} finally {
+				zip.close();
+			}
+		}
+		return counts;
+	}
+
+	private static void countTree(File dir, long[] counts) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				countTree(file, counts);
+			} else if (file.getName().endsWith(".class")) {
+				counts[0]++;
+				counts[1] += file.length();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return programClasses + " program classes (" + programBytes / MB + "m), " + libraryClasses
+				+ " library classes (" + libraryBytes / MB + "m)";
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs ProGuard (or DexGuard) inside the current JVM.
+ * <p>
+ * ProGuard is driven through its <code>ConfigurationParser</code> / <code>execute()</code> API rather than
+ * <code>main</code>, so it never gets a chance to call <code>System.exit</code>. Class loaders are kept for the
+ * lifetime of the plugin class loader (i.e. the whole build), so later executions run on already loaded and
+ * JIT-compiled code. A loader is only used by one run at a time: concurrent runs (e.g. modules of a <code>-T</code>
+ * build) each get a loader of their own, so ProGuard's static state is never shared between running executions.
+ * Sequential runs reuse an idle loader; every run gets a fresh <code>Configuration</code>. Only this class' JDK
+ * dependencies are used, which allows the forked daemon to reuse it as well.
+ * </p>
+ */
+class InProcessProGuard {
+
+	/** Idle class loaders by ProGuard jar, see {@link #acquireClassLoader(File)} */
+	private static final Map<String, Deque<ClassLoader>> loaders = new HashMap<String, Deque<ClassLoader>>();
+
+	private InProcessProGuard() {
+	}
+
+	private static String key(File proguardJar) throws IOException {
+		return proguardJar.getCanonicalPath() + ":" + proguardJar.length() + ":" + proguardJar.lastModified();
+	}
+
+	/**
+	 * Takes an idle class loader for the given ProGuard jar, or creates one if all are in use. The key includes size
+	 * and modification time, so a replaced jar (e.g. a SNAPSHOT) gets a fresh loader. Give it back with
+	 * {@link #releaseClassLoader(File, ClassLoader)}.
+	 */
+	static ClassLoader acquireClassLoader(File proguardJar) throws IOException {
+		String key = key(proguardJar);
+		synchronized (loaders) {
+			Deque<ClassLoader> idle = loaders.get(key);
+			if (idle != null && !idle.isEmpty()) {
+				return idle.pop();
+			}
+		}
+		return new ChildFirstClassLoader(new URL[] { proguardJar.toURI().toURL() },
+				InProcessProGuard.class.getClassLoader());
+	}
+
+	static void releaseClassLoader(File proguardJar, ClassLoader loader) throws IOException {
+		String key = key(proguardJar);
+		synchronized (loaders) {
+			Deque<ClassLoader> idle = loaders.get(key);
+			if (idle == null) {
+				idle = new ArrayDeque<ClassLoader>();
+				loaders.put(key, idle);
+			}
+			idle.push(loader);
+		}
+	}
+
+	/**
+	 * Runs the given main class with the given arguments.
+	 *
+	 * @throws UnsupportedOperationException if the main class does not offer the ProGuard configuration API
+	 * @throws Exception whatever ProGuard threw while parsing the configuration or processing the jars
+	 */
+	static void run(File proguardJar, String mainClassName, List<String> args, File baseDir) throws Exception {
+		ClassLoader loader = acquireClassLoader(proguardJar);
+		try {
+			run(loader, mainClassName, args, baseDir);
+		} finally {
+			releaseClassLoader(proguardJar, loader);
+		}
+	}
+
+	private static void run(ClassLoader loader, String mainClassName, List<String> args, File baseDir)
+			throws Exception {
+		Class<?> configurationClass;
+		Class<?> parserClass;
+		Class<?> mainClass;
+		Constructor<?> mainConstructor;
+		Method executeMethod;
+		try {
+			configurationClass = loader.loadClass("proguard.Configuration");
+			parserClass = loader.loadClass("proguard.ConfigurationParser");
+			mainClass = loader.loadClass(mainClassName);
+			mainConstructor = mainClass.getConstructor(configurationClass);
+			executeMethod = mainClass.getMethod("execute");
+		} catch (ClassNotFoundException e) {
+			throw new UnsupportedOperationException(mainClassName + " can't be run in process: " + e.getMessage());
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException(mainClassName + " can't be run in process: " + e.getMessage());
+		}
+
+		Thread thread = Thread.currentThread();
+		ClassLoader contextClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(loader);
+		try {
+			String[] argsArray = args.toArray(new String[args.size()]);
+			Properties properties = new Properties();
+			properties.putAll(System.getProperties());
+			Object parser;
+			try {
+				parser = parserClass.getConstructor(String[].class, File.class, Properties.class)
+						.newInstance(argsArray, baseDir, properties);
+			} catch (NoSuchMethodException e) {
+				// ProGuard before 5.0 only resolves relative to the working directory
+				parser = parserClass.getConstructor(String[].class, Properties.class).newInstance(argsArray, properties);
+			}
+			// a fresh Configuration per run, nothing is carried over from the previous execution
+			Object configuration = configurationClass.getConstructor().newInstance();
+			try {
+				parserClass.getMethod("parse", configurationClass).invoke(parser, configuration);
+			} finally {
+				parserClass.getMethod("close").invoke(parser);
+			}
+			executeMethod.invoke(mainConstructor.newInstance(configuration));
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		} finally {
+			thread.setContextClassLoader(contextClassLoader);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Merges jars and class directories into an assembly. Entries of jars are copied with their compressed data as it
+ * is, only files of directories are compressed; missing parent directory entries are added. Manifests of the
+ * sources are left out, the caller writes the assembly's own manifest first. When sources contain the same entry
+ * the first one is kept, or the merge fails, depending on the duplicate policy; duplicate directory entries are
+ * always skipped.
+ */
+final class JarMerger {
+
+	/** Keep the first of duplicate entries */
+	static final String SKIP = "skip";
+
+	/** Keep the first of duplicate entries and report the others, see {@link #getDuplicates()} */
+	static final String WARN = "warn";
+
+	/** Fail on the first duplicate entry */
+	static final String FAIL = "fail";
+
+	static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	private final RawZipWriter writer;
+
+	private final String duplicatePolicy;
+
+	private final List<String> duplicates = new ArrayList<String>();
+
+	private long copiedBytes;
+
+	private long compressedBytes;
+
+	/**
+	 * @param writer the assembly, its compression settings apply to the files of directories
+	 * @param duplicatePolicy one of {@link #SKIP}, {@link #WARN} and {@link #FAIL}
+	 */
+	JarMerger(RawZipWriter writer, String duplicatePolicy) {
+		if (!Arrays.asList(SKIP, WARN, FAIL).contains(duplicatePolicy)) {
+			throw new IllegalArgumentException("Unknown duplicate policy " + duplicatePolicy + ", use " + SKIP
+					+ ", " + WARN + " or " + FAIL);
+		}
+		this.writer = writer;
+		this.duplicatePolicy = duplicatePolicy;
+	}
+
+	/**
+	 * Copies the entries of a jar.
+	 */
+	void addJar(File jar) throws IOException {
+		RawZipFile zip = new RawZipFile(jar);
+		try {
+			for (RawZipFile.Entry entry : zip.getEntries()) {
+				if (accept(entry.getName(), jar)) {
+					addParents(entry.getName(), entry.getTime());
+					writer.copy(zip, entry);
+					copiedBytes += entry.getCompressedSize();
+				}
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	/**
+	 * Adds the files of a directory, e.g. the classes of a module of the reactor.
+	 */
+	void addDirectory(File dir) throws IOException {
+		addTree("", dir);
+	}
+
+	private void addTree(String prefix, File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		if (prefix.length() > 0 && accept(prefix, dir)) {
+			addParents(prefix, dir.lastModified());
+			writer.addDirectory(prefix, dir.lastModified());
+		}
+		for (File child : files) {
+			if (child.isDirectory()) {
+				addTree(prefix + child.getName() + "/", child);
+			} else if (accept(prefix + child.getName(), dir)) {
+				writer.add(prefix + child.getName(), child);
+				compressedBytes += child.length();
+			}
+		}
+	}
+
+	/**
+	 * Adds the missing directory entries above an entry, as jar tools do.
+	 */
+	private void addParents(String name, long time) throws IOException {
+		int slash = name.lastIndexOf('/', name.length() - 2);
+		if (slash > 0 && !writer.contains(name.substring(0, slash + 1))) {
+			addParents(name.substring(0, slash + 1), time);
+			writer.addDirectory(name.substring(0, slash + 1), time);
+		}
+	}
+
+	private boolean accept(String name, File source) throws ZipException {
+		if (name.equalsIgnoreCase(MANIFEST)) {
+			return false;
+		}
+		if (!writer.contains(name)) {
+			return true;
+		}
+		if (name.endsWith("/") || SKIP.equals(duplicatePolicy)) {
+			return false;
+		}
+		if (FAIL.equals(duplicatePolicy)) {
+			throw new ZipException("Duplicate entry " + name + " in " + source);
+		}
+		duplicates.add(name + " (" + source.getName() + ")");
+		return false;
+	}
+
+	/**
+	 * Returns the duplicate entries that were left out under the {@link #WARN} policy, with their source.
+	 */
+	List<String> getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Returns the compressed size of the entries copied from jars.
+	 */
+	long getCopiedBytes() {
+		return copiedBytes;
+	}
+
+	/**
+	 * Returns the size of the files read from directories and compressed.
+	 */
+	long getCompressedBytes() {
+		return compressedBytes;
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Provides the platform classes of a JDK as a single library jar. Java 8 and older JDKs have it as
+ * <code>rt.jar</code>; for Java 9 and later the classes of the requested modules are read through the
+ * <code>jrt:/</code> file system and written to a jar that is cached by JDK vendor, version and module list.
+ */
+final class JdkLibrary {
+
+	/** Includes every module of the JDK */
+	static final String ALL_MODULES = "*";
+
+	private JdkLibrary() {
+	}
+
+	/**
+	 * Returns a library jar with the classes of the given modules; <code>java.base</code> is always included.
+	 *
+	 * @param jdkHome the JDK to read, null for the one running Maven
+	 */
+	static File resolve(File jdkHome, Collection<String> modules, File cacheDir) throws IOException {
+		File runningHome = new File(System.getProperty("java.home")).getCanonicalFile();
+		File home = jdkHome != null ? jdkHome.getCanonicalFile() : runningHome;
+		for (String rtJar : new String[] { "lib/rt.jar", "jre/lib/rt.jar" }) {
+			if (new File(home, rtJar).isFile()) {
+				return new File(home, rtJar);
+			}
+		}
+
+		Properties release = new Properties();
+		File releaseFile = new File(home, "release");
+		if (releaseFile.isFile()) {
+			FileOperations.load(release, releaseFile);
+		}
+		String version = unquote(release.getProperty("JAVA_VERSION"));
+		String vendor = unquote(release.getProperty("IMPLEMENTOR"));
+		if (version == null && home.equals(runningHome)) {
+			version = System.getProperty("java.version");
+			vendor = System.getProperty("java.vendor");
+		}
+		if (version == null) {
+			throw new IOException("Can't tell the version of the JDK in " + home);
+		}
+		TreeSet<String> moduleNames = new TreeSet<String>(modules);
+		moduleNames.add("java.base");
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update((vendor + "\n" + version + "\n" + moduleNames).getBytes("UTF-8"));
+		File jar = new File(cacheDir, "jdk-" + version.replaceAll("[^A-Za-z0-9._-]", "_") + "-"
+				+ UpToDateCheck.toHex(digest.digest()).substring(0, 16) + ".jar");
+		if (jar.isFile()) {
+			jar.setLastModified(System.currentTimeMillis());
+			return jar;
+		}
+
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+			throw new IOException("Can't create " + cacheDir);
+		}
+		File tmp = new File(cacheDir, jar.getName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			FileSystem jrt = null;
+			boolean close = false;
+			URLClassLoader loader = null;
+			try {
+				if (home.equals(runningHome)) {
+					try {
+						jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+					} catch (ProviderNotFoundException e) {
+						// running on Java 8, loaded from the JDK below
+					}
+				}
+				if (jrt == null) {
+					Map<String, String> env = Collections.singletonMap("java.home", home.getPath());
+					try {
+						jrt = FileSystems.newFileSystem(URI.create("jrt:/"), env);
+					} catch (ProviderNotFoundException e) {
+						// the running JVM has no jrt provider, use the one of the JDK to read
+						loader = jrtFsLoader(home);
+						jrt = FileSystems.newFileSystem(URI.create("jrt:/"), env, loader);
+					}
+					close = true;
+				}
+				write(jrt, moduleNames, tmp, home);
+			} finally {
+				try {
+					if (close) {
+						jrt.close();
+					}
+				} finally {
+					if (loader != null) {
+						loader.close();
+					}
+				}
+			}
+			Files.move(tmp.toPath(), jar.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tmp.delete();
+		}
+		return jar;
+	}
+
+	/**
+	 * Returns a class loader for the jrt file system provider of a JDK, to be closed with the file system.
+	 */
+	private static URLClassLoader jrtFsLoader(File home) throws IOException {
+		File jrtFs = new File(home, "lib/jrt-fs.jar");
+		if (!jrtFs.isFile()) {
+			throw new IOException("No jrt-fs.jar in " + home);
+		}
+		return new URLClassLoader(new URL[] { jrtFs.toURI().toURL() });
+	}
+
+	private static void write(FileSystem jrt, TreeSet<String> moduleNames, File target, File home)
+			throws IOException {
+		List<Path> roots = new ArrayList<Path>();
+		if (moduleNames.contains(ALL_MODULES)) {
+			DirectoryStream<Path> modules = Files.newDirectoryStream(jrt.getPath("/modules"));
+			try {
+				for (Path module : modules) {
+					roots.add(module);
+				}
+			} finally {
+				modules.close();
+			}
+		} else {
+			for (String module : moduleNames) {
+				Path root = jrt.getPath("/modules", module);
+				if (!Files.isDirectory(root)) {
+					throw new IOException("JDK module " + module + " not found in " + home);
+				}
+				roots.add(root);
+			}
+		}
+
+		final RawZipWriter writer = new RawZipWriter(target);
+		try {
+			for (final Path root : roots) {
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+						String name = root.relativize(file).toString();
+						if (name.endsWith(".class") && !name.equals("module-info.class") && !writer.contains(name)) {
+							InputStream in = Files.newInputStream(file);
+							try {
+								writer.add(name, in, attributes.lastModifiedTime().toMillis(), 0);
+							} finally {
+								in.close();
+							}
+						}
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String unquote(String value) {
+		return value == null ? null : ProGuardArgs.unquote(value.trim());
+	}
+}
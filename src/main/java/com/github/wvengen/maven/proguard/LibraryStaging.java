@@ -0,0 +1,142 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Maintains the directory that library jars are gathered in for <code>putLibraryJarsInTempDir</code>. Libraries
+ * are hard linked, symlinked when hard links are not possible (other file system, directories) and copied only as
+ * a last resort. A manifest next to the directory remembers what every entry was staged from, so unchanged libraries
+ * are left alone from one build to the next. It is kept outside, as the directory itself is a ProGuard input whose
+ * content is fingerprinted.
+ */
+final class LibraryStaging {
+
+	private static final String MANIFEST = ".staging.properties";
+
+	private final File dir;
+
+	private final File manifestFile;
+
+	private int linked;
+
+	private int symlinked;
+
+	private int copied;
+
+	private int unchanged;
+
+	LibraryStaging(File dir) {
+		this.dir = dir;
+		this.manifestFile = new File(dir.getAbsoluteFile().getParentFile(), dir.getName() + MANIFEST);
+	}
+
+	/**
+	 * Makes the staging directory contain exactly the given libraries.
+	 */
+	void stage(List<File> libraries) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+		Properties manifest = new Properties();
+		if (manifestFile.isFile()) {
+			try {
+				FileOperations.load(manifest, manifestFile);
+			} catch (IOException e) {
+				manifest.clear();
+			}
+		}
+
+		Map<String, File> wanted = new LinkedHashMap<String, File>();
+		for (File library : libraries) {
+			File source = library.getAbsoluteFile();
+			if (wanted.containsValue(source)) {
+				continue;
+			}
+			String name = source.getName();
+			for (int i = 1; wanted.containsKey(name); i++) {
+				// two libraries with the same file name from different directories
+				name = i + "-" + source.getName();
+			}
+			wanted.put(name, source);
+		}
+
+		Properties staged = new Properties();
+		File[] existing = dir.listFiles();
+		if (existing != null) {
+			for (File file : existing) {
+				if (!wanted.containsKey(file.getName())) {
+					FileOperations.delete(file);
+				}
+			}
+		}
+		for (Map.Entry<String, File> entry : wanted.entrySet()) {
+			File source = entry.getValue();
+			File target = new File(dir, entry.getKey());
+			String stamp = source.getPath() + "|" + FileOperations.summary(source);
+			if (stamp.equals(manifest.getProperty(entry.getKey())) && Files.exists(target.toPath())) {
+				unchanged++;
+			} else {
+				FileOperations.delete(target);
+				link(source, target);
+			}
+			staged.setProperty(entry.getKey(), stamp);
+		}
+		if (!staged.equals(manifest)) {
+			FileOperations.store(staged, manifestFile);
+		}
+	}
+
+	private void link(File source, File target) throws IOException {
+		Path from = source.toPath();
+		Path to = target.toPath();
+		if (source.isFile()) {
+			try {
+				Files.createLink(to, from);
+				linked++;
+				return;
+			} catch (IOException e) {
+				// e.g. another file system, try a symbolic link
+			} catch (UnsupportedOperationException e) {
+				// NO-OP
+			}
+		}
+		try {
+			Files.createSymbolicLink(to, from);
+			symlinked++;
+			return;
+		} catch (IOException e) {
+			// e.g. Windows without the privilege to create symbolic links
+		} catch (UnsupportedOperationException e) {
+			// NO-OP
+		}
+		FileOperations.linkOrCopy(source, target);
+		copied++;
+	}
+
+	@Override
+	public String toString() {
+		return dir + " (" + unchanged + " unchanged, " + linked + " hard linked, " + symlinked + " symlinked, "
+				+ copied + " copied)";
+	}
+}
@@ -0,0 +1,343 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Turns library jars into stub jars that contain only what ProGuard reads from library classes: the class
+ * hierarchy and the names, descriptors and access flags of fields and methods. Method bodies, all other attributes
+ * and non-class resources are dropped and the constant pool is rebuilt with just the remaining references, which
+ * typically makes a library several times smaller and much faster to parse.
+ * <p>
+ * Stubs are cached by file name and content hash, so a library is only stubbed once per machine.
+ * </p>
+ */
+final class LibraryStubber {
+
+	/** Part of the cache key, to be changed whenever the stub format changes */
+	private static final String FORMAT = "1";
+
+	private final File cacheDir;
+
+	LibraryStubber(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Returns the stub for each library, in parallel. Directories, non-archives and archives that can't be stubbed
+	 * are returned unchanged.
+	 */
+	List<File> stub(List<File> libraries) throws IOException {
+		List<File> result = new ArrayList<File>(libraries);
+		int threads = Math.max(1, Math.min(libraries.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<File>> stubs = new ArrayList<Future<File>>();
+			for (final File library : libraries) {
+				stubs.add(executor.submit(new Callable<File>() {
+					public File call() throws IOException {
+						return stub(library);
+					}
+				}));
+			}
+			for (int i = 0; i < stubs.size(); i++) {
+				try {
+					result.set(i, stubs.get(i).get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IOException("Can't stub " + libraries.get(i) + ": " + e.getCause(), e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while stubbing libraries");
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	private File stub(File library) throws IOException {
+		String name = library.getName();
+		if (!library.isFile() || !(name.endsWith(".jar") || name.endsWith(".zip"))) {
+			return library;
+		}
+		String hash = UpToDateCheck.hashArchive(library);
+		File stub = new File(cacheDir, name.substring(0, name.length() - 4) + "-" + hash.substring(0, 16) + ".stub"
+				+ FORMAT + ".jar");
+		if (stub.isFile()) {
+			stub.setLastModified(System.currentTimeMillis());
+			return stub;
+		}
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+			throw new IOException("Can't create " + cacheDir);
+		}
+		File tmp = new File(cacheDir, stub.getName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			if (!stubJar(library, tmp)) {
+				return library;
+			}
+			Files.move(tmp.toPath(), stub.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tmp.delete();
+		}
+		return stub;
+	}
+
+	/**
+	 * Writes the stub of a jar.
+	 *
+	 * @return false if the jar is not a zip archive
+	 */
+	static boolean stubJar(File jar, File target) throws IOException {
+		RawZipFile zip;
+		try {
+			zip = new RawZipFile(jar);
+		} catch (java.util.zip.ZipException e) {
+			return false;
+		}
+		try {
+			RawZipWriter writer = new RawZipWriter(target);
+			try {
+				for (RawZipFile.Entry entry : zip.getEntries()) {
+					String name = entry.getName();
+					// module descriptors declare no types
+					if (!name.endsWith(".class") || name.endsWith("module-info.class") || writer.contains(name)) {
+						continue;
+					}
+					byte[] classFile = read(zip, entry);
+					byte[] stub = stubClass(classFile);
+					writer.add(name, new ByteArrayInputStream(stub != null ? stub : classFile), entry.getTime(), 0);
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			zip.close();
+		}
+		return true;
+	}
+
+	private static byte[] read(RawZipFile zip, RawZipFile.Entry entry) throws IOException {
+		InputStream in = zip.getInputStream(entry);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(entry.getSize(), 1 << 20));
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the stub of a class file, or null if the class file is not understood (it is then kept as it is).
+	 */
+	static byte[] stubClass(byte[] classFile) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+			if (in.readInt() != 0xcafebabe) {
+				return null;
+			}
+			int minor = in.readUnsignedShort();
+			int major = in.readUnsignedShort();
+			int count = in.readUnsignedShort();
+			byte[][] utf8 = new byte[count][];
+			int[] classNames = new int[count];
+			for (int i = 1; i < count; i++) {
+				int tag = in.readUnsignedByte();
+				switch (tag) {
+				case 1:
+					utf8[i] = new byte[in.readUnsignedShort()];
+					in.readFully(utf8[i]);
+					break;
+				case 7:
+					classNames[i] = in.readUnsignedShort();
+					break;
+				case 8:
+				case 16:
+				case 19:
+				case 20:
+					in.skipBytes(2);
+					break;
+				case 15:
+					in.skipBytes(3);
+					break;
+				case 3:
+				case 4:
+				case 9:
+				case 10:
+				case 11:
+				case 12:
+				case 17:
+				case 18:
+					in.skipBytes(4);
+					break;
+				case 5:
+				case 6:
+					in.skipBytes(8);
+					i++;
+					break;
+				default:
+					return null;
+				}
+			}
+
+			ConstantPool pool = new ConstantPool(utf8, classNames);
+			ByteArrayOutputStream body = new ByteArrayOutputStream(classFile.length / 4);
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeShort(in.readUnsignedShort());
+			out.writeShort(pool.copyClass(in.readUnsignedShort()));
+			out.writeShort(pool.copyClass(in.readUnsignedShort()));
+			int interfaces = in.readUnsignedShort();
+			out.writeShort(interfaces);
+			for (int i = 0; i < interfaces; i++) {
+				out.writeShort(pool.copyClass(in.readUnsignedShort()));
+			}
+			for (int kind = 0; kind < 2; kind++) {
+				int members = in.readUnsignedShort();
+				out.writeShort(members);
+				for (int i = 0; i < members; i++) {
+					out.writeShort(in.readUnsignedShort());
+					out.writeShort(pool.copyUtf8(in.readUnsignedShort()));
+					out.writeShort(pool.copyUtf8(in.readUnsignedShort()));
+					skipAttributes(in);
+					out.writeShort(0);
+				}
+			}
+			out.writeShort(0);
+			out.flush();
+
+			ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + pool.size() + 10);
+			DataOutputStream header = new DataOutputStream(result);
+			header.writeInt(0xcafebabe);
+			header.writeShort(minor);
+			header.writeShort(major);
+			pool.write(header);
+			header.flush();
+			body.writeTo(result);
+			return result.toByteArray();
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static void skipAttributes(DataInputStream in) throws IOException {
+		int attributes = in.readUnsignedShort();
+		for (int i = 0; i < attributes; i++) {
+			in.skipBytes(2);
+			int length = in.readInt();
+			if (in.skipBytes(length) != length) {
+				throw new IOException("Truncated attribute");
+			}
+		}
+	}
+
+	/**
+	 * Constant pool of a stub, holding only UTF-8 and class entries.
+	 */
+	private static final class ConstantPool {
+
+		private final byte[][] utf8;
+
+		private final int[] classNames;
+
+		private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+
+		private final DataOutputStream out = new DataOutputStream(entries);
+
+		private final Map<Integer, Integer> copiedUtf8 = new HashMap<Integer, Integer>();
+
+		private final Map<Integer, Integer> copiedClasses = new HashMap<Integer, Integer>();
+
+		private int count = 1;
+
+		ConstantPool(byte[][] utf8, int[] classNames) {
+			this.utf8 = utf8;
+			this.classNames = classNames;
+		}
+
+		int copyUtf8(int index) throws IOException {
+			Integer copy = copiedUtf8.get(index);
+			if (copy == null) {
+				if (utf8[index] == null) {
+					throw new IOException("Not a UTF-8 constant: " + index);
+				}
+				out.writeByte(1);
+				out.writeShort(utf8[index].length);
+				out.write(utf8[index]);
+				copy = count++;
+				copiedUtf8.put(index, copy);
+			}
+			return copy;
+		}
+
+		int copyClass(int index) throws IOException {
+			if (index == 0) {
+				// the super class of java.lang.Object and module-info
+				return 0;
+			}
+			Integer copy = copiedClasses.get(index);
+			if (copy == null) {
+				if (classNames[index] == 0) {
+					throw new IOException("Not a class constant: " + index);
+				}
+				int name = copyUtf8(classNames[index]);
+				out.writeByte(7);
+				out.writeShort(name);
+				copy = count++;
+				copiedClasses.put(index, copy);
+			}
+			return copy;
+		}
+
+		int size() {
+			return entries.size() + 2;
+		}
+
+		void write(DataOutputStream target) throws IOException {
+			out.flush();
+			target.writeShort(count);
+			entries.writeTo(target);
+		}
+	}
+}
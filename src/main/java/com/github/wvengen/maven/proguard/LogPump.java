@@ -0,0 +1,279 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+
+/**
+ * Forwards the output of ProGuard to the Maven log on a thread of its own. Lines are queued in a bounded queue, so a
+ * chatty ProGuard waits for the log instead of filling the heap, and are logged with a prefix naming the execution.
+ * Warnings and notes that only differ in the classes and members they name are logged up to a limit and then
+ * counted, the counts are logged when the pump is closed. All lines, statistics included, can also be written to a file.
+ */
+final class LogPump {
+
+	private static final int ERROR = 0;
+
+	private static final int WARN = 1;
+
+	private static final int INFO = 2;
+
+	private static final int DEBUG = 3;
+
+	/** Dotted names, e.g. classes, members and packages */
+	private static final Pattern NAMES = Pattern.compile("[\\w$]+(\\.[\\w$<>]+)+(\\([^)]*\\))?");
+
+	private static final Line END = new Line(INFO, "");
+
+	private static final class Line {
+
+		final int level;
+
+		final String text;
+
+		Line(int level, String text) {
+			this.level = level;
+			this.text = text;
+		}
+	}
+
+	private final Log log;
+
+	private final String prefix;
+
+	private final int warningLimit;
+
+	private final boolean silent;
+
+	private final BlockingQueue<Line> queue;
+
+	private final Writer raw;
+
+	/** Warning and note patterns with the number of lines seen, only used by the pump thread */
+	private final Map<String, Integer> warnings = new LinkedHashMap<String, Integer>();
+
+	private final Thread thread;
+
+	private IOException rawFailure;
+
+	/**
+	 * @param prefix prepended to every line
+	 * @param capacity the number of lines queued before ProGuard waits
+	 * @param warningLimit how many warnings of the same pattern are logged, 0 for all
+	 * @param silent whether to leave out informational lines
+	 * @param rawLog file to write all lines to, or null
+	 */
+	LogPump(Log log, String prefix, int capacity, int warningLimit, boolean silent, File rawLog) throws IOException {
+		this.log = log;
+		this.prefix = prefix;
+		this.warningLimit = warningLimit;
+		this.silent = silent;
+		this.queue = new ArrayBlockingQueue<Line>(capacity);
+		this.raw = rawLog != null
+				? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rawLog), "UTF-8"), 65536) : null;
+		thread = new Thread("proguard-log " + prefix.trim()) {
+			@Override
+			public void run() {
+				pump();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns an Ant listener that queues the messages of the ProGuard task, e.g. the output of the forked JVM.
+	 */
+	BuildListener listener() {
+		return new BuildListener() {
+
+			public void buildStarted(BuildEvent event) {
+			}
+
+			public void buildFinished(BuildEvent event) {
+			}
+
+			public void targetStarted(BuildEvent event) {
+			}
+
+			public void targetFinished(BuildEvent event) {
+			}
+
+			public void taskStarted(BuildEvent event) {
+			}
+
+			public void taskFinished(BuildEvent event) {
+			}
+
+			public void messageLogged(BuildEvent event) {
+				if (event.getMessage() == null) {
+					return;
+				}
+				int priority = event.getPriority();
+				// the error output of the forked JVM comes at error priority, it is mostly warnings
+				int level = priority <= Project.MSG_WARN ? WARN : priority == Project.MSG_INFO ? INFO : DEBUG;
+				line(level, event.getMessage());
+			}
+		};
+	}
+
+	/**
+	 * Returns a stream that queues the lines written to it, e.g. the output relayed by the ProGuard daemon.
+	 */
+	OutputStream stream() {
+		return stream(INFO);
+	}
+
+	/**
+	 * Returns a stream that queues the lines written to it at debug level.
+	 */
+	OutputStream debugStream() {
+		return stream(DEBUG);
+	}
+
+	private OutputStream stream(final int level) {
+		return new OutputStream() {
+
+			private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			@Override
+			public void write(int b) throws IOException {
+				if (b == '\n') {
+					flushLine();
+				} else {
+					buffer.write(b);
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (buffer.size() > 0) {
+					flushLine();
+				}
+			}
+
+			private void flushLine() {
+				String text = new String(buffer.toByteArray());
+				buffer.reset();
+				line(level, text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+			}
+		};
+	}
+
+	private void line(int level, String text) {
+		if (level == DEBUG && raw == null && !log.isDebugEnabled()) {
+			return;
+		}
+		if (text.startsWith("Error:")) {
+			level = ERROR;
+		} else if (text.startsWith("Warning:")) {
+			level = WARN;
+		}
+		try {
+			queue.put(new Line(level, text));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void pump() {
+		try {
+			for (Line line = queue.take(); line != END; line = queue.take()) {
+				if (raw != null && rawFailure == null) {
+					try {
+						raw.write(line.text);
+						raw.write('\n');
+					} catch (IOException e) {
+						rawFailure = e;
+					}
+				}
+				forward(line);
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	private void forward(Line line) {
+		if (line.level == DEBUG) {
+			if (log.isDebugEnabled()) {
+				log.debug(prefix + line.text);
+			}
+		} else if (line.level == ERROR) {
+			log.error(prefix + line.text);
+		} else if (repeated(line.text)) {
+			return;
+		} else if (line.level == WARN) {
+			log.warn(prefix + line.text);
+		} else if (!silent) {
+			log.info(prefix + line.text);
+		}
+	}
+
+	/**
+	 * Counts warnings and notes by pattern and returns whether the limit of the pattern is exceeded.
+	 */
+	private boolean repeated(String text) {
+		if (warningLimit <= 0 || !(text.startsWith("Warning") || text.startsWith("Note"))) {
+			return false;
+		}
+		String pattern = NAMES.matcher(text).replaceAll("*");
+		Integer seen = warnings.get(pattern);
+		int count = seen == null ? 1 : seen + 1;
+		warnings.put(pattern, count);
+		return count > warningLimit;
+	}
+
+	/**
+	 * Waits until the queued lines are logged, then logs the number of warnings left out.
+	 */
+	void close() throws IOException {
+		try {
+			queue.put(END);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			thread.interrupt();
+		}
+		for (Map.Entry<String, Integer> warning : warnings.entrySet()) {
+			if (warning.getValue() > warningLimit) {
+				log.warn(prefix + (warning.getValue() - warningLimit) + " more like: " + warning.getKey());
+			}
+		}
+		if (raw != null) {
+			raw.close();
+		}
+		if (rawFailure != null) {
+			throw rawFailure;
+		}
+	}
+}
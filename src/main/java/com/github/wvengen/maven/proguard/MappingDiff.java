@@ -0,0 +1,120 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the obfuscated names of two ProGuard mappings, e.g. of the previous and the current build, to tell how
+ * stable the obfuscation is. Classes are identified by their original name, members by their class and declaration
+ * without line numbers.
+ */
+final class MappingDiff {
+
+	private static final Pattern LINE_RANGE = Pattern.compile("^\\d+:\\d+:");
+
+	private static final Pattern ORIGINAL_LINE_RANGE = Pattern.compile("\\)(:\\d+)+$");
+
+	private int names;
+
+	private int renamed;
+
+	private int added;
+
+	private int removed;
+
+	private MappingDiff() {
+	}
+
+	static MappingDiff compare(File previous, File current) throws IOException {
+		Map<String, String> before = names(previous);
+		Map<String, String> after = names(current);
+		MappingDiff diff = new MappingDiff();
+		diff.names = after.size();
+		for (Map.Entry<String, String> name : after.entrySet()) {
+			String obfuscated = before.remove(name.getKey());
+			if (obfuscated == null) {
+				diff.added++;
+			} else if (!obfuscated.equals(name.getValue())) {
+				diff.renamed++;
+			}
+		}
+		diff.removed = before.size();
+		return diff;
+	}
+
+	private static Map<String, String> names(File mapping) throws IOException {
+		Map<String, String> names = new HashMap<String, String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(mapping), "UTF-8"), 65536);
+		try {
+			String className = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				int arrow = line.indexOf(" -> ");
+				if (arrow < 0 || line.trim().startsWith("#")) {
+					continue;
+				}
+				String original = line.substring(0, arrow).trim();
+				String obfuscated = line.substring(arrow + 4).trim();
+				if (!Character.isWhitespace(line.charAt(0))) {
+					className = original;
+					names.put(className, obfuscated.endsWith(":")
+							? obfuscated.substring(0, obfuscated.length() - 1) : obfuscated);
+				} else if (className != null) {
+					original = LINE_RANGE.matcher(original).replaceFirst("");
+					original = ORIGINAL_LINE_RANGE.matcher(original).replaceFirst(")");
+					names.put(className + " " + original, obfuscated);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the number of class and member names of the current mapping.
+	 */
+	int getNames() {
+		return names;
+	}
+
+	/**
+	 * Returns the number of classes and members that got another obfuscated name.
+	 */
+	int getRenamed() {
+		return renamed;
+	}
+
+	int getAdded() {
+		return added;
+	}
+
+	int getRemoved() {
+		return removed;
+	}
+
+	@Override
+	public String toString() {
+		return renamed + " of " + names + " names changed, " + added + " added, " + removed + " removed";
+	}
+}
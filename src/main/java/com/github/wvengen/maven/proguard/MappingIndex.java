@@ -0,0 +1,498 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary index of a ProGuard mapping file, for looking up original names without parsing the text mapping. The index
+ * is memory-mapped and read with absolute gets only, so one instance serves any number of threads.
+ * <p>
+ * Layout, all integers big endian: a header (magic, version, class count, member count, offset of the strings), the
+ * class table sorted by obfuscated name (obfuscated name, original name, first member, member count), the member
+ * table sorted by class and obfuscated name (obfuscated name, original name, first line, last line, first original
+ * line, last original line) and the strings (unsigned short length and UTF-8 bytes). Names are string offsets; fields
+ * have first line -1, methods without line numbers 0. Members with the same obfuscated name keep the order of the
+ * mapping, which lists inlined methods innermost first.
+ * </p>
+ */
+final class MappingIndex {
+
+	private static final int MAGIC = 0x50474d49;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 20;
+
+	private static final int CLASS_SIZE = 16;
+
+	private static final int MEMBER_SIZE = 24;
+
+	private static final int FIELD = -1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * An original stack frame.
+	 */
+	static final class Frame {
+
+		final String className;
+
+		final String methodName;
+
+		/** Original line number, 0 if unknown */
+		final int line;
+
+		Frame(String className, String methodName, int line) {
+			this.className = className;
+			this.methodName = methodName;
+			this.line = line;
+		}
+
+		@Override
+		public String toString() {
+			return className + "." + methodName + (line > 0 ? ":" + line : "");
+		}
+	}
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int classCount;
+
+	private final int memberTable;
+
+	private final int strings;
+
+	private MappingIndex(File index) throws IOException {
+		file = new RandomAccessFile(index, "r");
+		try {
+			if (file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+				throw new IOException("Not a mapping index: " + index);
+			}
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a mapping index: " + index);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported mapping index version " + buffer.getInt(4) + ": " + index);
+			}
+			classCount = buffer.getInt(8);
+			memberTable = HEADER_SIZE + classCount * CLASS_SIZE;
+			strings = buffer.getInt(16);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an index written by {@link #write(File, File)}.
+	 */
+	static MappingIndex open(File index) throws IOException {
+		return new MappingIndex(index);
+	}
+
+	/**
+	 * Returns whether a file is a mapping index rather than a text mapping.
+	 */
+	static boolean isIndex(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return file.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	void close() throws IOException {
+		file.close();
+	}
+
+	int getClassCount() {
+		return classCount;
+	}
+
+	/**
+	 * Returns the original name of an obfuscated class, or null if the mapping doesn't list it.
+	 */
+	String originalClass(String obfuscated) {
+		int index = findClass(obfuscated);
+		return index < 0 ? null : string(buffer.getInt(HEADER_SIZE + index * CLASS_SIZE + 4));
+	}
+
+	/**
+	 * Returns the original names of an obfuscated field, several if the mapping is ambiguous.
+	 */
+	List<String> originalFields(String obfuscatedClass, String obfuscated) {
+		List<String> fields = new ArrayList<String>();
+		int index = findClass(obfuscatedClass);
+		if (index >= 0) {
+			byte[] name = utf8(obfuscated);
+			int end = membersEnd(index);
+			for (int member = firstMember(index, name); member < end && compare(member(member), name) == 0; member++) {
+				if (buffer.getInt(member(member) + 8) == FIELD) {
+					fields.add(string(buffer.getInt(member(member) + 4)));
+				}
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Returns the original frames of an obfuscated stack frame: several for inlined methods (innermost first) or
+	 * when the mapping is ambiguous, none if the method is unknown.
+	 *
+	 * @param line the obfuscated line number, 0 if unknown
+	 */
+	List<Frame> originalFrames(String obfuscatedClass, String obfuscatedMethod, int line) {
+		int index = findClass(obfuscatedClass);
+		if (index < 0) {
+			return Collections.emptyList();
+		}
+		String className = string(buffer.getInt(HEADER_SIZE + index * CLASS_SIZE + 4));
+		byte[] name = utf8(obfuscatedMethod);
+		int end = membersEnd(index);
+		int first = firstMember(index, name);
+		List<Frame> ranged = new ArrayList<Frame>();
+		Set<String> unranged = new LinkedHashSet<String>();
+		for (int member = first; member < end && compare(member(member), name) == 0; member++) {
+			int offset = member(member);
+			int start = buffer.getInt(offset + 8);
+			if (start == FIELD) {
+				continue;
+			}
+			String original = string(buffer.getInt(offset + 4));
+			if (start == 0 || line == 0) {
+				unranged.add(original);
+			} else if (start <= line && line <= buffer.getInt(offset + 12)) {
+				int originalStart = buffer.getInt(offset + 16);
+				int originalLine = line;
+				if (originalStart > 0) {
+					originalLine = buffer.getInt(offset + 20) > originalStart ? originalStart + line - start
+							: originalStart;
+				}
+				ranged.add(frame(className, original, originalLine));
+			}
+		}
+		if (!ranged.isEmpty()) {
+			return ranged;
+		}
+		List<Frame> frames = new ArrayList<Frame>();
+		for (String original : unranged) {
+			frames.add(frame(className, original, line));
+		}
+		return frames;
+	}
+
+	/**
+	 * Inlined methods of other classes are listed with their qualified name.
+	 */
+	private static Frame frame(String className, String method, int line) {
+		int dot = method.lastIndexOf('.');
+		if (dot < 0) {
+			return new Frame(className, method, line);
+		}
+		return new Frame(method.substring(0, dot), method.substring(dot + 1), line);
+	}
+
+	private int findClass(String obfuscated) {
+		byte[] name = utf8(obfuscated);
+		int low = 0;
+		int high = classCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compare(HEADER_SIZE + middle * CLASS_SIZE, name);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first member of a class with the given obfuscated name, or the end of its members.
+	 */
+	private int firstMember(int classIndex, byte[] name) {
+		int low = buffer.getInt(HEADER_SIZE + classIndex * CLASS_SIZE + 8);
+		int high = membersEnd(classIndex);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(member(middle), name) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int membersEnd(int classIndex) {
+		int offset = HEADER_SIZE + classIndex * CLASS_SIZE;
+		return buffer.getInt(offset + 8) + buffer.getInt(offset + 12);
+	}
+
+	private int member(int index) {
+		return memberTable + index * MEMBER_SIZE;
+	}
+
+	/**
+	 * Compares the string referenced at the given offset with a name, byte by byte as the writer sorts.
+	 */
+	private int compare(int reference, byte[] name) {
+		int offset = strings + buffer.getInt(reference);
+		int length = buffer.getShort(offset) & 0xffff;
+		int common = Math.min(length, name.length);
+		for (int i = 0; i < common; i++) {
+			int difference = (buffer.get(offset + 2 + i) & 0xff) - (name[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - name.length;
+	}
+
+	private String string(int reference) {
+		int offset = strings + reference;
+		byte[] bytes = new byte[buffer.getShort(offset) & 0xffff];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + 2 + i);
+		}
+		return new String(bytes, UTF_8);
+	}
+
+	private static byte[] utf8(String value) {
+		return value.getBytes(UTF_8);
+	}
+
+	/**
+	 * Unsigned byte order of the UTF-8 names, the order {@link #compare(int, byte[])} searches in.
+	 */
+	private static final Comparator<byte[]> BYTE_ORDER = new Comparator<byte[]>() {
+		public int compare(byte[] left, byte[] right) {
+			int common = Math.min(left.length, right.length);
+			for (int i = 0; i < common; i++) {
+				int difference = (left[i] & 0xff) - (right[i] & 0xff);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return left.length - right.length;
+		}
+	};
+
+	private static final class ClassMapping {
+
+		final byte[] obfuscated;
+
+		final String original;
+
+		final List<MemberMapping> members = new ArrayList<MemberMapping>();
+
+		ClassMapping(String obfuscated, String original) {
+			this.obfuscated = utf8(obfuscated);
+			this.original = original;
+		}
+	}
+
+	private static final class MemberMapping {
+
+		final byte[] obfuscated;
+
+		final String original;
+
+		final int[] lines;
+
+		MemberMapping(String obfuscated, String original, int start, int end, int originalStart, int originalEnd) {
+			this.obfuscated = utf8(obfuscated);
+			this.original = original;
+			this.lines = new int[] { start, end, originalStart, originalEnd };
+		}
+	}
+
+	/**
+	 * Writes the index of a ProGuard mapping file.
+	 *
+	 * @return the number of classes
+	 */
+	static int write(File mapping, File index) throws IOException {
+		List<ClassMapping> classes = parse(mapping);
+		Comparator<ClassMapping> classOrder = new Comparator<ClassMapping>() {
+			public int compare(ClassMapping left, ClassMapping right) {
+				return BYTE_ORDER.compare(left.obfuscated, right.obfuscated);
+			}
+		};
+		Comparator<MemberMapping> memberOrder = new Comparator<MemberMapping>() {
+			public int compare(MemberMapping left, MemberMapping right) {
+				return BYTE_ORDER.compare(left.obfuscated, right.obfuscated);
+			}
+		};
+		Collections.sort(classes, classOrder);
+
+		Map<String, Integer> references = new HashMap<String, Integer>();
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		DataOutputStream stringTable = new DataOutputStream(stringBytes);
+		ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+		DataOutputStream memberTable = new DataOutputStream(memberBytes);
+		int[][] classTable = new int[classes.size()][];
+		int memberCount = 0;
+		for (int i = 0; i < classes.size(); i++) {
+			ClassMapping mapped = classes.get(i);
+			// stable, members with the same name keep their order
+			Collections.sort(mapped.members, memberOrder);
+			classTable[i] = new int[] { reference(new String(mapped.obfuscated, UTF_8), references, stringTable),
+					reference(mapped.original, references, stringTable), memberCount, mapped.members.size() };
+			for (MemberMapping member : mapped.members) {
+				memberTable.writeInt(reference(new String(member.obfuscated, UTF_8), references, stringTable));
+				memberTable.writeInt(reference(member.original, references, stringTable));
+				for (int line : member.lines) {
+					memberTable.writeInt(line);
+				}
+			}
+			memberCount += mapped.members.size();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index), 65536));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(classes.size());
+			out.writeInt(memberCount);
+			out.writeInt(HEADER_SIZE + classes.size() * CLASS_SIZE + memberBytes.size());
+			for (int[] entry : classTable) {
+				for (int value : entry) {
+					out.writeInt(value);
+				}
+			}
+			memberBytes.writeTo(out);
+			stringBytes.writeTo(out);
+		} finally {
+			out.close();
+		}
+		return classes.size();
+	}
+
+	private static int reference(String value, Map<String, Integer> references, DataOutputStream table)
+			throws IOException {
+		Integer reference = references.get(value);
+		if (reference == null) {
+			byte[] bytes = utf8(value);
+			if (bytes.length > 0xffff) {
+				throw new IOException("Name too long for the mapping index: " + value.substring(0, 80) + "...");
+			}
+			reference = table.size();
+			table.writeShort(bytes.length);
+			table.write(bytes);
+			references.put(value, reference);
+		}
+		return reference;
+	}
+
+	/**
+	 * Reads class lines (<code>original -&gt; obfuscated:</code>), field lines (<code>type original -&gt;
+	 * obfuscated</code>) and method lines (<code>[start:end:]type original(arguments)[:originalStart[:originalEnd]]
+	 * -&gt; obfuscated</code>) of a mapping.
+	 */
+	private static List<ClassMapping> parse(File mapping) throws IOException {
+		List<ClassMapping> classes = new ArrayList<ClassMapping>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(mapping), UTF_8), 65536);
+		try {
+			ClassMapping current = null;
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				String trimmed = line.trim();
+				if (trimmed.length() == 0 || trimmed.startsWith("#")) {
+					continue;
+				}
+				int arrow = trimmed.indexOf(" -> ");
+				if (arrow < 0) {
+					throw new IOException("Invalid mapping at " + mapping + ":" + number + ": " + line);
+				}
+				String original = trimmed.substring(0, arrow).trim();
+				String obfuscated = trimmed.substring(arrow + 4).trim();
+				if (!Character.isWhitespace(line.charAt(0))) {
+					if (!obfuscated.endsWith(":")) {
+						throw new IOException("Invalid mapping at " + mapping + ":" + number + ": " + line);
+					}
+					current = new ClassMapping(obfuscated.substring(0, obfuscated.length() - 1), original);
+					classes.add(current);
+				} else if (current == null) {
+					throw new IOException("Member before the first class at " + mapping + ":" + number);
+				} else {
+					try {
+						current.members.add(member(original, obfuscated));
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid line number at " + mapping + ":" + number + ": " + line);
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return classes;
+	}
+
+	private static MemberMapping member(String original, String obfuscated) {
+		int open = original.indexOf('(');
+		if (open < 0) {
+			return new MemberMapping(obfuscated, original.substring(original.lastIndexOf(' ') + 1), FIELD, 0, 0, 0);
+		}
+		int close = original.indexOf(')', open);
+		int[] lines = new int[4];
+		String declaration = original.substring(0, open);
+		String[] range = declaration.split(":");
+		if (range.length == 3) {
+			lines[0] = Integer.parseInt(range[0]);
+			lines[1] = Integer.parseInt(range[1]);
+			declaration = range[2];
+		}
+		String[] originalRange = original.substring(close + 1).split(":");
+		if (originalRange.length > 1) {
+			lines[2] = Integer.parseInt(originalRange[1]);
+			lines[3] = originalRange.length > 2 ? Integer.parseInt(originalRange[2]) : lines[2];
+		}
+		return new MemberMapping(obfuscated, declaration.substring(declaration.lastIndexOf(' ') + 1), lines[0],
+				lines[1], lines[2], lines[3]);
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A directory holding hard links to (or copies of) the outputs of a ProGuard run, together with a description of
+ * each output so a snapshot that was modified afterwards, e.g. through one of its links, is never restored.
+ * Outputs are restored as copies, so rewriting a restored output in place never reaches the snapshot.
+ */
+final class OutputSnapshot {
+
+	private static final String INFO_FILE = "snapshot.properties";
+
+	private OutputSnapshot() {
+	}
+
+	/**
+	 * Returns the properties a snapshot was saved with, or null if the directory holds no complete snapshot.
+	 */
+	static Properties read(File dir) throws IOException {
+		File infoFile = new File(dir, INFO_FILE);
+		if (!infoFile.isFile()) {
+			return null;
+		}
+		Properties info = new Properties();
+		FileOperations.load(info, infoFile);
+		return info;
+	}
+
+	/**
+	 * Replaces the outputs with the files of the snapshot.
+	 *
+	 * @return false if the snapshot is missing, was taken for a different set of outputs or was modified, the
+	 *         outputs are then left untouched
+	 */
+	static boolean restore(File dir, List<File> outputs) throws IOException {
+		Properties info = read(dir);
+		if (info == null || !Integer.toString(outputs.size()).equals(info.getProperty("outputs"))) {
+			return false;
+		}
+		for (int i = 0; i < outputs.size(); i++) {
+			String recorded = info.getProperty("output." + i);
+			if (recorded != null && !recorded.equals(FileOperations.summary(new File(dir, Integer.toString(i))))) {
+				return false;
+			}
+		}
+		for (int i = 0; i < outputs.size(); i++) {
+			File output = outputs.get(i);
+			FileOperations.delete(output);
+			if (info.getProperty("output." + i) != null) {
+				FileOperations.copy(new File(dir, Integer.toString(i)), output);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Saves the existing outputs into an empty or not yet existing directory. The info file is written last, so
+	 * an interrupted save never looks like a complete snapshot.
+	 *
+	 * @return the number of bytes held by the snapshot
+	 */
+	static long save(File dir, List<File> outputs, Properties info) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+		long size = 0;
+		info.setProperty("outputs", Integer.toString(outputs.size()));
+		for (int i = 0; i < outputs.size(); i++) {
+			File output = outputs.get(i);
+			if (output.exists()) {
+				File copy = new File(dir, Integer.toString(i));
+				FileOperations.linkOrCopy(output, copy);
+				String summary = FileOperations.summary(copy);
+				info.setProperty("output." + i, summary);
+				size += Long.parseLong(summary.split(":")[summary.startsWith("dir:") ? 2 : 0]);
+			}
+		}
+		info.setProperty("size", Long.toString(size));
+		FileOperations.store(info, new File(dir, INFO_FILE));
+		return size;
+	}
+}
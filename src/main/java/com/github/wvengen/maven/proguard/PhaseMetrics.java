@@ -0,0 +1,277 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wall time, bytes read and written and file counts of the phases of one plugin execution. Phases follow each other:
+ * starting a phase ends the previous one. The result is available as a log table, as JSON and as Chrome trace events
+ * (<code>chrome://tracing</code>, Perfetto) that executions of a whole reactor can append to one file.
+ */
+final class PhaseMetrics {
+
+	/** Serializes appends of parallel executions in this JVM, the file lock covers other JVMs */
+	private static final Object TRACE_LOCK = new Object();
+
+	private final String name;
+
+	private final long startMillis = System.currentTimeMillis();
+
+	private final long startNanos = System.nanoTime();
+
+	private final List<Phase> phases = new ArrayList<Phase>();
+
+	private Phase current;
+
+	/**
+	 * @param name identifies the execution in reports, e.g. groupId:artifactId:executionId
+	 */
+	PhaseMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Ends the current phase and starts the given one.
+	 */
+	synchronized Phase start(String phaseName) {
+		end();
+		current = new Phase(phaseName, System.nanoTime() - startNanos);
+		phases.add(current);
+		return current;
+	}
+
+	/**
+	 * Returns the running phase, or a detached one when no phase is running, so counts can always be added.
+	 */
+	synchronized Phase current() {
+		return current != null ? current : new Phase("none", 0);
+	}
+
+	/**
+	 * Ends the current phase, if any.
+	 */
+	synchronized void end() {
+		if (current != null) {
+			current.endNanos = System.nanoTime() - startNanos;
+			current = null;
+		}
+	}
+
+	synchronized List<Phase> getPhases() {
+		return new ArrayList<Phase>(phases);
+	}
+
+	long getTotalMillis() {
+		List<Phase> all = getPhases();
+		return all.isEmpty() ? 0 : all.get(all.size() - 1).endNanos / 1000000;
+	}
+
+	/**
+	 * Returns the phases as a table for the build log.
+	 */
+	String summary() {
+		StringBuilder table = new StringBuilder();
+		table.append(String.format(Locale.ENGLISH, "%-20s %9s %10s %10s %7s%n", "phase", "ms", "read", "written",
+				"files"));
+		for (Phase phase : getPhases()) {
+			table.append(String.format(Locale.ENGLISH, "%-20s %9d %10s %10s %7d%n", phase.name, phase.getMillis(),
+					size(phase.bytesRead), size(phase.bytesWritten), phase.files));
+		}
+		table.append(String.format(Locale.ENGLISH, "%-20s %9d", "total", getTotalMillis()));
+		return table.toString();
+	}
+
+	/**
+	 * Returns the metrics as a JSON object; the given sections are added as further members.
+	 *
+	 * @param sections pairs of member name and JSON value
+	 */
+	String toJson(String... sections) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"execution\": ").append(quote(name));
+		json.append(",\n  \"start\": ").append(startMillis);
+		json.append(",\n  \"totalMillis\": ").append(getTotalMillis());
+		json.append(",\n  \"phases\": [");
+		String separator = "\n";
+		for (Phase phase : getPhases()) {
+			json.append(separator).append("    {\"name\": ").append(quote(phase.name));
+			json.append(", \"millis\": ").append(phase.getMillis());
+			json.append(", \"bytesRead\": ").append(phase.bytesRead);
+			json.append(", \"bytesWritten\": ").append(phase.bytesWritten);
+			json.append(", \"files\": ").append(phase.files).append('}');
+			separator = ",\n";
+		}
+		json.append("\n  ]");
+		for (int i = 0; i + 1 < sections.length; i += 2) {
+			json.append(",\n  ").append(quote(sections[i])).append(": ").append(sections[i + 1]);
+		}
+		json.append("\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Appends the phases as complete events to a trace file in the JSON array format, which allows the closing
+	 * bracket to be left out so that any number of executions can append to the same file.
+	 */
+	void appendTrace(File traceFile) throws IOException {
+		long pid = name.hashCode() & 0x7fffffffL;
+		long tid = Thread.currentThread().getId();
+		StringBuilder events = new StringBuilder();
+		events.append("{\"name\": \"process_name\", \"ph\": \"M\", \"pid\": ").append(pid)
+				.append(", \"args\": {\"name\": ").append(quote(name)).append("}},\n");
+		for (Phase phase : getPhases()) {
+			events.append("{\"name\": ").append(quote(phase.name)).append(", \"cat\": \"proguard\", \"ph\": \"X\"");
+			events.append(", \"ts\": ").append(startMillis * 1000 + phase.startNanos / 1000);
+			events.append(", \"dur\": ").append((phase.endNanos - phase.startNanos) / 1000);
+			events.append(", \"pid\": ").append(pid).append(", \"tid\": ").append(tid);
+			events.append(", \"args\": {\"bytesRead\": ").append(phase.bytesRead);
+			events.append(", \"bytesWritten\": ").append(phase.bytesWritten);
+			events.append(", \"files\": ").append(phase.files).append("}},\n");
+		}
+
+		File dir = traceFile.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Can't create " + dir);
+		}
+		synchronized (TRACE_LOCK) {
+			RandomAccessFile file = new RandomAccessFile(traceFile, "rw");
+			try {
+				FileChannel channel = file.getChannel();
+				FileLock lock = channel.lock();
+				try {
+					if (channel.size() == 0) {
+						events.insert(0, "[\n");
+					}
+					ByteBuffer buffer = ByteBuffer.wrap(events.toString().getBytes("UTF-8"));
+					long position = channel.size();
+					while (buffer.hasRemaining()) {
+						position += channel.write(buffer, position);
+					}
+				} finally {
+					lock.release();
+				}
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	static long sizeOf(Collection<File> files) {
+		long size = 0;
+		for (File file : files) {
+			size += sizeOf(file);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the size of a file, or of all files below a directory.
+	 */
+	static long sizeOf(File file) {
+		if (!file.isDirectory()) {
+			return file.length();
+		}
+		long size = 0;
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				size += sizeOf(child);
+			}
+		}
+		return size;
+	}
+
+	static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static String size(long bytes) {
+		if (bytes == 0) {
+			return "-";
+		}
+		if (bytes < 1024 * 1024) {
+			return (bytes + 1023) / 1024 + "k";
+		}
+		return String.format(Locale.ENGLISH, "%.1fm", bytes / (1024.0 * 1024));
+	}
+
+	/**
+	 * One phase of an execution.
+	 */
+	static final class Phase {
+
+		private final String name;
+
+		private final long startNanos;
+
+		private long endNanos;
+
+		private long bytesRead;
+
+		private long bytesWritten;
+
+		private int files;
+
+		Phase(String name, long startNanos) {
+			this.name = name;
+			this.startNanos = startNanos;
+			this.endNanos = startNanos;
+		}
+
+		synchronized Phase read(long bytes) {
+			bytesRead += bytes;
+			return this;
+		}
+
+		synchronized Phase written(long bytes) {
+			bytesWritten += bytes;
+			return this;
+		}
+
+		synchronized Phase files(int count) {
+			files += count;
+			return this;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		long getMillis() {
+			return (endNanos - startNanos) / 1000000;
+		}
+	}
+}
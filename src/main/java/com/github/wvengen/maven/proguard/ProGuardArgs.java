@@ -0,0 +1,180 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers to find the files referenced by a ProGuard argument list or configuration file.
+ */
+final class ProGuardArgs {
+
+	static final List<String> INPUT_OPTIONS = Arrays.asList("-injars", "-libraryjars");
+
+	private static final Pattern SYSTEM_PROPERTY = Pattern.compile("<([^>]+)>");
+
+	private ProGuardArgs() {
+	}
+
+	/**
+	 * Returns the files given to any of the options in the argument list, in order, following <code>-include</code>
+	 * and <code>@</code> references. An option and its value may be separate arguments or a single argument such as
+	 * <code>-libraryjars lib/rt.jar</code>, the way <code>&lt;options&gt;</code> are usually written. Relative paths
+	 * are resolved against the given directory.
+	 */
+	static List<File> files(List<String> args, List<String> options, File baseDir) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < args.size(); i++) {
+			String arg = args.get(i).trim();
+			if (i < args.size() - 1 && (arg.equals("-include") || options.contains(arg))) {
+				parse(arg + " " + args.get(++i), baseDir, options, files, 0);
+			} else {
+				parse(arg, baseDir, options, files, 0);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the files given to any of the options in a configuration file, following nested <code>-include</code>
+	 * and <code>@</code> references. Only the simple one-option-per-line layout is understood, which is enough to
+	 * notice that an input changed.
+	 */
+	static List<File> files(File configuration, List<String> options) throws IOException {
+		List<File> files = new ArrayList<File>();
+		collect(configuration, options, files, 0);
+		return files;
+	}
+
+	private static void collect(File configuration, List<String> options, List<File> files, int depth)
+			throws IOException {
+		if (depth > 16 || !configuration.isFile()) {
+			return;
+		}
+		File baseDir = configuration.getAbsoluteFile().getParentFile();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(configuration), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				parse(line.trim(), baseDir, options, files, depth);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Adds the files of a single option, written as the option name, whitespace and its class path.
+	 */
+	private static void parse(String line, File baseDir, List<String> options, List<File> files, int depth)
+			throws IOException {
+		int space = 0;
+		while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+			space++;
+		}
+		String option = line.substring(0, space);
+		String value = line.substring(space).trim();
+		String include = null;
+		if (line.startsWith("@")) {
+			include = line.substring(1).trim();
+		} else if (option.equals("-include") && value.length() > 0) {
+			include = value;
+		}
+		if (include != null) {
+			File nested = resolve(baseDir, unquote(include));
+			files.add(nested);
+			collect(nested, options, files, depth + 1);
+		} else if (value.length() > 0 && options.contains(option)) {
+			for (String path : splitClassPath(value)) {
+				files.add(resolve(baseDir, path));
+			}
+		}
+	}
+
+	private static File resolve(File baseDir, String path) {
+		File file = new File(path);
+		return file.isAbsolute() || baseDir == null ? file : new File(baseDir, path);
+	}
+
+	/**
+	 * Splits a ProGuard class path such as <code>'a.jar'(!META-INF/**):b.jar</code> into plain file names, with
+	 * quotes and filters removed and <code>&lt;system.property&gt;</code> references replaced.
+	 */
+	static List<String> splitClassPath(String classPath) {
+		List<String> paths = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		char quote = 0;
+		int parentheses = 0;
+		for (int i = 0; i < classPath.length(); i++) {
+			char c = classPath.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				} else {
+					current.append(c);
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(') {
+				parentheses++;
+			} else if (c == ')') {
+				parentheses--;
+			} else if (parentheses == 0 && c == File.pathSeparatorChar) {
+				addPath(paths, current);
+			} else if (parentheses == 0) {
+				current.append(c);
+			}
+		}
+		addPath(paths, current);
+		return paths;
+	}
+
+	private static void addPath(List<String> paths, StringBuilder current) {
+		String path = current.toString().trim();
+		current.setLength(0);
+		if (path.length() == 0) {
+			return;
+		}
+		Matcher matcher = SYSTEM_PROPERTY.matcher(path);
+		StringBuffer replaced = new StringBuffer();
+		while (matcher.find()) {
+			String value = System.getProperty(matcher.group(1));
+			matcher.appendReplacement(replaced, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+		}
+		matcher.appendTail(replaced);
+		paths.add(replaced.toString());
+	}
+
+	static String unquote(String value) {
+		if (value.length() >= 2 && (value.charAt(0) == '\'' || value.charAt(0) == '"')
+				&& value.charAt(value.length() - 1) == value.charAt(0)) {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,422 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Long-lived ProGuard worker JVM, similar in spirit to the Gradle daemon.
+ * <p>
+ * The worker keeps ProGuard loaded (see {@link InProcessProGuard}) and serves one request at a time on a loopback
+ * socket. Its port and a random access token are published in a registry file named after a compatibility key
+ * (ProGuard jar, main class, JVM and JVM arguments), so a request that needs a different setup simply starts its
+ * own worker. Workers exit after being idle for the configured time.
+ * </p>
+ * <p>
+ * Like {@link InProcessProGuard} this class only depends on the JDK, as it is the main class of the worker.
+ * </p>
+ */
+public class ProGuardDaemon {
+
+	private static final byte FRAME_OUTPUT = 'O';
+
+	private static final byte FRAME_EXIT = 'X';
+
+	static final int EXIT_UNSUPPORTED = 2;
+
+	private static final long STARTUP_TIMEOUT = 30000;
+
+	private final File proguardJar;
+
+	private final String mainClass;
+
+	private final File registryFile;
+
+	private final long idleTimeout;
+
+	private final String token;
+
+	private ProGuardDaemon(File proguardJar, String mainClass, File registryFile, long idleTimeout) {
+		this.proguardJar = proguardJar;
+		this.mainClass = mainClass;
+		this.registryFile = registryFile;
+		this.idleTimeout = idleTimeout;
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		this.token = toHex(random);
+	}
+
+	/**
+	 * Worker entry point: <code>proguardJar mainClass registryFile idleTimeoutMillis</code>.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 4) {
+			System.err.println("Usage: ProGuardDaemon <proguard jar> <main class> <registry file> <idle timeout ms>");
+			System.exit(1);
+		}
+		new ProGuardDaemon(new File(args[0]), args[1], new File(args[2]), Long.parseLong(args[3])).serve();
+		System.exit(0);
+	}
+
+	private void serve() throws IOException {
+		ServerSocket server = new ServerSocket();
+		try {
+			server.bind(new InetSocketAddress(InetAddress.getByName(null), 0));
+			server.setSoTimeout((int) Math.min(idleTimeout, Integer.MAX_VALUE));
+			publish(server.getLocalPort());
+			System.out.println("ProGuard daemon listening on port " + server.getLocalPort());
+			while (true) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketTimeoutException e) {
+					System.out.println("ProGuard daemon idle for " + idleTimeout + "ms, stopping");
+					return;
+				}
+				try {
+					handle(socket);
+				} catch (IOException e) {
+					System.out.println("ProGuard daemon request failed: " + e);
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			unpublish(server.getLocalPort());
+			server.close();
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (!token.equals(in.readUTF())) {
+			throw new IOException("Invalid token");
+		}
+		File baseDir = new File(in.readUTF());
+		int count = in.readInt();
+		List<String> args = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			args.add(in.readUTF());
+		}
+
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		PrintStream capture = new PrintStream(new FrameOutputStream(out), true);
+		System.setOut(capture);
+		System.setErr(capture);
+		int result = 0;
+		try {
+			InProcessProGuard.run(proguardJar, mainClass, args, baseDir);
+		} catch (UnsupportedOperationException e) {
+			capture.println(e.getMessage());
+			result = EXIT_UNSUPPORTED;
+		} catch (OutOfMemoryError e) {
+			capture.println("ProGuard ran out of memory: " + e);
+			result = ProGuardLauncher.EXIT_OUT_OF_MEMORY;
+		} catch (Throwable e) {
+			capture.println("Error: " + e);
+			e.printStackTrace(capture);
+			result = 1;
+		} finally {
+			capture.flush();
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+		out.writeByte(FRAME_EXIT);
+		out.writeInt(result);
+		out.flush();
+	}
+
+	private void publish(int port) throws IOException {
+		Properties registry = new Properties();
+		registry.setProperty("port", Integer.toString(port));
+		registry.setProperty("token", token);
+		File tmp = new File(registryFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			tmp.setReadable(false, false);
+			tmp.setReadable(true, true);
+			registry.store(out, "ProGuard daemon");
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(registryFile)) {
+			registryFile.delete();
+			if (!tmp.renameTo(registryFile)) {
+				throw new IOException("Can't write " + registryFile);
+			}
+		}
+	}
+
+	private void unpublish(int port) {
+		// another worker for the same key may have taken over the registry file in the meantime
+		Properties registry = readRegistry(registryFile);
+		if (registry != null && Integer.toString(port).equals(registry.getProperty("port"))) {
+			registryFile.delete();
+		}
+	}
+
+	/**
+	 * Runs ProGuard on a compatible daemon, starting one when none is running.
+	 *
+	 * @param out receives the ProGuard console output
+	 * @return the ProGuard result, 0 on success
+	 * @throws IOException if no daemon could be reached or it died while processing, callers are expected to fall
+	 *             back to a forked JVM
+	 * @throws UnsupportedOperationException if the main class can't be driven without <code>main</code>
+	 */
+	static int execute(File registryDir, File proguardJar, String mainClass, List<String> jvmArgs, long idleTimeout,
+			List<String> args, File baseDir, OutputStream out) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(pluginClassPath().getPath());
+		command.add(ProGuardDaemon.class.getName());
+
+		File registryFile = new File(registryDir, compatibilityKey(proguardJar, mainClass, jvmArgs) + ".properties");
+		Socket socket = connect(registryFile);
+		if (socket == null) {
+			registryFile.delete();
+			socket = start(registryDir, registryFile, command, proguardJar, mainClass, idleTimeout);
+		}
+		try {
+			Properties registry = readRegistry(registryFile);
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			request.writeUTF(registry == null ? "" : registry.getProperty("token", ""));
+			request.writeUTF(baseDir.getAbsolutePath());
+			request.writeInt(args.size());
+			for (String arg : args) {
+				request.writeUTF(arg);
+			}
+			request.flush();
+
+			DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			byte[] buffer = new byte[8192];
+			while (true) {
+				byte frame;
+				try {
+					frame = response.readByte();
+				} catch (EOFException e) {
+					throw new IOException("ProGuard daemon terminated unexpectedly");
+				}
+				if (frame == FRAME_OUTPUT) {
+					int length = response.readInt();
+					if (length > buffer.length) {
+						buffer = new byte[length];
+					}
+					response.readFully(buffer, 0, length);
+					out.write(buffer, 0, length);
+					out.flush();
+				} else if (frame == FRAME_EXIT) {
+					int result = response.readInt();
+					if (result == EXIT_UNSUPPORTED) {
+						throw new UnsupportedOperationException(mainClass + " can't be run in the ProGuard daemon");
+					}
+					return result;
+				} else {
+					throw new IOException("Unexpected ProGuard daemon response " + frame);
+				}
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static Socket connect(File registryFile) {
+		Properties registry = readRegistry(registryFile);
+		if (registry == null) {
+			return null;
+		}
+		try {
+			Socket socket = new Socket();
+			socket.connect(new InetSocketAddress(InetAddress.getByName(null),
+					Integer.parseInt(registry.getProperty("port"))), 2000);
+			return socket;
+		} catch (IOException e) {
+			// stale registry entry left by a crashed worker
+			return null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Socket start(File registryDir, File registryFile, List<String> command, File proguardJar,
+			String mainClass, long idleTimeout) throws IOException {
+		if (!registryDir.isDirectory() && !registryDir.mkdirs()) {
+			throw new IOException("Can't create " + registryDir);
+		}
+		List<String> workerCommand = new ArrayList<String>(command);
+		workerCommand.add(proguardJar.getAbsolutePath());
+		workerCommand.add(mainClass);
+		workerCommand.add(registryFile.getAbsolutePath());
+		workerCommand.add(Long.toString(idleTimeout));
+
+		File logFile = new File(registryFile.getPath().replaceFirst("\\.properties$", ".log"));
+		ProcessBuilder builder = new ProcessBuilder(workerCommand);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+		Process process = builder.start();
+		process.getOutputStream().close();
+
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+		while (System.currentTimeMillis() < deadline) {
+			Socket socket = connect(registryFile);
+			if (socket != null) {
+				return socket;
+			}
+			try {
+				int exit = process.exitValue();
+				throw new IOException("ProGuard daemon exited with " + exit + ", see " + logFile);
+			} catch (IllegalThreadStateException e) {
+				// still starting
+			}
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		process.destroy();
+		throw new IOException("ProGuard daemon did not start, see " + logFile);
+	}
+
+	private static Properties readRegistry(File registryFile) {
+		if (!registryFile.isFile()) {
+			return null;
+		}
+		Properties registry = new Properties();
+		try {
+			FileInputStream in = new FileInputStream(registryFile);
+			try {
+				registry.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return registry.getProperty("port") != null ? registry : null;
+	}
+
+	static File pluginClassPath() throws IOException {
+		try {
+			return new File(ProGuardDaemon.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		} catch (Exception e) {
+			throw new IOException("Can't locate plugin classes for the ProGuard daemon", e);
+		}
+	}
+
+	/**
+	 * Requests are only served by a worker that was started with the same ProGuard, JVM and JVM arguments.
+	 */
+	static String compatibilityKey(File proguardJar, String mainClass, List<String> jvmArgs) throws IOException {
+		File pluginClassPath = pluginClassPath();
+		StringBuilder key = new StringBuilder();
+		key.append(proguardJar.getCanonicalPath()).append('\n');
+		key.append(proguardJar.length()).append(':').append(proguardJar.lastModified()).append('\n');
+		key.append(mainClass).append('\n');
+		key.append(pluginClassPath.getCanonicalPath()).append(':').append(pluginClassPath.lastModified()).append('\n');
+		key.append(System.getProperty("java.home")).append(':').append(System.getProperty("java.version")).append('\n');
+		for (String jvmArg : jvmArgs) {
+			key.append(jvmArg).append('\n');
+		}
+		try {
+			return toHex(MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes("UTF-8")));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Sends everything written to it as output frames, one frame per flush.
+	 */
+	private static final class FrameOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+
+		private final byte[] buffer = new byte[8192];
+
+		private int count;
+
+		FrameOutputStream(DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			if (count == buffer.length) {
+				flush();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (count == buffer.length) {
+					flush();
+				}
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			if (count > 0) {
+				out.writeByte(FRAME_OUTPUT);
+				out.writeInt(count);
+				out.write(buffer, 0, count);
+				count = 0;
+			}
+			out.flush();
+		}
+	}
+}
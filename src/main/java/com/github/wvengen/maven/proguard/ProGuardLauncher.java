@@ -0,0 +1,130 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Main class of the forked ProGuard JVM. It runs the actual main class, exits with {@link #EXIT_OUT_OF_MEMORY}
+ * when ProGuard runs out of heap and, however the JVM ends, writes the peak heap usage and resident set size to a
+ * report file so the plugin can compare them with the heap it asked for.
+ * <p>
+ * Arguments: <code>reportFile mainClass proguardArgs...</code>
+ * </p>
+ */
+public final class ProGuardLauncher {
+
+	/** Exit code of a ProGuard run that failed with an OutOfMemoryError */
+	static final int EXIT_OUT_OF_MEMORY = 86;
+
+	static final String PEAK_HEAP = "peakHeap";
+
+	static final String MAX_HEAP = "maxHeap";
+
+	static final String PEAK_RSS = "peakRss";
+
+	private ProGuardLauncher() {
+	}
+
+	public static void main(String[] args) throws Throwable {
+		if (args.length < 2) {
+			System.err.println("Usage: ProGuardLauncher <report file> <main class> [args...]");
+			System.exit(1);
+		}
+		final File report = new File(args[0]);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				writeReport(report);
+			}
+		});
+		Method main = Class.forName(args[1]).getMethod("main", String[].class);
+		try {
+			main.invoke(null, (Object) Arrays.copyOfRange(args, 2, args.length));
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof OutOfMemoryError) {
+				System.err.println("ProGuard ran out of memory: " + cause);
+				System.exit(EXIT_OUT_OF_MEMORY);
+			}
+			throw cause;
+		}
+	}
+
+	/**
+	 * Returns the peak resident set size of this JVM in bytes, 0 where it is not known (only Linux reports it).
+	 */
+	static long peakRss() {
+		File status = new File("/proc/self/status");
+		if (!status.isFile()) {
+			return 0;
+		}
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(status), "UTF-8"));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("VmHWM:")) {
+						String[] value = line.substring(6).trim().split("\\s+");
+						return Long.parseLong(value[0]) * 1024;
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// NO-OP
+		} catch (NumberFormatException e) {
+			// NO-OP
+		}
+		return 0;
+	}
+
+	private static void writeReport(File report) {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		Properties properties = new Properties();
+		properties.setProperty(PEAK_HEAP, Long.toString(peak));
+		properties.setProperty(MAX_HEAP, Long.toString(Runtime.getRuntime().maxMemory()));
+		properties.setProperty(PEAK_RSS, Long.toString(peakRss()));
+		try {
+			OutputStream out = new FileOutputStream(report);
+			try {
+				properties.store(out, null);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			// the report is informational only
+		}
+	}
+}
@@ -23,6 +23,10 @@ package com.github.wvengen.maven.proguard;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.VersionRange;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -30,18 +34,19 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
-import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
-import org.apache.tools.ant.Target;
-import org.apache.tools.ant.taskdefs.Expand;
 import org.apache.tools.ant.taskdefs.Java;
-import org.codehaus.plexus.archiver.jar.JarArchiver;
-import org.codehaus.plexus.util.FileUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
@@ -59,6 +64,12 @@ import java.util.*;
 
 public class ProGuardMojo extends AbstractMojo {
 
+	/** Prefix of the project properties with the statistics of the ProGuard run */
+	private static final String METRICS_PROPERTY_PREFIX = "proguard.metrics.";
+
+	/** maxMemory value that estimates the heap from the inputs */
+	private static final String AUTO_MAX_MEMORY = "auto";
+
 	/**
 	 * Set this to 'true' to bypass ProGuard processing entirely.
 	 *
@@ -116,8 +127,9 @@ public class ProGuardMojo extends AbstractMojo {
 	private File tempLibraryjarsDir;
 
 	/**
-	 * Specifies to copy all the -libraryjars dependencies into a temporary directory and pass that directory
-	 * as the only -libraryjars argument to ProGuard.
+	 * Specifies to gather all the -libraryjars dependencies in a temporary directory (one per execution) and pass
+	 * that directory as the only -libraryjars argument to ProGuard. Jars are hard linked or symlinked where possible
+	 * and copied otherwise; the directory is kept between builds and only updated for changed libraries.
 	 *
 	 * @parameter default-value="false"
 	 */
@@ -146,6 +158,24 @@ public class ProGuardMojo extends AbstractMojo {
 	 */
 	private List<String> libs;
 
+	/**
+	 * JDK modules to pass as a library, e.g. java.base and java.sql, or * for all of them. On Java 9 and later the
+	 * classes are read through the jrt:/ file system and cached as a single jar in cacheDirectory/jdk, keyed by JDK
+	 * vendor, version and module list; java.base is always included. For Java 8 and older the JDK's rt.jar is used.
+	 * This replaces passing ${java.home}/lib/rt.jar or jmods through libs.
+	 *
+	 * @parameter
+	 */
+	private List<String> jdkModules;
+
+	/**
+	 * The JDK whose modules are passed as a library (see jdkModules), e.g. the toolchain JDK the project is compiled
+	 * with. Defaults to the JDK running Maven.
+	 *
+	 * @parameter property="proguard.jdkHome"
+	 */
+	private File jdkHome;
+
 	/**
 	 * List of dependency exclusions
 	 *
@@ -267,6 +297,70 @@ public class ProGuardMojo extends AbstractMojo {
 
 
 
+	/**
+	 * Set this to 'true' to skip ProGuard when its inputs, configuration, version and arguments did not change since
+	 * the previous build of this execution. The outputs of the previous run (output jar, mapping and seeds) are kept
+	 * in ${project.build.directory}/proguard-uptodate and restored instead.
+	 *
+	 * @parameter property="proguard.upToDateCheck" default-value="false"
+	 */
+	private boolean upToDateCheck;
+
+	/**
+	 * Set this to 'true' to share ProGuard outputs between all builds on this machine. Outputs are stored in
+	 * cacheDirectory under the same fingerprint the up-to-date check uses, with the project directory and the local
+	 * repository location left out, so other checkouts and branches of the same code get a hit. A hit restores the
+	 * output jar (or the processed WAR classes and jar), mapping and seeds, which are then attached as usual.
+	 *
+	 * @parameter property="proguard.buildCache" default-value="false"
+	 */
+	private boolean buildCache;
+
+	/**
+	 * Directory of the machine-wide ProGuard caches.
+	 *
+	 * @parameter property="proguard.cacheDirectory" default-value="${user.home}/.m2/proguard-cache"
+	 */
+	private File cacheDirectory;
+
+	/**
+	 * Maximum size of the build cache, e.g. 512m or 4g. The least recently used entries are evicted beyond it.
+	 *
+	 * @parameter property="proguard.buildCache.maxSize" default-value="2g"
+	 */
+	private String buildCacheMaxSize = "2g";
+
+	/**
+	 * Set this to 'true' to pass stubs of the library jars to ProGuard instead of the jars themselves. A stub keeps
+	 * only the classes with their field and method signatures, which is all ProGuard reads from libraries, so
+	 * parsing is faster and the ProGuard JVM needs less memory. Stubs are generated in parallel and cached in
+	 * cacheDirectory/stubs by file name and content hash. Leave this off for options that inspect library class
+	 * attributes, such as Kotlin metadata processing.
+	 *
+	 * @parameter property="proguard.stubLibraries" default-value="false"
+	 */
+	private boolean stubLibraries;
+
+	/**
+	 * @parameter default-value="${localRepository}"
+	 * @readonly
+	 */
+	private ArtifactRepository localRepository;
+
+	/**
+	 * @parameter default-value="${mojoExecution.executionId}"
+	 * @readonly
+	 */
+	private String executionId;
+
+	/**
+	 * Set this to 'true' to log which artifacts are passed to ProGuard as injars, as libraries, merged by the
+	 * assembly or left out, together with the inclusion, exclusion or setting that decided it.
+	 *
+	 * @parameter property="proguard.printClassification" default-value="false"
+	 */
+	private boolean printClassification;
+
 	/**
 	 * Set to true to include META-INF/maven/** maven descriptord
 	 *
@@ -306,29 +400,159 @@ public class ProGuardMojo extends AbstractMojo {
 	 */
 	private MavenProjectHelper projectHelper;
 
+
 	/**
-	 * The Jar archiver.
+	 * The maven archive configuration to use. only if assembly is used.
 	 *
-	 * @component role="org.codehaus.plexus.archiver.Archiver" roleHint="jar"
-	 * @required
+	 * @parameter
 	 */
-	private JarArchiver jarArchiver;
+	protected MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
 
+	/**
+	 * What to do when the jars and directories merged into an assembly contain the same entry: skip keeps the
+	 * first one (the ProGuard output comes first), warn does the same but logs every entry left out, fail stops the
+	 * build. Manifests of the merged jars are always left out.
+	 *
+	 * @parameter property="proguard.assemblyDuplicates" default-value="skip"
+	 */
+	private String assemblyDuplicates;
 
 	/**
-	 * The maven archive configuration to use. only if assembly is used.
+	 * Deflate level (0-9) of the entries the plugin compresses when it writes an assembly or a processed war: 0
+	 * stores them, -1 is the default level. Entries copied from other archives keep their compressed data.
 	 *
-	 * @parameter
+	 * @parameter property="proguard.compressionLevel" default-value="-1"
 	 */
-	protected MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+	private int compressionLevel;
 
 	/**
-	 * The max memory the forked java process should use, e.g. 256m
+	 * Extensions of entries that are stored rather than deflated because their content is already compressed.
+	 * Defaults to archives (jar, war, zip, gz...), images (png, jpg, gif...), fonts and media.
 	 *
 	 * @parameter
 	 */
+	private List<String> storeExtensions;
+
+	/**
+	 * Number of threads compressing the entries of an assembly or processed war, 0 for one per processor. Entries
+	 * are written in the same order whatever the number.
+	 *
+	 * @parameter property="proguard.compressionThreads" default-value="0"
+	 */
+	private int compressionThreads;
+
+	/**
+	 * The max memory the forked java process should use, e.g. 256m, or auto to derive it from the number and size of
+	 * the classes in the injars and libraryjars. A forked run that runs out of memory is retried once with twice the
+	 * heap. The daemon ignores auto, and a daemon run that runs out of memory is retried in a forked JVM.
+	 *
+	 * @parameter property="proguard.maxMemory"
+	 */
 	protected String maxMemory;
 
+	/**
+	 * Additional arguments of the forked (or daemon) ProGuard JVM, e.g. -XX:+UseParallelGC.
+	 *
+	 * @parameter
+	 */
+	protected List<String> jvmArgs;
+
+	/**
+	 * File the wall time, bytes read and written and file counts of the phases of this execution are written to as
+	 * JSON. A table of them is logged as well.
+	 *
+	 * @parameter property="proguard.metricsFile" default-value="${project.build.directory}/proguard-metrics.json"
+	 */
+	private File metricsFile;
+
+	/**
+	 * Chrome trace-event file (chrome://tracing, Perfetto) the phases of this execution are appended to. Point all
+	 * modules of a reactor to the same file to see the whole build in one trace.
+	 *
+	 * @parameter property="proguard.traceFile"
+	 */
+	private File traceFile;
+
+	/**
+	 * Set to true to run ProGuard with -verbose and collect its statistics (stage durations, class counts,
+	 * optimization counters, output size) into the metrics file and the proguard.metrics.* project properties.
+	 * Implied by a traceFile, by debug logging and by -verbose in the options.
+	 *
+	 * @parameter property="proguard.statistics" default-value="false"
+	 */
+	private boolean statistics;
+
+	private PhaseMetrics metrics;
+
+	/** Directory under outputDirectory into which trees are moved to be deleted in the background */
+	static final String TRASH_DIR = ".proguard-trash";
+
+	private FileCleaner cleaner;
+
+	/** Lines of ProGuard output queued for the Maven log before ProGuard has to wait */
+	private static final int LOG_QUEUE_LINES = 4096;
+
+	/** Statistics of the last ProGuard run, parsed from its output */
+	private ProGuardOutput proguardOutput;
+
+	/** Peak and maximum heap reported by the last forked ProGuard run, 0 if unknown */
+	private long peakHeap;
+
+	private long maxHeap;
+
+	private long peakRss;
+
+	/**
+	 * Total heap all ProGuard runs of a build may use at the same time, e.g. 8g. With parallel builds (mvn -T) runs
+	 * that would exceed it wait until earlier ones finish. Every run counts with its maxMemory, or a quarter of
+	 * physical memory without one. Defaults to three quarters of physical memory; the first execution of a build
+	 * sets it for the whole build.
+	 *
+	 * @parameter property="proguard.memoryBudget"
+	 */
+	protected String memoryBudget;
+
+	/**
+	 * Set this to 'true' to start forked ProGuard JVMs from a Class Data Sharing archive of the ProGuard classes
+	 * (JDK 13 and later). The first fork creates the archive in cacheDirectory/cds; it is recreated whenever the
+	 * ProGuard jar or the JDK changes.
+	 *
+	 * @parameter property="proguard.classDataSharing" default-value="false"
+	 */
+	protected boolean classDataSharing;
+
+	/**
+	 * Set this to 'false' to run ProGuard inside the Maven JVM instead of forking a new one. The ProGuard classes are
+	 * loaded once per ProGuard jar and reused by all later executions of the build, so only the first module pays for
+	 * class loading and JIT warm-up. maxMemory is ignored in this mode.
+	 *
+	 * @parameter property="proguard.fork" default-value="true"
+	 */
+	protected boolean fork = true;
+
+	/**
+	 * Set this to 'true' to send the ProGuard run to a long-lived worker JVM that stays warm between builds, much like
+	 * the Gradle daemon. A worker is started on first use and shared by all builds that need the same ProGuard jar,
+	 * JVM and maxMemory. If the worker can't be reached or dies, the plugin falls back to a forked JVM.
+	 *
+	 * @parameter property="proguard.daemon" default-value="false"
+	 */
+	protected boolean daemon;
+
+	/**
+	 * Number of seconds an idle ProGuard daemon waits for requests before it stops.
+	 *
+	 * @parameter property="proguard.daemon.idleTimeout" default-value="10800"
+	 */
+	protected int daemonIdleTimeout = 10800;
+
+	/**
+	 * Directory in which ProGuard daemons publish their address and write their logs.
+	 *
+	 * @parameter property="proguard.daemon.directory" default-value="${user.home}/.m2/proguard-daemon"
+	 */
+	protected File daemonDirectory;
+
 	/**
 	 * ProGuard main class name.
 	 *
@@ -350,6 +574,39 @@ public class ProGuardMojo extends AbstractMojo {
 	 */
 	protected String mappingFileName = "proguard_map.txt";
 
+	/**
+	 * Set this to 'true' to also write a binary index of the mapping, which the retrace goal memory-maps to
+	 * de-obfuscate large logs. It is attached next to the mapping, with type idx, when attachMap is set.
+	 *
+	 * @parameter property="proguard.mappingIndex" default-value="false"
+	 */
+	private boolean mappingIndex;
+
+	/**
+	 * Sets the name of the mapping index file.
+	 *
+	 * @parameter default-value="proguard_map.idx"
+	 */
+	protected String mappingIndexFileName = "proguard_map.idx";
+
+	/**
+	 * Set this to 'true' to keep obfuscated names stable between builds: the previous mapping is passed to ProGuard
+	 * with -applymapping, so only new classes and members get new names. The mapping is taken from the attached
+	 * mapping of previousMappingVersion in the local repository when set, otherwise from the previous build in the
+	 * output directory. The number of names that changed is logged.
+	 *
+	 * @parameter property="proguard.reuseMapping" default-value="false"
+	 */
+	private boolean reuseMapping;
+
+	/**
+	 * Version of this project whose mapping, attached with attachMapArtifactClassifier and attachMapArtifactType,
+	 * reuseMapping applies.
+	 *
+	 * @parameter property="proguard.previousMappingVersion"
+	 */
+	private String previousMappingVersion;
+
 	/**
 	 * Sets the name of the ProGuard seed file.
 	 *
@@ -365,6 +622,22 @@ public class ProGuardMojo extends AbstractMojo {
 	 */
 	protected File proguardJar;
 
+	/**
+	 * File to which all output of ProGuard is written, statistics and repeated warnings included, e.g.
+	 * ${project.build.directory}/proguard.log. The Maven log gets the output either way.
+	 *
+	 * @parameter property="proguard.logFile"
+	 */
+	private File logFile;
+
+	/**
+	 * How many ProGuard warnings and notes that only differ in the classes and members they name are logged; the
+	 * number of the others is logged at the end. 0 logs all of them.
+	 *
+	 * @parameter property="proguard.logWarningLimit" default-value="10"
+	 */
+	private int logWarningLimit = 10;
+
 	/**
 	 * If the plugin should be silent.
 	 *
@@ -374,6 +647,16 @@ public class ProGuardMojo extends AbstractMojo {
 
 	private Log log;
 
+	private ArtifactMatcher<Exclusion> exclusionMatcher;
+
+	private ArtifactMatcher<Inclusion> inclusionMatcher;
+
+	private Compression compression;
+
+	private long buildCacheMaxBytes;
+
+	private long memoryBudgetBytes;
+
 	/**
 	 * ProGuard docs: Names with special characters like spaces and parentheses must be quoted with single or double
 	 * quotes.
@@ -407,6 +690,63 @@ public class ProGuardMojo extends AbstractMojo {
 			return;
 		}
 
+		metrics = new PhaseMetrics(mavenProject.getGroupId() + ":" + mavenProject.getArtifactId() + ":"
+				+ executionId);
+		cleaner = FileCleaner.forTrash(new File(outputDirectory, TRASH_DIR));
+		try {
+			proguard();
+		} finally {
+			metrics.end();
+			reportMetrics();
+			for (String failure : cleaner.takeFailures()) {
+				log.warn(failure);
+			}
+		}
+	}
+
+	private void reportMetrics() {
+		if (metrics.getPhases().isEmpty()) {
+			return;
+		}
+		log.info("ProGuard phases:\n" + metrics.summary());
+		try {
+			if (metricsFile != null) {
+				File dir = metricsFile.getParentFile();
+				if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+					throw new IOException("Can't create " + dir);
+				}
+				String jvm = "{\"mavenPeakRss\": " + ProGuardLauncher.peakRss() + ", \"forkPeakHeap\": " + peakHeap
+						+ ", \"forkMaxHeap\": " + maxHeap + ", \"forkPeakRss\": " + peakRss + "}";
+				String json = proguardOutput != null && !proguardOutput.isEmpty()
+						? metrics.toJson("jvm", jvm, "proguard", proguardOutput.toJson()) : metrics.toJson("jvm", jvm);
+				Files.write(metricsFile.toPath(), json.getBytes("UTF-8"));
+			}
+			if (traceFile != null) {
+				metrics.appendTrace(traceFile);
+			}
+		} catch (IOException e) {
+			log.warn("Can't write ProGuard metrics: " + e.getMessage());
+		}
+	}
+
+	private void proguard() throws MojoExecutionException, MojoFailureException {
+		metrics.start("prepare");
+		try {
+			exclusionMatcher = new ArtifactMatcher<Exclusion>(exclusions);
+			@SuppressWarnings("unchecked")
+			final List<Inclusion> inclusions = assembly != null ? assembly.inclusions : null;
+			inclusionMatcher = new ArtifactMatcher<Inclusion>(inclusions);
+			// checked before ProGuard runs, the archives are only written after it
+			compression = compression();
+			buildCacheMaxBytes = buildCache ? parseSize("buildCacheMaxSize", buildCacheMaxSize) : 0;
+			memoryBudgetBytes = memoryBudget != null ? parseSize("memoryBudget", memoryBudget) : 0;
+			if (maxMemory != null && maxMemory.trim().length() > 0 && !AUTO_MAX_MEMORY.equalsIgnoreCase(maxMemory)) {
+				parseSize("maxMemory", maxMemory);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		}
+
 		boolean mainIsJar = mavenProject.getPackaging().equals("jar");
 
 		File inJarFile = new File(outputDirectory, injar);
@@ -424,26 +764,28 @@ public class ProGuardMojo extends AbstractMojo {
 		boolean mainIsWar = mavenProject.getPackaging().equals("war");
 		File expandedDir = null;
 		File priorityLibsDir = null;
+		WarArchive war = null;
 		if (mainIsWar) {
 			processingWar = injar.endsWith(".war");
 			if (processingWar) {
 				expandedDir = (new File(outputDirectory, nameNoType(injar) + "_war_proguard_expanded")).getAbsoluteFile();
 				if (expandedDir.exists()) {
-					if (!deleteFileOrDirectory(expandedDir)) {
-						throw new MojoFailureException("Can't delete " + expandedDir);
-					}
+					delete(expandedDir);
 				}
 				if (!expandedDir.mkdirs()) {
 					throw new MojoFailureException("Can't create " + outputDirectory);
 				}
 
+				// only the entries ProGuard reads are extracted, the output war is copied from the input
+				metrics.start("war-open").read(inJarFile.length());
 				try {
-					unzip(inJarFile, expandedDir);
+					war = new WarArchive(inJarFile, expandedDir, log);
 				} catch (IOException e) {
-					throw new MojoFailureException("Can't extract " + inJarFile, e);
+					throw new MojoFailureException("Can't read " + inJarFile, e);
 				}
 
-				priorityLibsDir = new File(expandedDir, "WEB-INF/lib");
+				priorityLibsDir = war.getLibraryDir();
+				metrics.current().files(war.getLibraryNames().size());
 			}
 		}
 
@@ -473,18 +815,14 @@ public class ProGuardMojo extends AbstractMojo {
 			String outJarName = nameNoType(outjar) + ".jar";
 			outJarFile = (new File(priorityLibsDir, outJarName)).getAbsoluteFile();
 			if (outJarFile.exists()) {
-				if (!deleteFileOrDirectory(outJarFile)) {
-					throw new MojoFailureException("Can't delete " + outJarFile);
-				}
+				delete(outJarFile);
 			}
 			sameArtifact = (outjar != null) && (outjar.equals(injar));
 		} else if ((outjar != null) && (!outjar.equals(injar))) {
 			sameArtifact = false;
 			outJarFile = (new File(outputDirectory, outjar)).getAbsoluteFile();
 			if (outJarFile.exists()) {
-				if (!deleteFileOrDirectory(outJarFile)) {
-					throw new MojoFailureException("Can't delete " + outJarFile);
-				}
+				delete(outJarFile);
 			}
 		} else {
 			sameArtifact = true;
@@ -496,9 +834,7 @@ public class ProGuardMojo extends AbstractMojo {
 				baseFile = new File(outputDirectory, nameNoType(injar) + "_proguard_base.jar");
 			}
 			if (baseFile.exists()) {
-				if (!deleteFileOrDirectory(baseFile)) {
-					throw new MojoFailureException("Can't delete " + baseFile);
-				}
+				delete(baseFile);
 			}
 			if (inJarFile.exists()) {
 				if (!inJarFile.renameTo(baseFile)) {
@@ -510,6 +846,7 @@ public class ProGuardMojo extends AbstractMojo {
 
 		ArrayList<String> args = new ArrayList<String>();
 		ArrayList<File> libraryJars = new ArrayList<File>();
+		List<File> outputs = new ArrayList<File>();
 
 		if (log.isDebugEnabled()) {
 			@SuppressWarnings("unchecked")
@@ -536,10 +873,15 @@ public class ProGuardMojo extends AbstractMojo {
 		Set<File> inFiles = new HashSet<File>();
 
 		if (processingWar) {
+			metrics.start("war-extract");
 			File classesDir = new File(expandedDir, "WEB-INF/classes");
 			if (processWarClassesDir) {
 				File classesDirInput = new File(expandedDir, "WEB-INF/classes_input");
-				classesDir.renameTo(classesDirInput);
+				try {
+					war.extractClasses(classesDirInput);
+				} catch (IOException e) {
+					throw new MojoFailureException("Can't extract " + WarArchive.CLASSES + " from " + inJarFile, e);
+				}
 
 				args.add("-injars");
 				args.add(fileToString(classesDirInput));
@@ -548,59 +890,87 @@ public class ProGuardMojo extends AbstractMojo {
 				// class files are processes separately!
 				args.add("-outjars");
 				args.add(fileToString(classesDir));
+				outputs.add(classesDir);
 
 			} else {
+				try {
+					war.extractClasses(classesDir);
+				} catch (IOException e) {
+					throw new MojoFailureException("Can't extract " + WarArchive.CLASSES + " from " + inJarFile, e);
+				}
 				args.add("-libraryjars");
 				args.add(fileToString(classesDir));
 			}
 		}
 
-		Set<String> inPath = new HashSet<String>();
-		boolean hasInclusionLibrary = false;
-		if (assembly != null && assembly.inclusions != null) {
-			@SuppressWarnings("unchecked")
-			final List<Inclusion> inclusions = assembly.inclusions;
-			for (Inclusion inc : inclusions) {
-				Set<Artifact> deps = getDependancies(inc, mavenProject); // get all matching dependencies as wildcard may have been used
-				for (Artifact artifact : deps) {
-					if (!inc.library) {
-						File file = getClasspathElement(artifact, mavenProject, priorityLibsDir);
-						if (processingWar && "*".equals(inc.artifactId) && !priorityLibsDir.equals(file.getParentFile())) {
-							log.debug("Wildcard matching artifact will be included as a library (as does not belong to enclosed libs): " + file);
-							inPath.add(file.toString());
-							args.add("-libraryjars");
-							args.add(fileToString(file));
-							continue;
-						}
-						inPath.add(file.toString());
-						log.debug("--- ADD injars:" + inc.artifactId);
-						StringBuffer filter = new StringBuffer(fileToString(file));
-						filter.append("(!META-INF/MANIFEST.MF");
-						if (!addMavenDescriptor) {
-							filter.append(",");
-							filter.append("!META-INF/maven/**");
-						}
-						if (inc.filter != null) {
-							filter.append(",").append(inc.filter);
-						}
-						filter.append(")");
-						inFiles.add(file);
-						args.add("-injars");
-						args.add(filter.toString());
-					} else {
-						hasInclusionLibrary = true;
-						log.debug("--- ADD libraryjars:" + inc.artifactId);
-						// This may not be CompileArtifacts, maven 2.0.6 bug
-						File file = getClasspathElement(artifact, mavenProject, priorityLibsDir);
-						inPath.add(file.toString());
-						if(putLibraryJarsInTempDir){
-							libraryJars.add(file);
-						} else {
-							args.add("-libraryjars");
-							args.add(fileToString(file));
-						}
-					}
+		if (processingWar) {
+			File extracted = new File(expandedDir, processWarClassesDir ? "WEB-INF/classes_input" : "WEB-INF/classes");
+			metrics.current().written(PhaseMetrics.sizeOf(extracted));
+		}
+
+		metrics.start("classify");
+		@SuppressWarnings("unchecked")
+		final Set<Artifact> projectArtifacts = mavenProject.getArtifacts();
+		ArtifactClassification classification = ArtifactClassification.classify(projectArtifacts, inclusionMatcher,
+				exclusionMatcher, includeDependency, includeDependencyInjar);
+		if (assembly != null) {
+			for (Inclusion inc : classification.getUnmatchedInclusions()) {
+				throw new MojoExecutionException("artifactId Not found " + inc.artifactId);
+			}
+		}
+		if (war != null) {
+			try {
+				war.getLibraryIndex().prepare(projectArtifacts);
+			} catch (IOException e) {
+				throw new MojoFailureException("Can't read " + WarArchive.LIB + " of " + inJarFile, e);
+			}
+		}
+
+		metrics.current().files(projectArtifacts.size());
+
+		metrics.start("arguments");
+		Set<File> inPath = new HashSet<File>();
+		for (ArtifactClassification.Entry entry : classification.getEntries(ArtifactClassification.Role.INJAR)) {
+			Inclusion inc = entry.getInclusion();
+			if (inc == null) {
+				continue;
+			}
+			File file = getClasspathElement(entry.getArtifact(), mavenProject, war, true);
+			if (processingWar && "*".equals(inc.artifactId) && !priorityLibsDir.equals(file.getParentFile())) {
+				log.debug("Wildcard matching artifact will be included as a library (as does not belong to enclosed libs): " + file);
+				entry.reclassify(ArtifactClassification.Role.LIBRARY, "wildcard inclusion outside WEB-INF/lib");
+				if (inPath.add(file)) {
+					libraryJars.add(file);
 				}
+				continue;
+			}
+			if (!inPath.add(file)) {
+				continue;
+			}
+			log.debug("--- ADD injars:" + inc.artifactId);
+			StringBuffer filter = new StringBuffer(fileToString(file));
+			filter.append("(!META-INF/MANIFEST.MF");
+			if (!addMavenDescriptor) {
+				filter.append(",");
+				filter.append("!META-INF/maven/**");
+			}
+			if (inc.filter != null) {
+				filter.append(",").append(inc.filter);
+			}
+			filter.append(")");
+			inFiles.add(file);
+			args.add("-injars");
+			args.add(filter.toString());
+		}
+
+		boolean hasInclusionLibrary = false;
+		for (ArtifactClassification.Entry entry : classification.getEntries(ArtifactClassification.Role.ASSEMBLY_MERGE)) {
+			hasInclusionLibrary = true;
+			log.debug("--- ADD libraryjars:" + entry.getInclusion().artifactId);
+			// This may not be CompileArtifacts, maven 2.0.6 bug
+			File file = getClasspathElement(entry.getArtifact(), mavenProject, war, false);
+			if (inPath.add(file)) {
+				libraryJars.add(file);
 			}
 		}
 
@@ -609,42 +979,48 @@ public class ProGuardMojo extends AbstractMojo {
 			args.add(buildJarReference(inJarFile, inFilter));
 		}
 
+		for (ArtifactClassification.Entry entry : classification.getEntries(ArtifactClassification.Role.INJAR)) {
+			if (entry.getInclusion() != null) {
+				continue;
+			}
+			Artifact artifact = entry.getArtifact();
+			File file = getClasspathElement(artifact, mavenProject, war, true);
+			if (!inPath.add(file)) {
+				log.debug("--- ignore library since one in injar:" + artifact.getArtifactId());
+				continue;
+			}
+			log.debug("--- ADD library as injars:" + artifact.getArtifactId());
+			inFiles.add(file);
+			args.add("-injars");
+			args.add(fileToString(file));
+		}
 
-		if (includeDependency) {
-			@SuppressWarnings("unchecked")
-			List<Artifact> dependency = this.mavenProject.getCompileArtifacts();
-			for (Artifact artifact : dependency) {
-				// dependency filter
-				if (isExclusion(artifact)) {
-					continue;
-				}
-				File file = getClasspathElement(artifact, mavenProject, priorityLibsDir);
-
-				if (inPath.contains(file.toString())) {
-					log.debug("--- ignore library since one in injar:" + artifact.getArtifactId());
-					continue;
-				}
-				if (includeDependencyInjar) {
-					log.debug("--- ADD library as injars:" + artifact.getArtifactId());
-					inFiles.add(file);
-					args.add("-injars");
-					args.add(fileToString(file));
-				} else {
-					log.debug("--- ADD libraryjars:" + artifact.getArtifactId());
-					if (putLibraryJarsInTempDir) {
-						libraryJars.add(file);
-					} else {
-						args.add("-libraryjars");
-						args.add(fileToString(file));
-					}
-				}
+		for (ArtifactClassification.Entry entry : classification.getEntries(ArtifactClassification.Role.LIBRARY)) {
+			if (entry.getInclusion() != null) {
+				// wildcard inclusion outside WEB-INF/lib, added above
+				continue;
 			}
+			Artifact artifact = entry.getArtifact();
+			File file = getClasspathElement(artifact, mavenProject, war, false);
+			if (!inPath.add(file)) {
+				log.debug("--- ignore library since one in injar:" + artifact.getArtifactId());
+				continue;
+			}
+			log.debug("--- ADD libraryjars:" + artifact.getArtifactId());
+			libraryJars.add(file);
+		}
+
+		if (printClassification) {
+			log.info("ProGuard artifact classification:\n" + classification.report());
+		} else if (log.isDebugEnabled()) {
+			log.debug("ProGuard artifact classification:\n" + classification.report());
 		}
 
 		if (args.contains("-injars")) {
 			args.add("-outjars");
 			args.add(buildJarReference(outJarFile, outFilter));
-  	}
+			outputs.add(outJarFile);
+		}
 
 		if (!obfuscate) {
 			args.add("-dontobfuscate");
@@ -662,49 +1038,81 @@ public class ProGuardMojo extends AbstractMojo {
 
 		if (libs != null) {
 			for (String lib : libs) {
-				if (putLibraryJarsInTempDir) {
-					libraryJars.add(new File(lib));
-				} else {
-					args.add("-libraryjars");
-					args.add(fileNameToString(lib));
-				}
+				libraryJars.add(new File(lib));
 			}
 		}
 
-		if (!libraryJars.isEmpty()) {
-			log.debug("Copy libraryJars to temporary directory");
-			log.debug("Temporary directory: " + tempLibraryjarsDir);
-			if (tempLibraryjarsDir.exists()) {
-							try{
-								FileUtils.deleteDirectory(tempLibraryjarsDir);
-							} catch(IOException ignored){
-								// NO-OP
-							}
+		if (jdkModules != null && !jdkModules.isEmpty()) {
+			try {
+				File jdkLibrary = JdkLibrary.resolve(jdkHome, jdkModules, new File(cacheDirectory, "jdk"));
+				log.debug("JDK library: " + jdkLibrary);
+				libraryJars.add(jdkLibrary);
+			} catch (IOException e) {
+				throw new MojoFailureException("Can't provide JDK modules " + jdkModules + ": " + e.getMessage(), e);
 			}
-			tempLibraryjarsDir.mkdir();
-			if (!tempLibraryjarsDir.exists()) {
-				throw new MojoFailureException("Can't create temporary libraryJars directory: " + tempLibraryjarsDir.getAbsolutePath());
+		}
+
+		if (stubLibraries && !libraryJars.isEmpty()) {
+			metrics.start("stub-libraries").files(libraryJars.size()).read(PhaseMetrics.sizeOf(libraryJars));
+			try {
+				List<File> stubs = new LibraryStubber(new File(cacheDirectory, "stubs")).stub(libraryJars);
+				libraryJars.clear();
+				libraryJars.addAll(stubs);
+			} catch (IOException e) {
+				log.warn("Can't stub library jars, using them as they are: " + e.getMessage());
 			}
+		}
+
+		if (!putLibraryJarsInTempDir) {
 			for (File libraryJar : libraryJars) {
-				try {
-					FileUtils.copyFileToDirectory(libraryJar, tempLibraryjarsDir);
-				} catch (IOException e) {
-					throw new MojoFailureException("Can't copy to temporary libraryJars directory", e);
-				}
+				args.add("-libraryjars");
+				args.add(fileToString(libraryJar));
+			}
+		} else if (!libraryJars.isEmpty()) {
+			metrics.start("stage-libraries").files(libraryJars.size());
+			// one directory per execution, kept between builds so unchanged jars are not staged again
+			File stagingDir = new File(tempLibraryjarsDir, executionId != null ? executionId : "default");
+			log.debug("Stage libraryJars in temporary directory: " + stagingDir);
+			LibraryStaging staging = new LibraryStaging(stagingDir);
+			try {
+				staging.stage(libraryJars);
+			} catch (IOException e) {
+				throw new MojoFailureException("Can't stage libraryJars in " + stagingDir.getAbsolutePath(), e);
 			}
+			log.debug("Staged libraryJars in " + staging);
 			args.add("-libraryjars");
-			args.add(fileToString(tempLibraryjarsDir));
+			args.add(fileToString(stagingDir));
 		}
 
 		File proguardMapFile = (new File(outputDirectory, mappingFileName).getAbsoluteFile());
 		args.add("-printmapping");
 		args.add(fileToString(proguardMapFile));
 
+		File appliedMapFile = null;
+		if (reuseMapping && obfuscate) {
+			File previousMapFile = previousMapping(proguardMapFile);
+			if (previousMapFile.isFile()) {
+				// ProGuard rewrites the mapping it applies, it gets a copy
+				appliedMapFile = new File(outputDirectory, nameNoType(mappingFileName) + "_applied.txt").getAbsoluteFile();
+				try {
+					Files.copy(previousMapFile.toPath(), appliedMapFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					throw new MojoFailureException("Can't copy " + previousMapFile + ": " + e.getMessage(), e);
+				}
+				log.info("Applying the mapping " + previousMapFile);
+				args.add("-applymapping");
+				args.add(fileToString(appliedMapFile));
+			} else {
+				log.info("No previous mapping " + previousMapFile + " to apply, obfuscating from scratch");
+			}
+		}
+
 		File proguardSeedFile = (new File(outputDirectory, seedFileName).getAbsoluteFile());
 		args.add("-printseeds");
 		args.add(fileToString(proguardSeedFile));
 
-		if (log.isDebugEnabled()) {
+		// ProGuard only prints its statistics with -verbose, which slows it down, so it is only added when asked for
+		if ((statistics || traceFile != null || log.isDebugEnabled()) && !userVerbose()) {
 			args.add("-verbose");
 		}
 
@@ -712,101 +1120,234 @@ public class ProGuardMojo extends AbstractMojo {
 			Collections.addAll(args, options);
 		}
 
-		log.debug("Run Proguard with options" + args.toString());
-		proguardMain(getProguardJar(this), args, this);
+		outputs.add(proguardMapFile);
+		outputs.add(proguardSeedFile);
 
-		if (processingWar) {
-			for (File f : inFiles) {
-				if (f.isDirectory()) {
-					log.info("Removing proguarded: " + f);
-					if (!deleteFileOrDirectory(f)) {
-						throw new MojoFailureException("Can't delete " + f);
+		if (war != null) {
+			try {
+				// reopened when the output war is written
+				war.close();
+			} catch (IOException ignored) {
+				// NO-OP
+			}
+		}
+
+		File proguardJarFile = getProguardJar(this);
+		metrics.start("up-to-date");
+		UpToDateCheck upToDate = null;
+		BuildCache cache = null;
+		String fingerprint = null;
+		boolean restored = false;
+		if (upToDateCheck || buildCache) {
+			upToDate = new UpToDateCheck(new File(outputDirectory, "proguard-uptodate/" + executionId));
+			List<File> configurationFiles = new ArrayList<File>();
+			if (proguardInclude != null && proguardInclude.exists()) {
+				configurationFiles.add(proguardInclude);
+			}
+			if (appliedMapFile != null) {
+				configurationFiles.add(appliedMapFile);
+			}
+			Map<File, String> placeholders = new LinkedHashMap<File, String>();
+			placeholders.put(mavenProject.getBasedir(), "basedir");
+			if (localRepository != null) {
+				placeholders.put(new File(localRepository.getBasedir()), "localRepository");
+			}
+			try {
+				fingerprint = upToDate.fingerprint(args, configurationFiles, mavenProject.getBasedir(), placeholders,
+						Arrays.asList(proguardJarFile, proguardMainClass, obfuscate));
+				if (upToDateCheck) {
+					restored = upToDate.restore(fingerprint, outputs);
+					if (restored) {
+						log.info("ProGuard inputs and configuration are unchanged, restored previous outputs");
 					}
-				} else if (priorityLibsDir.equals(f.getParentFile())) {
-					log.info("Removing proguarded: " + f);
-					if (!deleteFileOrDirectory(f)) {
-						throw new MojoFailureException("Can't delete " + f);
+				}
+				if (!restored && buildCache) {
+					cache = new BuildCache(cacheDirectory, buildCacheMaxBytes);
+					restored = cache.restore(fingerprint, outputs);
+					if (restored) {
+						log.info("Restored ProGuard outputs from build cache " + fingerprint);
+						if (upToDateCheck) {
+							upToDate.store(fingerprint, outputs);
+						}
 					}
 				}
+				if (!restored) {
+					log.debug("ProGuard fingerprint " + fingerprint + " changed");
+				}
+			} catch (IOException e) {
+				log.warn("Can't check whether ProGuard is up to date: " + e.getMessage());
+				upToDate = null;
+				cache = null;
 			}
 		}
 
-		if (!libraryJars.isEmpty()) {
-			deleteFileOrDirectory(tempLibraryjarsDir);
-		}
-
-		if ((assembly != null) && (hasInclusionLibrary)) {
-
-			log.info("creating assembly");
-
-			File baseFile = new File(outputDirectory, nameNoType(injar) + "_proguard_result.jar");
-			if (baseFile.exists()) {
-				if (!baseFile.delete()) {
-					throw new MojoFailureException("Can't delete " + baseFile);
+		if (!restored) {
+			if (upToDate != null) {
+				// outputs may be hard linked into a snapshot, make sure ProGuard writes new files
+				try {
+					for (File output : outputs) {
+						FileOperations.delete(output);
+					}
+				} catch (IOException e) {
+					throw new MojoFailureException("Can't delete previous ProGuard output: " + e.getMessage(), e);
+				}
+			}
+			metrics.start("proguard").files(inFiles.size() + libraryJars.size())
+					.read(PhaseMetrics.sizeOf(inFiles) + PhaseMetrics.sizeOf(libraryJars));
+			log.debug("Run Proguard with options" + args.toString());
+			String heapSetting = maxMemory;
+			long estimate = 0;
+			if (AUTO_MAX_MEMORY.equalsIgnoreCase(maxMemory) && daemon) {
+				// a per-module heap would start a daemon per module, each one outliving the memory budget
+				log.info("maxMemory=auto is ignored by the ProGuard daemon, set maxMemory to size its heap");
+				heapSetting = null;
+			} else if (AUTO_MAX_MEMORY.equalsIgnoreCase(maxMemory)) {
+				HeapEstimator estimator = new HeapEstimator();
+				try {
+					for (File file : inFiles) {
+						estimator.addProgram(file);
+					}
+					if (inJarFile.exists() && !processingWar) {
+						estimator.addProgram(inJarFile);
+					}
+					for (File file : libraryJars) {
+						estimator.addLibrary(file);
+					}
+					estimate = estimator.estimate(ProGuardScheduler.physicalMemory() / 4 * 3);
+					heapSetting = (estimate >> 20) + "m";
+					log.info("Estimated ProGuard heap " + heapSetting + " for " + estimator);
+				} catch (IOException e) {
+					log.warn("Can't estimate the ProGuard heap, using the JVM default: " + e.getMessage());
+					heapSetting = null;
+				}
+			}
+			ProGuardScheduler scheduler = ProGuardScheduler.get(memoryBudgetBytes);
+			for (int attempt = 1;; attempt++) {
+				long heap = ProGuardScheduler.heapOf(heapSetting);
+				long queued = System.currentTimeMillis();
+				long taken;
+				try {
+					taken = scheduler.acquire(heap);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException("Interrupted while waiting for the ProGuard memory budget");
+				}
+				long waited = System.currentTimeMillis() - queued;
+				String admission = "ProGuard admitted with " + (taken >> 20) + "m of " + (scheduler.getBudget() >> 20)
+						+ "m memory budget after waiting " + waited + " ms";
+				if (waited >= 1000) {
+					log.info(admission);
+				} else {
+					log.debug(admission);
+				}
+				try {
+					proguardOutput = new ProGuardOutput();
+					// a retry with a larger heap forks, so it doesn't leave a daemon with that heap behind
+					proguardMain(proguardJarFile, args, this, heapSetting, daemon && attempt == 1);
+					break;
+				} catch (OutOfMemoryException e) {
+					if (attempt > 1) {
+						throw new MojoExecutionException("ProGuard ran out of memory with -Xmx" + heapSetting
+								+ ", set maxMemory higher");
+					}
+					String retry = (Math.min(heap * 2, ProGuardScheduler.physicalMemory() / 4 * 3) >> 20) + "m";
+					log.warn("ProGuard ran out of memory with "
+							+ (heapSetting != null ? "-Xmx" + heapSetting : "the default heap") + ", retrying with -Xmx"
+							+ retry);
+					heapSetting = retry;
+				} finally {
+					scheduler.release(taken);
 				}
 			}
-			File archiverFile = outJarFile.getAbsoluteFile();
-			if (!outJarFile.renameTo(baseFile)) {
-				throw new MojoFailureException("Can't rename " + outJarFile);
+			long outputBytes = PhaseMetrics.sizeOf(outputs);
+			metrics.current().written(outputBytes);
+			proguardOutput.finish(outputBytes);
+			if (!proguardOutput.isEmpty()) {
+				for (Map.Entry<String, String> property : proguardOutput.toProperties(METRICS_PROPERTY_PREFIX).entrySet()) {
+					mavenProject.getProperties().setProperty(property.getKey(), property.getValue());
+				}
+			}
+			if (peakHeap > 0) {
+				log.info("ProGuard peak heap " + (peakHeap >> 20) + "m of -Xmx" + (maxHeap >> 20) + "m"
+						+ (estimate > 0 ? " (estimated " + (estimate >> 20) + "m)" : ""));
+			}
+			try {
+				if (upToDate != null && upToDateCheck) {
+					upToDate.store(fingerprint, outputs);
+				}
+				if (cache != null) {
+					cache.store(fingerprint, outputs);
+				}
+			} catch (IOException e) {
+				log.warn("Can't record ProGuard outputs for reuse: " + e.getMessage());
 			}
+		}
 
-			MavenArchiver archiver = new MavenArchiver();
-			archiver.setArchiver(jarArchiver);
-			archiver.setOutputFile(archiverFile);
-			archive.setAddMavenDescriptor(addMavenDescriptor);
+		if (appliedMapFile != null && proguardMapFile.isFile()) {
+			try {
+				MappingDiff diff = MappingDiff.compare(appliedMapFile, proguardMapFile);
+				log.info("Obfuscation compared to the applied mapping: " + diff);
+			} catch (IOException e) {
+				log.warn("Can't compare the mapping with the applied one: " + e.getMessage());
+			}
+		}
 
+		File proguardMapIndexFile = new File(outputDirectory, mappingIndexFileName).getAbsoluteFile();
+		if (mappingIndex && proguardMapFile.isFile()) {
+			metrics.start("mapping-index").read(proguardMapFile.length());
 			try {
-				jarArchiver.addArchivedFileSet(baseFile);
-				@SuppressWarnings("unchecked")
-				final List<Inclusion> inclusions = assembly.inclusions;
-				for (Inclusion inc : inclusions) {
-					if (inc.library) {
-						File file;
-						Artifact artifact = getDependancy(inc, mavenProject);
-						file = getClasspathElement(artifact, mavenProject, priorityLibsDir);
-						if (file.isDirectory()) {
-							getLog().info("merge project: " + artifact.getArtifactId() + " " + file);
-							jarArchiver.addDirectory(file);
-						} else {
-							getLog().info("merge artifact: " + artifact.getArtifactId());
-							jarArchiver.addArchivedFileSet(file);
-						}
-					}
+				int classes = MappingIndex.write(proguardMapFile, proguardMapIndexFile);
+				metrics.current().files(classes).written(proguardMapIndexFile.length());
+				log.debug("Indexed " + classes + " classes of " + proguardMapFile + " in " + proguardMapIndexFile);
+			} catch (IOException e) {
+				throw new MojoFailureException("Can't index " + proguardMapFile + ": " + e.getMessage(), e);
+			}
+		}
+
+		if (processingWar) {
+			for (File f : inFiles) {
+				if (f.isDirectory()) {
+					log.info("Removing proguarded: " + f);
+					war.removeTree(WarArchive.CLASSES);
+					delete(f);
+				} else if (priorityLibsDir.equals(f.getParentFile())) {
+					log.info("Removing proguarded: " + f);
+					war.remove(WarArchive.LIB + f.getName());
+					delete(f);
 				}
+			}
+			war.remove(WarArchive.LIB + outJarFile.getName());
+		}
 
-				archiver.createArchive(mavenProject, archive);
+		if ((assembly != null) && (hasInclusionLibrary)) {
 
-				// delete baseFile right away so we don't include it in war
-				if (!baseFile.delete()) {
-					throw new MojoFailureException("Can't delete " + baseFile);
+			log.info("creating assembly");
+			metrics.start("assembly");
+
+			List<File> merged = new ArrayList<File>();
+			for (ArtifactClassification.Entry entry : classification.getEntries(ArtifactClassification.Role.ASSEMBLY_MERGE)) {
+				Artifact artifact = entry.getArtifact();
+				File file = getClasspathElement(artifact, mavenProject, war, false);
+				if (file.isDirectory()) {
+					getLog().info("merge project: " + artifact.getArtifactId() + " " + file);
+				} else {
+					getLog().info("merge artifact: " + artifact.getArtifactId());
 				}
-
-			} catch (Exception e) {
-				throw new MojoExecutionException("Unable to create jar", e);
+				merged.add(file);
 			}
-
+			writeAssembly(outJarFile.getAbsoluteFile(), merged);
 		}
 
 		if (processingWar) {
 			File outputWar = new File(outputDirectory, outjar);
-			if (outputWar.exists()) {
-				if (!outputWar.delete()) {
-					throw new MojoFailureException("Can't delete " + outputWar);
-				}
-			}
-			MavenArchiver archiver = new MavenArchiver();
-			archiver.setArchiver(jarArchiver);
-			archiver.setOutputFile(outputWar);
+			metrics.start("war-repack").read(inJarFile.length());
 			archive.setAddMavenDescriptor(addMavenDescriptor);
-			try {
-				jarArchiver.addDirectory(expandedDir);
-				archiver.createArchive(mavenProject, archive);
-			} catch (Exception e) {
-				throw new MojoExecutionException("Unable to create war", e);
-			}
+			writeWar(war, outputWar, processWarClassesDir ? new File(expandedDir, "WEB-INF/classes") : null, outJarFile);
+			metrics.current().written(outputWar.length());
 			outJarFile = outputWar;
 		}
 
+		metrics.start("attach");
 		if (attach) {
 			if (!sameArtifact) {
 				final String classifier;
@@ -834,6 +1375,9 @@ public class ProGuardMojo extends AbstractMojo {
 				log.warn("Cannot attach proguard map artifact as file does nto exist.");
 			} else if (useMapArtifactClassifier()) {
 				projectHelper.attachArtifact(mavenProject, attachMapArtifactType, attachMapArtifactClassifier, proguardMapFile);
+				if (mappingIndex && proguardMapIndexFile.isFile()) {
+					projectHelper.attachArtifact(mavenProject, "idx", attachMapArtifactClassifier, proguardMapIndexFile);
+				}
 			} else {
 				throw new MojoExecutionException("Map artifact classifier cannot be empty");
 //				projectHelper.attachArtifact(mavenProject, attachMapArtifactType, null, proguardMapFile);
@@ -930,8 +1474,76 @@ public class ProGuardMojo extends AbstractMojo {
 		return new File(proguardJar);
 	}
 
-	private void proguardMain(File proguardJar, List<String> argsList, ProGuardMojo mojo)
-			throws MojoExecutionException {
+	private void proguardMain(File proguardJar, List<String> argsList, ProGuardMojo mojo, String heap,
+			boolean useDaemon) throws MojoExecutionException {
+		LogPump pump;
+		try {
+			pump = new LogPump(mojo.log, "[" + mojo.mavenProject.getArtifactId() + ":" + mojo.executionId + "] ",
+					LOG_QUEUE_LINES, mojo.logWarningLimit, mojo.silent, mojo.logFile);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Can't write the ProGuard log to " + mojo.logFile, e);
+		}
+		try {
+			proguardMain(proguardJar, argsList, mojo, heap, useDaemon, pump);
+		} finally {
+			try {
+				pump.close();
+			} catch (IOException e) {
+				mojo.log.warn("Can't write the ProGuard log to " + mojo.logFile + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private void proguardMain(File proguardJar, List<String> argsList, ProGuardMojo mojo, String heap,
+			boolean useDaemon, LogPump pump) throws MojoExecutionException {
+
+		if (useDaemon) {
+			mojo.getLog().info("proguard jar: " + proguardJar + " (daemon)");
+			List<String> jvmArgs = new ArrayList<String>();
+			if (heap != null) {
+				jvmArgs.add("-Xmx" + heap);
+			}
+			if (mojo.jvmArgs != null) {
+				jvmArgs.addAll(mojo.jvmArgs);
+			}
+			try {
+				OutputStream out = mojo.proguardOutput.stream(pump.stream(),
+						mojo.hideStatistics() ? pump.debugStream() : pump.stream());
+				int result;
+				try {
+					result = ProGuardDaemon.execute(mojo.daemonDirectory, proguardJar, mojo.proguardMainClass, jvmArgs,
+							mojo.daemonIdleTimeout * 1000L, argsList, mojo.mavenProject.getBasedir(), out);
+				} finally {
+					out.close();
+				}
+				if (result == ProGuardLauncher.EXIT_OUT_OF_MEMORY) {
+					throw new OutOfMemoryException();
+				}
+				if (result != 0) {
+					throw new MojoExecutionException("Obfuscation failed (result=" + result + ")");
+				}
+				return;
+			} catch (UnsupportedOperationException e) {
+				mojo.getLog().warn(e.getMessage() + ", falling back to a forked JVM");
+			} catch (IOException e) {
+				mojo.getLog().warn("ProGuard daemon failed (" + e.getMessage() + "), falling back to a forked JVM");
+			}
+		} else if (!mojo.fork && !mojo.daemon) {
+			mojo.getLog().info("proguard jar: " + proguardJar + " (in process)");
+			if (mojo.jvmArgs != null && !mojo.jvmArgs.isEmpty()) {
+				mojo.getLog().warn("jvmArgs are ignored when ProGuard runs in process");
+			}
+			try {
+				InProcessProGuard.run(proguardJar, mojo.proguardMainClass, argsList, mojo.mavenProject.getBasedir());
+				return;
+			} catch (UnsupportedOperationException e) {
+				mojo.getLog().warn(e.getMessage() + ", falling back to a forked JVM");
+			} catch (Exception e) {
+				throw new MojoExecutionException("Obfuscation failed: " + e.getMessage(), e);
+			} catch (LinkageError e) {
+				throw new MojoExecutionException("Obfuscation failed: " + e, e);
+			}
+		}
 
 		Java java = new Java();
 
@@ -939,13 +1551,7 @@ public class ProGuardMojo extends AbstractMojo {
 		antProject.setName(mojo.mavenProject.getName());
 		antProject.init();
 
-		DefaultLogger antLogger = new DefaultLogger();
-		antLogger.setOutputPrintStream(System.out);
-		antLogger.setErrorPrintStream(System.err);
-		int logLevel = mojo.log.isDebugEnabled() ? Project.MSG_DEBUG : Project.MSG_INFO;
-		antLogger.setMessageOutputLevel(silent ? Project.MSG_ERR : logLevel);
-
-		antProject.addBuildListener(antLogger);
+		antProject.addBuildListener(mojo.proguardOutput.listener(pump.listener(), mojo.hideStatistics()));
 		antProject.setBaseDir(mojo.mavenProject.getBasedir());
 
 		java.setProject(antProject);
@@ -955,15 +1561,53 @@ public class ProGuardMojo extends AbstractMojo {
 
 		java.createClasspath().setLocation(proguardJar);
 		// java.createClasspath().setPath(System.getProperty("java.class.path"));
-		java.setClassname(mojo.proguardMainClass);
 
-		java.setFailonerror(true);
+		// the launcher reports the peak heap and running out of memory
+		File heapReport = null;
+		List<File> classPath = new ArrayList<File>();
+		classPath.add(proguardJar);
+		try {
+			File pluginClassPath = ProGuardDaemon.pluginClassPath();
+			heapReport = File.createTempFile("proguard-heap", ".properties");
+			java.createClasspath().setLocation(pluginClassPath);
+			classPath.add(pluginClassPath);
+			java.setClassname(ProGuardLauncher.class.getName());
+			java.createArg().setValue(heapReport.getAbsolutePath());
+			java.createArg().setValue(mojo.proguardMainClass);
+		} catch (IOException e) {
+			mojo.getLog().debug("Running ProGuard without launcher: " + e.getMessage());
+			java.setClassname(mojo.proguardMainClass);
+		}
+
+		java.setFailonerror(false);
 
 		java.setFork(true);
 
 		// get the maxMemory setting
-		if (mojo.maxMemory != null) {
-			java.setMaxmemory(mojo.maxMemory);
+		if (heap != null) {
+			java.setMaxmemory(heap);
+		}
+		if (mojo.jvmArgs != null) {
+			for (String jvmArg : mojo.jvmArgs) {
+				java.createJvmarg().setValue(jvmArg);
+			}
+		}
+
+		ClassDataSharing cds = null;
+		if (mojo.classDataSharing) {
+			try {
+				cds = classDataSharing(classPath, mojo);
+				if (cds != null) {
+					for (String jvmArg : cds.jvmArgs()) {
+						java.createJvmarg().setValue(jvmArg);
+					}
+					mojo.getLog().debug((cds.isDumping() ? "Creating" : "Using") + " class data sharing archive "
+							+ cds.getArchive());
+				}
+			} catch (IOException e) {
+				mojo.getLog().warn("Can't use class data sharing: " + e.getMessage());
+				cds = null;
+			}
 		}
 
 		for (String arg : argsList) {
@@ -971,79 +1615,96 @@ public class ProGuardMojo extends AbstractMojo {
 		}
 
 		int result = java.executeJava();
+		if (cds != null) {
+			try {
+				cds.completed(result == 0);
+			} catch (IOException e) {
+				mojo.getLog().warn("Can't store the class data sharing archive: " + e.getMessage());
+			}
+		}
+		if (heapReport != null) {
+			try {
+				Properties report = new Properties();
+				FileOperations.load(report, heapReport);
+				mojo.peakHeap = Long.parseLong(report.getProperty(ProGuardLauncher.PEAK_HEAP, "0"));
+				mojo.maxHeap = Long.parseLong(report.getProperty(ProGuardLauncher.MAX_HEAP, "0"));
+				mojo.peakRss = Long.parseLong(report.getProperty(ProGuardLauncher.PEAK_RSS, "0"));
+			} catch (IOException e) {
+				mojo.getLog().debug("Can't read the ProGuard heap report: " + e.getMessage());
+			} catch (NumberFormatException e) {
+				mojo.getLog().debug("Invalid ProGuard heap report: " + e.getMessage());
+			} finally {
+				heapReport.delete();
+			}
+		}
+		if (result == ProGuardLauncher.EXIT_OUT_OF_MEMORY) {
+			throw new OutOfMemoryException();
+		}
 		if (result != 0) {
 			throw new MojoExecutionException("Obfuscation failed (result=" + result + ")");
 		}
 	}
 
-	private String nameNoType(String fileName) {
-		int extStart = fileName.lastIndexOf('.');
-		if (extStart == -1) {
-			return fileName;
-		}
-		return fileName.substring(0, extStart);
+	/**
+	 * Statistics are only shown when ProGuard was asked to be verbose, not when -verbose was added to collect them.
+	 */
+	private boolean hideStatistics() {
+		return !log.isDebugEnabled() && !userVerbose();
 	}
 
-	private boolean deleteFileOrDirectory(File path) throws MojoFailureException {
-		if (path.isDirectory()) {
-			File[] files = path.listFiles();
-			if (null != files) {
-				for (File file : files) {
-					if (file.isDirectory()) {
-						if (!deleteFileOrDirectory(file)) {
-							throw new MojoFailureException("Can't delete dir " + file);
-						}
-					} else {
-						if (!file.delete()) {
-							throw new MojoFailureException("Can't delete file " + file);
-						}
-					}
-				}
-			}
-			return path.delete();
-		} else {
-			return path.delete();
-		}
+	private boolean userVerbose() {
+		return options != null && Arrays.asList(options).contains("-verbose");
 	}
 
-	private static Set<Artifact> getDependancies(Inclusion inc, MavenProject mavenProject) throws MojoExecutionException {
-		@SuppressWarnings("unchecked")
-		Set<Artifact> artifacts = mavenProject.getArtifacts();
-		Set<Artifact> dependencies = new HashSet<Artifact>();
-		for (Artifact artifact: artifacts) {
-			if (inc.match(artifact)) {
-				dependencies.add(artifact);
+	private static ClassDataSharing classDataSharing(List<File> classPath, ProGuardMojo mojo) throws IOException {
+		for (File entry : classPath) {
+			if (!entry.isFile()) {
+				mojo.getLog().debug("No class data sharing for class path entry " + entry);
+				return null;
 			}
 		}
-		if (dependencies.size() == 0)
-			throw new MojoExecutionException("artifactId Not found " + inc.artifactId);
-		return dependencies;
+		return ClassDataSharing.forClassPath(new File(mojo.cacheDirectory, "cds"), classPath);
 	}
 
-	private static Artifact getDependancy(Inclusion inc, MavenProject mavenProject) throws MojoExecutionException {
-		@SuppressWarnings("unchecked")
-		Set<Artifact> dependency = mavenProject.getArtifacts();
-		for (Artifact artifact : dependency) {
-			if (inc.match(artifact)) {
-				return artifact;
-			}
+	/**
+	 * Returns the mapping reuseMapping applies, which may not exist.
+	 */
+	private File previousMapping(File proguardMapFile) {
+		if (previousMappingVersion == null || previousMappingVersion.length() == 0) {
+			return proguardMapFile;
 		}
-		throw new MojoExecutionException("artifactId Not found " + inc.artifactId);
+		Artifact previous = new DefaultArtifact(mavenProject.getGroupId(), mavenProject.getArtifactId(),
+				VersionRange.createFromVersion(previousMappingVersion), null, attachMapArtifactType, attachMapArtifactClassifier,
+				new DefaultArtifactHandler(attachMapArtifactType));
+		return new File(localRepository.getBasedir(), localRepository.pathOf(previous));
 	}
 
-	private boolean isExclusion(Artifact artifact) {
-		if (exclusions == null) {
-			return false;
+	private String nameNoType(String fileName) {
+		int extStart = fileName.lastIndexOf('.');
+		if (extStart == -1) {
+			return fileName;
 		}
-		for (Exclusion excl : exclusions) {
-			if (excl.match(artifact)) {
-				return true;
-			}
+		return fileName.substring(0, extStart);
+	}
+
+	/**
+	 * Deletes a file or directory tree; directories are moved aside and deleted in the background.
+	 */
+	private void delete(File path) throws MojoFailureException {
+		try {
+			cleaner.delete(path);
+		} catch (IOException e) {
+			throw new MojoFailureException(e.getMessage(), e);
 		}
-		return false;
 	}
 
-	private File getClasspathElement(Artifact artifact, MavenProject mavenProject, File libsDir) throws MojoExecutionException {
+	/**
+	 * Returns the file to pass to ProGuard for an artifact. When processing a war, jars of WEB-INF/lib take
+	 * precedence; they are extracted when <code>extract</code> is set or when the artifact is not in the local
+	 * repository, otherwise the repository file (with the same content) is used.
+	 */
+	private File getClasspathElement(Artifact artifact, MavenProject mavenProject, WarArchive war, boolean extract)
+			throws MojoExecutionException {
 		if (artifact.getClassifier() != null) {
 			return artifact.getFile();
 		}
@@ -1053,25 +1714,18 @@ public class ProGuardMojo extends AbstractMojo {
 			return new File(project.getBuild().getOutputDirectory());
 		} else {
 
-			if (libsDir != null) {
-				final String filenameBase = artifact.getArtifactId() + "-";
-				File[] artifactFilesInLib = libsDir.listFiles(new FilenameFilter() {
-					public boolean accept(File dir, String name) {
-						if (name.startsWith(filenameBase) && name.length() > filenameBase.length() + 4) {
-							// check if the first char after base name is a digit (assuming version number)
-							boolean digitFound = Character.isDigit(name.charAt(filenameBase.length()));
-							return digitFound;
-						}
-						return false;
+			File file = artifact.getFile();
+			if (war != null) {
+				try {
+					String name = war.getLibraryIndex().find(artifact);
+					if (name != null && (extract || file == null || !file.exists())) {
+						return war.extractLibrary(name);
 					}
-				});
-				if (artifactFilesInLib.length > 1)
-					System.out.println("Warn: Found more than one library for artifact " + artifact + ": " + artifactFilesInLib);
-				if (artifactFilesInLib.length > 0)
-					return artifactFilesInLib[0];
+				} catch (IOException e) {
+					throw new MojoExecutionException("Can't extract " + artifact + " from " + war.getFile(), e);
+				}
 			}
 
-			File file = artifact.getFile();
 			if ((file == null) || (!file.exists())) {
 				throw new MojoExecutionException("Dependency Resolution Required " + artifact);
 			}
@@ -1080,22 +1734,129 @@ public class ProGuardMojo extends AbstractMojo {
 	}
 
 	/**
-	 * Unzips archive from the given path to the given destination dir.
+	 * Writes the assembly: a new manifest, the ProGuard output and the merged jars and directories, and the Maven
+	 * descriptor when it is missing. Entries of jars are copied without inflating them, only the manifest, the
+	 * descriptor and files of directories are compressed. The ProGuard output is replaced once the assembly is
+	 * complete.
+	 */
+	private void writeAssembly(File outJarFile, List<File> merged) throws MojoExecutionException {
+		File tmp = new File(outJarFile.getPath() + ".tmp");
+		try {
+			RawZipWriter writer = new RawZipWriter(tmp, compression);
+			JarMerger merger;
+			try {
+				long now = System.currentTimeMillis();
+				writeManifest(writer, now);
+				merger = new JarMerger(writer, assemblyDuplicates);
+				merger.addJar(outJarFile);
+				for (File file : merged) {
+					if (file.isDirectory()) {
+						merger.addDirectory(file);
+					} else {
+						merger.addJar(file);
+					}
+				}
+				if (addMavenDescriptor && !writer.contains(mavenDescriptorDir() + "pom.xml")) {
+					addMavenDescriptor(writer, now);
+				}
+			} finally {
+				writer.close();
+			}
+			for (String duplicate : merger.getDuplicates()) {
+				getLog().warn("Duplicate entry left out of the assembly: " + duplicate);
+			}
+			metrics.current().read(PhaseMetrics.sizeOf(merged) + outJarFile.length()).written(tmp.length());
+			getLog().debug("Assembly copied " + merger.getCopiedBytes() + " compressed bytes, compressed "
+					+ merger.getCompressedBytes() + " bytes");
+			Files.move(tmp.toPath(), outJarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (Exception e) {
+			tmp.delete();
+			throw new MojoExecutionException("Unable to create jar", e);
+		}
+	}
+
+	/**
+	 * Writes the processed war: a new manifest, the untouched entries of the input copied as they are, then the
+	 * processed classes and jar. The input may be the output, so the war is written to a temporary file first.
+	 */
+	private void writeWar(WarArchive war, File outputWar, File classesDir, File outJarFile)
+			throws MojoExecutionException {
+		File tmp = new File(outputWar.getPath() + ".tmp");
+		try {
+			RawZipWriter writer = new RawZipWriter(tmp, compression);
+			try {
+				long now = System.currentTimeMillis();
+				writeManifest(writer, now);
+				if (addMavenDescriptor && !war.contains(mavenDescriptorDir() + "pom.xml")) {
+					addMavenDescriptor(writer, now);
+				}
+				war.copyTo(writer);
+				if (classesDir != null) {
+					writer.addTree(WarArchive.CLASSES, classesDir);
+				}
+				if (outJarFile.exists()) {
+					writer.add(WarArchive.LIB + outJarFile.getName(), outJarFile);
+				}
+			} finally {
+				writer.close();
+				war.close();
+			}
+			Files.move(tmp.toPath(), outputWar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (Exception e) {
+			tmp.delete();
+			throw new MojoExecutionException("Unable to create war", e);
+		}
+	}
+
+	/**
+	 * Writes the META-INF directory and a manifest built from the archive configuration, like MavenArchiver does.
 	 */
-	private static void unzip(File archiveFile, File destDir) throws IOException, MojoFailureException {
-		final class Expander extends Expand {
-			public Expander() {
-				project = new Project();
-				project.init();
-				taskType = "unzip";
-				taskName = "unzip";
-				target = new Target();
+	private void writeManifest(RawZipWriter writer, long time) throws Exception {
+		writer.addDirectory("META-INF/", time);
+		StringWriter manifest = new StringWriter();
+		PrintWriter manifestWriter = new PrintWriter(manifest);
+		new MavenArchiver().getManifest(mavenProject, archive).write(manifestWriter);
+		manifestWriter.flush();
+		writer.add(JarMerger.MANIFEST, new ByteArrayInputStream(manifest.toString().getBytes("UTF-8")), time);
+	}
+
+	/**
+	 * Returns the compression of the archives the plugin writes; archive.compress=false stores all entries.
+	 */
+	private Compression compression() {
+		return new Compression(archive.isCompress() ? compressionLevel : 0, compressionThreads,
+				storeExtensions != null ? storeExtensions : Compression.DEFAULT_STORED_EXTENSIONS);
+	}
+
+	private static long parseSize(String parameter, String value) {
+		try {
+			return BuildCache.parseSize(value);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid " + parameter + " " + value + ", use e.g. 512m or 4g", e);
+		}
+	}
+
+	private String mavenDescriptorDir() {
+		return "META-INF/maven/" + mavenProject.getGroupId() + "/" + mavenProject.getArtifactId() + "/";
+	}
+
+	private void addMavenDescriptor(RawZipWriter writer, long time) throws IOException {
+		String dir = mavenDescriptorDir();
+		for (String name : new String[] { "META-INF/maven/", "META-INF/maven/" + mavenProject.getGroupId() + "/", dir }) {
+			if (!writer.contains(name)) {
+				writer.addDirectory(name, time);
 			}
 		}
-		Expander expander = new Expander();
-		expander.setSrc(archiveFile);
-		expander.setDest(destDir);
-		expander.execute();
+		if (mavenProject.getFile() != null && mavenProject.getFile().isFile()) {
+			writer.add(dir + "pom.xml", mavenProject.getFile());
+		}
+		Properties pom = new Properties();
+		pom.setProperty("groupId", mavenProject.getGroupId());
+		pom.setProperty("artifactId", mavenProject.getArtifactId());
+		pom.setProperty("version", mavenProject.getVersion());
+		ByteArrayOutputStream properties = new ByteArrayOutputStream();
+		pom.store(properties, "Generated by Maven");
+		writer.add(dir + "pom.properties", new ByteArrayInputStream(properties.toByteArray()), time);
 	}
 
 	private String buildJarReference(File jarFile, String jarFilter) {
@@ -1120,4 +1881,16 @@ public class ProGuardMojo extends AbstractMojo {
 		}
 		return filter.toString();
 	}
+
+	/**
+	 * Thrown when ProGuard ran out of heap, so the run can be retried with more.
+	 */
+	private static final class OutOfMemoryException extends MojoExecutionException {
+
+		private static final long serialVersionUID = 1L;
+
+		OutOfMemoryException() {
+			super("ProGuard ran out of memory");
+		}
+	}
 }
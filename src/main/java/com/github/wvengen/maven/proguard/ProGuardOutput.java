@@ -0,0 +1,287 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+
+/**
+ * Structured metrics parsed from the console output of a <code>-verbose</code> ProGuard run: the duration of every
+ * stage, the number of optimization passes, class counts before and after shrinking, the optimization counters and
+ * the output jars. Lines that only carry these statistics can be hidden from the build log.
+ */
+final class ProGuardOutput {
+
+	private static final Pattern STAGE = Pattern.compile("([A-Z][A-Za-z ,]*?)(?: \\(pass (\\d+)/(\\d+)\\))?(?: \\[.*\\])?\\.\\.\\.");
+
+	private static final Pattern CLASS_COUNT = Pattern.compile("(Original|Final) number of (program|library) classes: *(\\d+)");
+
+	private static final Pattern COUNTER = Pattern.compile("Number of ([a-z -]+): *(\\d+)");
+
+	private static final Pattern JAR = Pattern.compile("(Reading program|Reading library|Preparing output) (jar|directory|zip|war|ear|aar|jmod|apk) \\[(.*)\\].*");
+
+	private final Map<String, Long> stageMillis = new LinkedHashMap<String, Long>();
+
+	private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+	private final Map<String, Long> classes = new LinkedHashMap<String, Long>();
+
+	private final List<String> outputs = new ArrayList<String>();
+
+	private int programJars;
+
+	private int libraryJars;
+
+	private int passes;
+
+	private String stage;
+
+	private long stageStart;
+
+	private long outputBytes;
+
+	/**
+	 * Parses one line of output at the current time.
+	 *
+	 * @return whether the line is only a statistic, i.e. not printed by ProGuard without -verbose
+	 */
+	synchronized boolean line(String line) {
+		return line(line, System.currentTimeMillis());
+	}
+
+	synchronized boolean line(String line, long time) {
+		String text = line.trim();
+		Matcher jar = JAR.matcher(text);
+		if (jar.matches()) {
+			if (jar.group(1).equals("Reading program")) {
+				programJars++;
+			} else if (jar.group(1).equals("Reading library")) {
+				libraryJars++;
+			} else {
+				outputs.add(jar.group(3));
+			}
+			return false;
+		}
+		Matcher count = CLASS_COUNT.matcher(text);
+		if (count.matches()) {
+			String key = count.group(2) + "Classes." + (count.group(1).equals("Original") ? "input" : "kept");
+			long value = Long.parseLong(count.group(3));
+			// shrinking runs again after optimization, the first input and the last result count
+			if (!key.endsWith("input") || !classes.containsKey(key)) {
+				classes.put(key, value);
+			}
+			return true;
+		}
+		Matcher counter = COUNTER.matcher(text);
+		if (counter.matches()) {
+			String key = counter.group(1);
+			Long previous = counters.get(key);
+			counters.put(key, (previous != null ? previous : 0) + Long.parseLong(counter.group(2)));
+			return true;
+		}
+		Matcher stageHeader = STAGE.matcher(text);
+		if (stageHeader.matches() && line.equals(text)) {
+			endStage(time);
+			stage = stageHeader.group(1);
+			stageStart = time;
+			if (stageHeader.group(2) != null) {
+				passes = Math.max(passes, Integer.parseInt(stageHeader.group(2)));
+			} else if (stage.equals("Optimizing")) {
+				passes = Math.max(passes, 1);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Ends the last stage, at the end of the run.
+	 */
+	synchronized void finish(long outputBytes) {
+		endStage(System.currentTimeMillis());
+		this.outputBytes = outputBytes;
+	}
+
+	private void endStage(long time) {
+		if (stage != null) {
+			Long previous = stageMillis.get(stage);
+			stageMillis.put(stage, (previous != null ? previous : 0) + time - stageStart);
+			stage = null;
+		}
+	}
+
+	synchronized boolean isEmpty() {
+		return stageMillis.isEmpty() && classes.isEmpty() && programJars == 0;
+	}
+
+	/**
+	 * Returns the metrics as flat properties, e.g. for the Maven project.
+	 */
+	synchronized Map<String, String> toProperties(String prefix) {
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+		properties.put(prefix + "programJars", Integer.toString(programJars));
+		properties.put(prefix + "libraryJars", Integer.toString(libraryJars));
+		for (String kind : new String[] { "program", "library" }) {
+			Long input = classes.get(kind + "Classes.input");
+			Long kept = classes.get(kind + "Classes.kept");
+			if (input != null && kept != null) {
+				properties.put(prefix + kind + "Classes.input", input.toString());
+				properties.put(prefix + kind + "Classes.kept", kept.toString());
+				properties.put(prefix + kind + "Classes.removed", Long.toString(input - kept));
+			}
+		}
+		properties.put(prefix + "optimizationPasses", Integer.toString(passes));
+		for (Map.Entry<String, Long> entry : stageMillis.entrySet()) {
+			properties.put(prefix + "stage." + key(entry.getKey()) + ".millis", entry.getValue().toString());
+		}
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			properties.put(prefix + "optimization." + key(entry.getKey()), entry.getValue().toString());
+		}
+		properties.put(prefix + "outputBytes", Long.toString(outputBytes));
+		return properties;
+	}
+
+	/**
+	 * Returns the metrics as a JSON object.
+	 */
+	synchronized String toJson() {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, String> entry : toProperties("").entrySet()) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append("\n    ").append(PhaseMetrics.quote(entry.getKey())).append(": ").append(entry.getValue());
+		}
+		json.append(",\n    \"outputs\": [");
+		for (int i = 0; i < outputs.size(); i++) {
+			json.append(i > 0 ? ", " : "").append(PhaseMetrics.quote(outputs.get(i)));
+		}
+		return json.append("]\n  }").toString();
+	}
+
+	private static String key(String name) {
+		StringBuilder key = new StringBuilder();
+		boolean upper = false;
+		for (char c : name.toLowerCase(Locale.ENGLISH).toCharArray()) {
+			if (Character.isLetterOrDigit(c)) {
+				key.append(upper ? Character.toUpperCase(c) : c);
+				upper = false;
+			} else {
+				upper = key.length() > 0;
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns an Ant listener that parses the output of the forked ProGuard JVM and passes all events and lines on
+	 * to the given listener.
+	 *
+	 * @param hideStatistics whether to pass statistics lines on at debug level
+	 */
+	BuildListener listener(final BuildListener delegate, final boolean hideStatistics) {
+		return new BuildListener() {
+
+			public void buildStarted(BuildEvent event) {
+				delegate.buildStarted(event);
+			}
+
+			public void buildFinished(BuildEvent event) {
+				delegate.buildFinished(event);
+			}
+
+			public void targetStarted(BuildEvent event) {
+				delegate.targetStarted(event);
+			}
+
+			public void targetFinished(BuildEvent event) {
+				delegate.targetFinished(event);
+			}
+
+			public void taskStarted(BuildEvent event) {
+				delegate.taskStarted(event);
+			}
+
+			public void taskFinished(BuildEvent event) {
+				delegate.taskFinished(event);
+			}
+
+			public void messageLogged(BuildEvent event) {
+				boolean statistic = event.getTask() != null && event.getMessage() != null && line(event.getMessage());
+				if (statistic && hideStatistics) {
+					event.setMessage(event.getMessage(), Project.MSG_DEBUG);
+				}
+				delegate.messageLogged(event);
+			}
+		};
+	}
+
+	/**
+	 * Returns a stream that parses the lines written to it and passes them on to the given streams.
+	 *
+	 * @param statistics the stream that gets the statistics lines
+	 */
+	OutputStream stream(final OutputStream delegate, final OutputStream statistics) {
+		return new OutputStream() {
+
+			private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			@Override
+			public void write(int b) throws IOException {
+				buffer.write(b);
+				if (b == '\n') {
+					flushLine();
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				delegate.flush();
+				statistics.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (buffer.size() > 0) {
+					flushLine();
+				}
+				flush();
+			}
+
+			private void flushLine() throws IOException {
+				byte[] bytes = buffer.toByteArray();
+				buffer.reset();
+				String text = new String(bytes);
+				if (line(text.replaceAll("[\r\n]+$", ""))) {
+					statistics.write(bytes);
+				} else {
+					delegate.write(bytes);
+				}
+			}
+		};
+	}
+}
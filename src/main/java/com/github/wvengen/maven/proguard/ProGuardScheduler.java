@@ -0,0 +1,144 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Admits ProGuard runs of a whole (parallel) Maven build against a total heap budget. A run asks for its maximum
+ * heap and waits until that much of the budget is free; runs are admitted in the order they asked, so a large module
+ * is not starved by smaller ones. A run asking for more than the budget runs alone.
+ * <p>
+ * There is one scheduler per plugin class loader, i.e. per build; its budget is set by the first execution.
+ * </p>
+ */
+final class ProGuardScheduler {
+
+	/** Assumed heap of a ProGuard run without maxMemory, the JVM's default of a quarter of physical memory */
+	private static final long DEFAULT_HEAP_DIVISOR = 4;
+
+	private static final long FALLBACK_MEMORY = 4L * 1024 * 1024 * 1024;
+
+	private static ProGuardScheduler instance;
+
+	private final long budget;
+
+	private long used;
+
+	private long nextTicket;
+
+	private long admittedTicket;
+
+	/** Tickets of runs that were interrupted while waiting */
+	private final Set<Long> abandoned = new HashSet<Long>();
+
+	ProGuardScheduler(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the scheduler of this build, creating it with the given budget on first use.
+	 *
+	 * @param budget total heap in bytes, or 0 for three quarters of physical memory
+	 */
+	static synchronized ProGuardScheduler get(long budget) {
+		if (instance == null) {
+			instance = new ProGuardScheduler(budget > 0 ? budget : physicalMemory() / 4 * 3);
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the heap a ProGuard run is expected to use.
+	 *
+	 * @param maxMemory the maxMemory setting, may be null
+	 */
+	static long heapOf(String maxMemory) {
+		if (maxMemory != null && maxMemory.trim().length() > 0) {
+			return BuildCache.parseSize(maxMemory);
+		}
+		return physicalMemory() / DEFAULT_HEAP_DIVISOR;
+	}
+
+	long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Waits until the given heap fits into the budget.
+	 *
+	 * @return the part of the budget taken, to be passed to {@link #release(long)}
+	 */
+	synchronized long acquire(long heap) throws InterruptedException {
+		long taken = Math.min(heap, budget);
+		long ticket = nextTicket++;
+		try {
+			while (ticket != admittedTicket || used + taken > budget) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			abandoned.add(ticket);
+			nextAdmitted();
+			notifyAll();
+			throw e;
+		}
+		admittedTicket++;
+		nextAdmitted();
+		used += taken;
+		notifyAll();
+		return taken;
+	}
+
+	/**
+	 * Returns heap taken by {@link #acquire(long)} to the budget.
+	 */
+	synchronized void release(long taken) {
+		used -= taken;
+		notifyAll();
+	}
+
+	synchronized long getUsed() {
+		return used;
+	}
+
+	private void nextAdmitted() {
+		while (abandoned.remove(admittedTicket)) {
+			admittedTicket++;
+		}
+	}
+
+	static long physicalMemory() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		// getTotalPhysicalMemorySize is deprecated since Java 14, getTotalMemorySize does not exist before
+		for (String getter : new String[] { "getTotalMemorySize", "getTotalPhysicalMemorySize" }) {
+			try {
+				Class<?> type = Class.forName("com.sun.management.OperatingSystemMXBean");
+				if (!type.isInstance(os)) {
+					break;
+				}
+				long memory = ((Number) type.getMethod(getter).invoke(os)).longValue();
+				if (memory > 0) {
+					return memory;
+				}
+			} catch (ReflectiveOperationException e) {
+				// not a HotSpot based JVM, or an older one
+			}
+		}
+		return FALLBACK_MEMORY;
+	}
+}
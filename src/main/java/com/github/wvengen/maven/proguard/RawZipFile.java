@@ -0,0 +1,365 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of a zip archive that exposes where the compressed data of each entry is stored, so entries can
+ * be copied into another archive (see {@link RawZipWriter}) or extracted without going through a stream over the
+ * whole archive. Only the central directory is read when the archive is opened.
+ */
+final class RawZipFile implements Closeable {
+
+	static final int STORED = 0;
+
+	static final int DEFLATED = 8;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+
+	private static final int CENTRAL_HEADER = 0x02014b50;
+
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+
+	static final class Entry {
+
+		String name;
+
+		int versionMadeBy;
+
+		int flags;
+
+		int method;
+
+		/** MS-DOS date in the high and time in the low 16 bits */
+		int dosDateTime;
+
+		int crc;
+
+		long compressedSize;
+
+		long size;
+
+		int internalAttributes;
+
+		int externalAttributes;
+
+		long localHeaderOffset;
+
+		byte[] extra;
+
+		byte[] comment;
+
+		private long dataOffset = -1;
+
+		String getName() {
+			return name;
+		}
+
+		boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		long getSize() {
+			return size;
+		}
+
+		long getCompressedSize() {
+			return compressedSize;
+		}
+
+		int getMethod() {
+			return method;
+		}
+
+		int getCrc() {
+			return crc;
+		}
+
+		/**
+		 * Returns the modification time in milliseconds, in the local time zone like MS-DOS times are.
+		 */
+		long getTime() {
+			Calendar calendar = Calendar.getInstance();
+			calendar.clear();
+			calendar.set(1980 + ((dosDateTime >> 25) & 0x7f), ((dosDateTime >> 21) & 0x0f) - 1,
+					(dosDateTime >> 16) & 0x1f, (dosDateTime >> 11) & 0x1f, (dosDateTime >> 5) & 0x3f,
+					(dosDateTime << 1) & 0x3e);
+			return calendar.getTimeInMillis();
+		}
+	}
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	private final Map<String, Entry> entriesByName = new HashMap<String, Entry>();
+
+	RawZipFile(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+		try {
+			readCentralDirectory();
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw new ZipException("Invalid zip archive " + file + ": " + e);
+		}
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	FileChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the entries in central directory order.
+	 */
+	List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	Entry getEntry(String name) {
+		return entriesByName.get(name);
+	}
+
+	/**
+	 * Returns the position of the compressed data of an entry, which follows its local header.
+	 */
+	long getDataOffset(Entry entry) throws IOException {
+		if (entry.dataOffset < 0) {
+			ByteBuffer header = read(entry.localHeaderOffset, 30);
+			if (header.getInt(0) != LOCAL_HEADER) {
+				throw new ZipException("Invalid local header for " + entry.name + " in " + file);
+			}
+			entry.dataOffset = entry.localHeaderOffset + 30 + (header.getShort(26) & 0xffff)
+					+ (header.getShort(28) & 0xffff);
+		}
+		return entry.dataOffset;
+	}
+
+	/**
+	 * Opens a stream over the uncompressed content of an entry. The stream reads through positional reads, so
+	 * several streams may be used concurrently.
+	 */
+	InputStream getInputStream(Entry entry) throws IOException {
+		InputStream raw = new ChannelInputStream(channel, getDataOffset(entry), entry.compressedSize);
+		if (entry.method == STORED) {
+			return raw;
+		}
+		if (entry.method != DEFLATED) {
+			throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+		}
+		final Inflater inflater = new Inflater(true);
+		return new InflaterInputStream(raw, inflater, 8192) {
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					inflater.end();
+					super.close();
+				}
+			}
+		};
+	}
+
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	private void readCentralDirectory() throws IOException {
+		long length = channel.size();
+		int tail = (int) Math.min(length, 22 + 0xffff);
+		ByteBuffer buffer = read(length - tail, tail);
+		int eocd = -1;
+		for (int i = tail - 22; i >= 0; i--) {
+			if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+				eocd = i;
+				break;
+			}
+		}
+		if (eocd < 0) {
+			throw new ZipException("Not a zip archive: " + file);
+		}
+		long count = buffer.getShort(eocd + 10) & 0xffff;
+		long size = buffer.getInt(eocd + 12) & 0xffffffffL;
+		long offset = buffer.getInt(eocd + 16) & 0xffffffffL;
+		// archives with a prefix (e.g. self-extracting or jmod) have offsets relative to the start of the zip data
+		long prefix = (length - tail + eocd) - size - offset;
+		if ((count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) && eocd >= 20
+				&& buffer.getInt(eocd - 20) == ZIP64_LOCATOR) {
+			ByteBuffer zip64 = read(buffer.getLong(eocd - 20 + 8), 56);
+			if (zip64.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+				throw new ZipException("Invalid ZIP64 end of central directory in " + file);
+			}
+			count = zip64.getLong(32);
+			size = zip64.getLong(40);
+			offset = zip64.getLong(48);
+			prefix = 0;
+		}
+		if (prefix < 0 || size > Integer.MAX_VALUE) {
+			throw new ZipException("Invalid central directory in " + file);
+		}
+
+		ByteBuffer directory = read(offset + prefix, (int) size);
+		int position = 0;
+		for (long i = 0; i < count; i++) {
+			if (directory.getInt(position) != CENTRAL_HEADER) {
+				throw new ZipException("Invalid central directory entry in " + file);
+			}
+			Entry entry = new Entry();
+			entry.versionMadeBy = directory.getShort(position + 4) & 0xffff;
+			entry.flags = directory.getShort(position + 8) & 0xffff;
+			entry.method = directory.getShort(position + 10) & 0xffff;
+			entry.dosDateTime = directory.getInt(position + 12);
+			entry.crc = directory.getInt(position + 16);
+			entry.compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+			entry.size = directory.getInt(position + 24) & 0xffffffffL;
+			int nameLength = directory.getShort(position + 28) & 0xffff;
+			int extraLength = directory.getShort(position + 30) & 0xffff;
+			int commentLength = directory.getShort(position + 32) & 0xffff;
+			entry.internalAttributes = directory.getShort(position + 36) & 0xffff;
+			entry.externalAttributes = directory.getInt(position + 38);
+			entry.localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+			byte[] name = new byte[nameLength];
+			directory.position(position + 46);
+			directory.get(name);
+			entry.name = new String(name, UTF8);
+			entry.extra = new byte[extraLength];
+			directory.get(entry.extra);
+			entry.comment = new byte[commentLength];
+			directory.get(entry.comment);
+			readZip64Extra(entry);
+			entry.localHeaderOffset += prefix;
+			position += 46 + nameLength + extraLength + commentLength;
+
+			entries.add(entry);
+			if (!entriesByName.containsKey(entry.name)) {
+				entriesByName.put(entry.name, entry);
+			}
+		}
+	}
+
+	private static void readZip64Extra(Entry entry) {
+		ByteBuffer extra = ByteBuffer.wrap(entry.extra).order(ByteOrder.LITTLE_ENDIAN);
+		while (extra.remaining() >= 4) {
+			int id = extra.getShort() & 0xffff;
+			int length = extra.getShort() & 0xffff;
+			int next = extra.position() + length;
+			if (id == 1) {
+				if (entry.size == 0xffffffffL && extra.position() + 8 <= next) {
+					entry.size = extra.getLong();
+				}
+				if (entry.compressedSize == 0xffffffffL && extra.position() + 8 <= next) {
+					entry.compressedSize = extra.getLong();
+				}
+				if (entry.localHeaderOffset == 0xffffffffL && extra.position() + 8 <= next) {
+					entry.localHeaderOffset = extra.getLong();
+				}
+			}
+			if (next > extra.limit()) {
+				break;
+			}
+			extra.position(next);
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new ZipException("Unexpected end of " + file);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Stream over a region of a file channel using positional reads.
+	 */
+	private static final class ChannelInputStream extends InputStream {
+
+		private final FileChannel channel;
+
+		private long position;
+
+		private final long end;
+
+		ChannelInputStream(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.end = position + length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+			int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if (n > 0) {
+				position += n;
+			}
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(end - position, Integer.MAX_VALUE);
+		}
+	}
+}
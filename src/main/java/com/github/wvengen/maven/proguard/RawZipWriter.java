@@ -0,0 +1,534 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive whose entries are either copied from another archive without inflating them, or compressed
+ * from files and byte arrays. Local headers are patched once the size of an entry is known, so no data descriptors
+ * are written. ZIP64 output is not supported.
+ * <p>
+ * With a {@link Compression} of more than one thread, files added by {@link #add(String, File)} and
+ * {@link #addTree(String, File)} are compressed in parallel; entries are still written in the order they were added,
+ * so the archive does not depend on the number of threads.
+ * </p>
+ */
+final class RawZipWriter implements Closeable {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+
+	private static final int CENTRAL_HEADER = 0x02014b50;
+
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	private static final int UTF8_FLAG = 0x0800;
+
+	private static final int DATA_DESCRIPTOR_FLAG = 0x0008;
+
+	/** Larger files are streamed by the writing thread instead of being held in memory while compressed */
+	private static final long MAX_PARALLEL_SIZE = 1024 * 1024;
+
+	/** Bytes of files each compression thread may have read and not yet written, not counting compressed copies */
+	private static final long PENDING_BYTES_PER_THREAD = 2 * 1024 * 1024;
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	private final List<RawZipFile.Entry> entries = new ArrayList<RawZipFile.Entry>();
+
+	private final Set<String> names = new HashSet<String>();
+
+	private final byte[] buffer = new byte[64 * 1024];
+
+	private final byte[] deflated = new byte[64 * 1024];
+
+	private final Compression compression;
+
+	/** Compresses files in parallel, null when single-threaded */
+	private final ExecutorService executor;
+
+	/** Entries being compressed, in the order they are written */
+	private final Deque<Future<Compressed>> pending = new ArrayDeque<Future<Compressed>>();
+
+	/** Sizes of the files of the pending entries */
+	private final Deque<Long> pendingSizes = new ArrayDeque<Long>();
+
+	private long pendingBytes;
+
+	private boolean closed;
+
+	RawZipWriter(File file) throws IOException {
+		this(file, Compression.DEFAULT);
+	}
+
+	RawZipWriter(File file, Compression compression) throws IOException {
+		this.file = file;
+		this.compression = compression;
+		this.executor = compression.getThreads() > 1 ? Executors.newFixedThreadPool(compression.getThreads()) : null;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.raf.setLength(0);
+		this.channel = raf.getChannel();
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	boolean contains(String name) {
+		return names.contains(name);
+	}
+
+	/**
+	 * Copies an entry of another archive, keeping its compressed data as is.
+	 */
+	void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+		writePending(0, 0);
+		reserve(entry.name);
+		RawZipFile.Entry copy = new RawZipFile.Entry();
+		copy.name = entry.name;
+		copy.versionMadeBy = entry.versionMadeBy;
+		copy.flags = entry.flags & ~DATA_DESCRIPTOR_FLAG;
+		copy.method = entry.method;
+		copy.dosDateTime = entry.dosDateTime;
+		copy.crc = entry.crc;
+		copy.compressedSize = entry.compressedSize;
+		copy.size = entry.size;
+		copy.internalAttributes = entry.internalAttributes;
+		copy.externalAttributes = entry.externalAttributes;
+		copy.extra = withoutZip64(entry.extra);
+		copy.comment = entry.comment;
+		begin(copy);
+		long position = source.getDataOffset(entry);
+		long remaining = entry.compressedSize;
+		while (remaining > 0) {
+			long n = source.getChannel().transferTo(position, remaining, channel);
+			if (n <= 0) {
+				throw new ZipException("Unexpected end of " + source.getFile() + " copying " + entry.name);
+			}
+			position += n;
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Adds a directory entry, the name must end with a slash.
+	 */
+	void addDirectory(String name, long time) throws IOException {
+		writePending(0, 0);
+		reserve(name);
+		RawZipFile.Entry entry = newEntry(name, time, RawZipFile.STORED);
+		begin(entry);
+		finish(entry, 0, 0, 0);
+	}
+
+	/**
+	 * Adds the content of a file.
+	 *
+	 * @param level the deflate level, or 0 to store the file uncompressed
+	 */
+	void add(String name, File source, int level) throws IOException {
+		writePending(0, 0);
+		InputStream in = new FileInputStream(source);
+		try {
+			add(name, in, source.lastModified(), level);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds the content of a file at the level the compression settings give for its name, on another thread when
+	 * there are several.
+	 */
+	void add(final String name, final File source) throws IOException {
+		final int level = compression.levelFor(name);
+		long size = source.length();
+		if (executor == null || size > MAX_PARALLEL_SIZE) {
+			add(name, source, level);
+			return;
+		}
+		reserve(name);
+		int threads = compression.getThreads();
+		writePending(threads * 4 - 1, threads * PENDING_BYTES_PER_THREAD - size);
+		pending.add(executor.submit(new Callable<Compressed>() {
+			public Compressed call() throws IOException {
+				return new Compressed(name, source, level);
+			}
+		}));
+		pendingSizes.add(size);
+		pendingBytes += size;
+	}
+
+	/**
+	 * Adds an entry with the content of a stream at the level the compression settings give for its name.
+	 */
+	void add(String name, InputStream in, long time) throws IOException {
+		add(name, in, time, compression.levelFor(name));
+	}
+
+	/**
+	 * Adds the files of a directory tree below a prefix (ending with a slash), in name order and including the
+	 * directory entries, see {@link #add(String, File)}.
+	 */
+	void addTree(String prefix, File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		if (prefix.length() > 0 && !contains(prefix)) {
+			addDirectory(prefix, dir.lastModified());
+		}
+		for (File child : files) {
+			if (child.isDirectory()) {
+				addTree(prefix + child.getName() + "/", child);
+			} else {
+				add(prefix + child.getName(), child);
+			}
+		}
+	}
+
+	/**
+	 * Adds an entry with the content of a stream.
+	 *
+	 * @param level the deflate level, or 0 to store the content uncompressed
+	 */
+	void add(String name, InputStream in, long time, int level) throws IOException {
+		writePending(0, 0);
+		reserve(name);
+		RawZipFile.Entry entry = newEntry(name, time, level == 0 ? RawZipFile.STORED : RawZipFile.DEFLATED);
+		begin(entry);
+		long start = channel.position();
+		CRC32 crc = new CRC32();
+		long size = 0;
+		if (level == 0) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, n);
+				write(ByteBuffer.wrap(buffer, 0, n));
+				size += n;
+			}
+		} else {
+			Deflater deflater = new Deflater(level, true);
+			try {
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					crc.update(buffer, 0, n);
+					size += n;
+					deflater.setInput(buffer, 0, n);
+					while (!deflater.needsInput()) {
+						drain(deflater);
+					}
+				}
+				deflater.finish();
+				while (!deflater.finished()) {
+					drain(deflater);
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+		finish(entry, (int) crc.getValue(), channel.position() - start, size);
+	}
+
+	/**
+	 * Adds an entry whose data has already been compressed, e.g. on another thread.
+	 */
+	void addCompressed(String name, long time, int method, int crc, long size, byte[] data, int length)
+			throws IOException {
+		writePending(0, 0);
+		reserve(name);
+		RawZipFile.Entry entry = newEntry(name, time, method);
+		begin(entry);
+		write(ByteBuffer.wrap(data, 0, length));
+		finish(entry, crc, length, size);
+	}
+
+	/**
+	 * Writes compressed entries, in order, until at most the given number and bytes of files are pending.
+	 */
+	private void writePending(int maxEntries, long maxBytes) throws IOException {
+		while (!pending.isEmpty() && (pending.size() > maxEntries || pendingBytes > maxBytes)) {
+			Compressed compressed;
+			try {
+				compressed = pending.peek().get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("Can't compress an entry of " + file + ": " + e.getCause(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while writing " + file);
+			}
+			pending.remove();
+			pendingBytes -= pendingSizes.remove();
+			RawZipFile.Entry entry = newEntry(compressed.name, compressed.time, compressed.method);
+			begin(entry);
+			write(ByteBuffer.wrap(compressed.data, 0, compressed.length));
+			finish(entry, compressed.crc, compressed.length, compressed.size);
+		}
+	}
+
+	private void reserve(String name) throws ZipException {
+		if (!names.add(name)) {
+			throw new ZipException("Duplicate entry " + name + " in " + file);
+		}
+	}
+
+	private void drain(Deflater deflater) throws IOException {
+		int n = deflater.deflate(deflated);
+		if (n > 0) {
+			write(ByteBuffer.wrap(deflated, 0, n));
+		}
+	}
+
+	private RawZipFile.Entry newEntry(String name, long time, int method) throws IOException {
+		RawZipFile.Entry entry = new RawZipFile.Entry();
+		entry.name = name;
+		entry.versionMadeBy = 20;
+		entry.flags = UTF8_FLAG;
+		entry.method = method;
+		entry.dosDateTime = toDosDateTime(time);
+		entry.extra = new byte[0];
+		entry.comment = new byte[0];
+		return entry;
+	}
+
+	private void begin(RawZipFile.Entry entry) throws IOException {
+		entry.localHeaderOffset = channel.position();
+		byte[] name = entry.name.getBytes(RawZipFile.UTF8);
+		ByteBuffer header = allocate(30 + name.length);
+		header.putInt(LOCAL_HEADER);
+		header.putShort((short) (entry.method == RawZipFile.STORED ? 10 : 20));
+		header.putShort((short) entry.flags);
+		header.putShort((short) entry.method);
+		header.putInt(entry.dosDateTime);
+		header.putInt(entry.crc);
+		header.putInt((int) entry.compressedSize);
+		header.putInt((int) entry.size);
+		header.putShort((short) name.length);
+		header.putShort((short) 0);
+		header.put(name);
+		header.flip();
+		write(header);
+		entries.add(entry);
+	}
+
+	private void finish(RawZipFile.Entry entry, int crc, long compressedSize, long size) throws IOException {
+		entry.crc = crc;
+		entry.compressedSize = compressedSize;
+		entry.size = size;
+		ByteBuffer sizes = allocate(12);
+		sizes.putInt(crc);
+		sizes.putInt((int) compressedSize);
+		sizes.putInt((int) size);
+		sizes.flip();
+		long position = entry.localHeaderOffset + 14;
+		while (sizes.hasRemaining()) {
+			position += channel.write(sizes, position);
+		}
+	}
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writePending(0, 0);
+			long start = channel.position();
+			for (RawZipFile.Entry entry : entries) {
+				if (entry.localHeaderOffset > 0xffffffffL || entry.size > 0xffffffffL
+						|| entry.compressedSize > 0xffffffffL) {
+					throw new ZipException("Archive " + file + " would need ZIP64, which is not supported");
+				}
+				byte[] name = entry.name.getBytes(RawZipFile.UTF8);
+				ByteBuffer header = allocate(46 + name.length + entry.extra.length + entry.comment.length);
+				header.putInt(CENTRAL_HEADER);
+				header.putShort((short) entry.versionMadeBy);
+				header.putShort((short) (entry.method == RawZipFile.STORED ? 10 : 20));
+				header.putShort((short) entry.flags);
+				header.putShort((short) entry.method);
+				header.putInt(entry.dosDateTime);
+				header.putInt(entry.crc);
+				header.putInt((int) entry.compressedSize);
+				header.putInt((int) entry.size);
+				header.putShort((short) name.length);
+				header.putShort((short) entry.extra.length);
+				header.putShort((short) entry.comment.length);
+				header.putShort((short) 0);
+				header.putShort((short) entry.internalAttributes);
+				header.putInt(entry.externalAttributes);
+				header.putInt((int) entry.localHeaderOffset);
+				header.put(name);
+				header.put(entry.extra);
+				header.put(entry.comment);
+				header.flip();
+				write(header);
+			}
+			long size = channel.position() - start;
+			if (entries.size() > 0xffff || start > 0xffffffffL) {
+				throw new ZipException("Archive " + file + " would need ZIP64, which is not supported");
+			}
+			ByteBuffer end = allocate(22);
+			end.putInt(END_OF_CENTRAL_DIRECTORY);
+			end.putShort((short) 0);
+			end.putShort((short) 0);
+			end.putShort((short) entries.size());
+			end.putShort((short) entries.size());
+			end.putInt((int) size);
+			end.putInt((int) start);
+			end.putShort((short) 0);
+			end.flip();
+			write(end);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			raf.close();
+		}
+	}
+
+	private void write(ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+	/**
+	 * The data of an entry compressed on another thread.
+	 */
+	private static final class Compressed {
+
+		private final String name;
+
+		private final long time;
+
+		private final int method;
+
+		private final long size;
+
+		private final int crc;
+
+		private final byte[] data;
+
+		private final int length;
+
+		Compressed(String name, File source, int level) throws IOException {
+			this.name = name;
+			this.time = source.lastModified();
+			byte[] content = Files.readAllBytes(source.toPath());
+			CRC32 checksum = new CRC32();
+			checksum.update(content);
+			this.size = content.length;
+			this.crc = (int) checksum.getValue();
+			if (level == 0) {
+				this.method = RawZipFile.STORED;
+				this.data = content;
+				this.length = content.length;
+				return;
+			}
+			this.method = RawZipFile.DEFLATED;
+			Deflater deflater = new Deflater(level, true);
+			try {
+				deflater.setInput(content);
+				deflater.finish();
+				byte[] out = new byte[Math.max(64, content.length + content.length / 1000 + 64)];
+				int n = 0;
+				while (!deflater.finished()) {
+					if (n == out.length) {
+						out = Arrays.copyOf(out, out.length * 2);
+					}
+					n += deflater.deflate(out, n, out.length - n);
+				}
+				this.data = out;
+				this.length = n;
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	private static ByteBuffer allocate(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Removes the ZIP64 extended information field, which only applies to the archive an entry was read from.
+	 */
+	private static byte[] withoutZip64(byte[] extra) {
+		ByteBuffer in = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer out = allocate(extra.length);
+		while (in.remaining() >= 4) {
+			int start = in.position();
+			int id = in.getShort() & 0xffff;
+			int length = in.getShort() & 0xffff;
+			if (in.position() + length > in.limit()) {
+				break;
+			}
+			if (id != 1) {
+				out.put(extra, start, 4 + length);
+			}
+			in.position(in.position() + length);
+		}
+		byte[] result = new byte[out.position()];
+		out.flip();
+		out.get(result);
+		return result;
+	}
+
+	static int toDosDateTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+				| calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+}
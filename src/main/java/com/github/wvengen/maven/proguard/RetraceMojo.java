@@ -0,0 +1,123 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>
+ * De-obfuscates stack traces in a log file with the mapping of a ProGuard run. The mapping index written with
+ * <code>mappingIndex</code> (or attached next to the mapping) is memory-mapped and the log is retraced in parallel
+ * chunks, so large logs take little memory; a text mapping is indexed first.
+ * </p>
+ *
+ * @goal retrace
+ * @requiresProject false
+ * @description De-obfuscate stack traces in a log file
+ * @threadSafe
+ */
+public class RetraceMojo extends AbstractMojo {
+
+	/**
+	 * The mapping index, or a text mapping file.
+	 *
+	 * @parameter property="proguard.retrace.mapping" default-value="${project.build.directory}/proguard_map.idx"
+	 * @required
+	 */
+	private File mapping;
+
+	/**
+	 * The log file to retrace.
+	 *
+	 * @parameter property="proguard.retrace.input"
+	 * @required
+	 */
+	private File input;
+
+	/**
+	 * Where to write the retraced log, by default next to the input with the suffix .retraced.
+	 *
+	 * @parameter property="proguard.retrace.output"
+	 */
+	private File output;
+
+	/**
+	 * Number of threads retracing chunks of the log, 0 for one per processor.
+	 *
+	 * @parameter property="proguard.retrace.threads" default-value="0"
+	 */
+	private int threads;
+
+	/**
+	 * Approximate size of the chunks, e.g. 4m. At most two chunks per thread are held in memory, each at most twice
+	 * this size: longer lines are split.
+	 *
+	 * @parameter property="proguard.retrace.chunkSize" default-value="4m"
+	 */
+	private String chunkSize = "4m";
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (!mapping.isFile()) {
+			throw new MojoFailureException("Can't find mapping " + mapping);
+		}
+		if (!input.isFile()) {
+			throw new MojoFailureException("Can't find log file " + input);
+		}
+		File target = output != null ? output : new File(input.getPath() + ".retraced");
+		if (target.getAbsoluteFile().equals(input.getAbsoluteFile())) {
+			throw new MojoFailureException("Can't retrace " + input + " into itself");
+		}
+		long chunk = BuildCache.parseSize(chunkSize);
+		if (chunk <= 0 || chunk > Integer.MAX_VALUE / 2) {
+			throw new MojoExecutionException("Invalid chunkSize " + chunkSize);
+		}
+
+		long started = System.currentTimeMillis();
+		File indexFile = mapping;
+		File temporaryIndex = null;
+		try {
+			if (!MappingIndex.isIndex(mapping)) {
+				temporaryIndex = File.createTempFile("proguard_map", ".idx");
+				MappingIndex.write(mapping, temporaryIndex);
+				indexFile = temporaryIndex;
+			}
+			MappingIndex index = MappingIndex.open(indexFile);
+			try {
+				Retracer retracer = new Retracer(index);
+				retracer.retrace(input, target, threads, (int) chunk);
+				long millis = Math.max(1, System.currentTimeMillis() - started);
+				getLog().info("Retraced " + retracer.getRetraced() + " of " + retracer.getLines() + " lines of "
+						+ input + " into " + target + " in " + millis + " ms (" + (input.length() * 1000 / millis >> 20)
+						+ " MB/s)");
+			} finally {
+				index.close();
+			}
+		} catch (IOException e) {
+			throw new MojoFailureException("Can't retrace " + input + ": " + e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while retracing " + input);
+		} finally {
+			if (temporaryIndex != null && !temporaryIndex.delete()) {
+				temporaryIndex.deleteOnExit();
+			}
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * De-obfuscates logs with a {@link MappingIndex}. Like ProGuard's ReTrace with its default pattern it rewrites stack
+ * frames (<code>at a.b.c(SourceFile:12)</code>) and the class of exception lines (<code>a.b: message</code>,
+ * <code>Caused by: a.b</code>); other lines are copied as they are. Inlined frames are expanded into one line each;
+ * ambiguous methods are joined with <code>|</code>.
+ * <p>
+ * A file is cut into chunks at line ends which are retraced in parallel and written in order, with at most two
+ * chunks per thread in memory. A chunk is at most twice the chunk size: a line that doesn't end by then is split
+ * (between characters) and its pieces are copied like lines without frames.
+ * </p>
+ */
+final class Retracer {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final MappingIndex index;
+
+	private final AtomicLong lines = new AtomicLong();
+
+	private final AtomicLong retraced = new AtomicLong();
+
+	Retracer(MappingIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * Retraces a file into another.
+	 *
+	 * @param threads the number of threads, 0 for one per processor
+	 * @param chunkSize the approximate number of bytes each task retraces, at most half of Integer.MAX_VALUE
+	 */
+	void retrace(File input, File output, int threads, int chunkSize) throws IOException, InterruptedException {
+		if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+		}
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "proguard-retrace");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 65536);
+		try {
+			Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				final long start = position;
+				final long end = chunkEnd(in, start, chunkSize, size);
+				pending.add(executor.submit(new Callable<byte[]>() {
+					public byte[] call() throws IOException {
+						return retraceChunk(read(in, start, (int) (end - start)));
+					}
+				}));
+				position = end;
+				if (pending.size() >= poolSize * 2) {
+					out.write(take(pending.poll()));
+				}
+			}
+			while (!pending.isEmpty()) {
+				out.write(take(pending.poll()));
+			}
+		} finally {
+			executor.shutdownNow();
+			try {
+				out.close();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	private static byte[] take(Future<byte[]> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the end of the chunk starting at a position: after the first line end at or after the chunk size, or
+	 * at twice the chunk size if the line is longer, moved back to the start of a UTF-8 character.
+	 */
+	private static long chunkEnd(FileChannel in, long start, int chunkSize, long size) throws IOException {
+		long limit = Math.min(size, start + 2L * chunkSize);
+		long position = start + chunkSize;
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < limit) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+			int read = in.read(buffer, position);
+			if (read < 0) {
+				return position;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		if (limit == size) {
+			return size;
+		}
+		// a character starting before the limit has up to 3 continuation bytes (10xxxxxx)
+		buffer.clear();
+		buffer.limit(4);
+		long from = Math.max(start + 1, limit - 3);
+		int read = in.read(buffer, from);
+		long end = limit;
+		while (end > from && end - from < read && (buffer.get((int) (end - from)) & 0xc0) == 0x80) {
+			end--;
+		}
+		return end;
+	}
+
+	private static byte[] read(FileChannel in, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Log file shrank while retracing it");
+			}
+		}
+		return buffer.array();
+	}
+
+	private byte[] retraceChunk(byte[] chunk) {
+		String text = new String(chunk, UTF_8);
+		StringBuilder out = new StringBuilder(text.length() + text.length() / 8);
+		int start = 0;
+		long count = 0;
+		while (start < text.length()) {
+			int newline = text.indexOf('\n', start);
+			int end = newline < 0 ? text.length() : newline;
+			int content = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+			retrace(text.substring(start, content), text.substring(content, newline < 0 ? end : end + 1), out);
+			count++;
+			start = newline < 0 ? text.length() : newline + 1;
+		}
+		lines.addAndGet(count);
+		return out.toString().getBytes(UTF_8);
+	}
+
+	/**
+	 * Retraces a single line, without its line end.
+	 */
+	String retrace(String line) {
+		StringBuilder out = new StringBuilder();
+		retrace(line, "", out);
+		return out.toString();
+	}
+
+	private void retrace(String line, String lineEnd, StringBuilder out) {
+		if (!retraceFrame(line, lineEnd, out) && !retraceClass(line, out)) {
+			out.append(line);
+		}
+		out.append(lineEnd);
+	}
+
+	/**
+	 * Rewrites <code>[prefix]at class.method(source[:line])[suffix]</code>.
+	 */
+	private boolean retraceFrame(String line, String lineEnd, StringBuilder out) {
+		int at = line.indexOf("at ");
+		while (at > 0 && !Character.isWhitespace(line.charAt(at - 1))) {
+			at = line.indexOf("at ", at + 1);
+		}
+		if (at < 0) {
+			return false;
+		}
+		int nameStart = at + 3;
+		while (nameStart < line.length() && line.charAt(nameStart) == ' ') {
+			nameStart++;
+		}
+		int open = line.indexOf('(', nameStart);
+		int close = open < 0 ? -1 : line.indexOf(')', open);
+		if (close < 0) {
+			return false;
+		}
+		String qualified = line.substring(nameStart, open).trim();
+		int dot = qualified.lastIndexOf('.');
+		if (dot <= 0 || !isName(qualified)) {
+			return false;
+		}
+		String location = line.substring(open + 1, close);
+		int colon = location.lastIndexOf(':');
+		int lineNumber = 0;
+		String source = location;
+		if (colon >= 0) {
+			try {
+				lineNumber = Integer.parseInt(location.substring(colon + 1));
+				source = location.substring(0, colon);
+			} catch (NumberFormatException e) {
+				// not a line number
+			}
+		}
+		String className = qualified.substring(0, dot);
+		List<MappingIndex.Frame> frames = index.originalFrames(className, qualified.substring(dot + 1), lineNumber);
+		if (frames.isEmpty()) {
+			String original = index.originalClass(className);
+			if (original == null) {
+				return false;
+			}
+			out.append(line, 0, nameStart).append(original).append(line, dot + nameStart, line.length());
+			retraced.incrementAndGet();
+			return true;
+		}
+		String prefix = line.substring(0, nameStart);
+		String suffix = line.substring(close + 1);
+		boolean ambiguous = frames.size() > 1 && frames.get(0).line == frames.get(1).line
+				&& frames.get(0).className.equals(frames.get(1).className);
+		if (ambiguous) {
+			out.append(prefix).append(frames.get(0).className).append('.');
+			for (int i = 0; i < frames.size(); i++) {
+				out.append(i > 0 ? "|" : "").append(frames.get(i).methodName);
+			}
+			appendLocation(out, source, frames.get(0).line).append(suffix);
+		} else {
+			for (int i = 0; i < frames.size(); i++) {
+				MappingIndex.Frame frame = frames.get(i);
+				if (i > 0) {
+					out.append(lineEnd.length() > 0 ? lineEnd : "\n");
+				}
+				out.append(prefix).append(frame.className).append('.').append(frame.methodName);
+				appendLocation(out, source, frame.line).append(suffix);
+			}
+		}
+		retraced.incrementAndGet();
+		return true;
+	}
+
+	private static StringBuilder appendLocation(StringBuilder out, String source, int line) {
+		out.append('(').append(source);
+		if (line > 0) {
+			out.append(':').append(line);
+		}
+		return out.append(')');
+	}
+
+	/**
+	 * Rewrites the class of <code>[... ": " or "\" "]class[: message]</code>, the first one the mapping lists.
+	 */
+	private boolean retraceClass(String line, StringBuilder out) {
+		int start = 0;
+		while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+			start++;
+		}
+		while (start < line.length()) {
+			int end = start;
+			while (end < line.length() && isNameChar(line.charAt(end))) {
+				end++;
+			}
+			if (end > start && (end == line.length() || line.charAt(end) == ':')) {
+				String original = index.originalClass(line.substring(start, end));
+				if (original != null) {
+					out.append(line, 0, start).append(original).append(line, end, line.length());
+					retraced.incrementAndGet();
+					return true;
+				}
+			}
+			start = nextClassStart(line, start);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the position after the next <code>": "</code> or <code>"\" "</code> after a position.
+	 */
+	private static int nextClassStart(String line, int position) {
+		for (int i = position; i + 1 < line.length(); i++) {
+			char c = line.charAt(i);
+			if ((c == ':' || c == '"') && line.charAt(i + 1) == ' ') {
+				int start = i + 2;
+				while (start < line.length() && line.charAt(start) == ' ') {
+					start++;
+				}
+				return start;
+			}
+		}
+		return line.length();
+	}
+
+	private static boolean isName(String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (!isNameChar(name.charAt(i)) && name.charAt(i) != '<' && name.charAt(i) != '>') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isJavaIdentifierPart(c) || c == '.';
+	}
+
+	long getLines() {
+		return lines.get();
+	}
+
+	/**
+	 * Returns the number of lines that had a frame or class rewritten.
+	 */
+	long getRetraced() {
+		return retraced.get();
+	}
+}
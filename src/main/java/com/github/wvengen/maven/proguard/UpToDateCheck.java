@@ -0,0 +1,277 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Remembers the fingerprint of the last ProGuard run together with a snapshot of its outputs, so an unchanged
+ * build can restore the outputs instead of running ProGuard again.
+ * <p>
+ * The fingerprint covers the argument list (with well known directories replaced by placeholders), the ProGuard
+ * jar and the content of every file the arguments and configuration refer to. Archives are fingerprinted from their
+ * central directory only (entry name, CRC and size), which ignores entry timestamps and never inflates anything;
+ * other files are read memory-mapped. Per-file results are memoized by path, size and modification time, so
+ * unchanged dependencies are not read at all.
+ * </p>
+ */
+class UpToDateCheck {
+
+	private static final String HASHES_FILE = "hashes.properties";
+
+	private static final String SNAPSHOT_DIR = "snapshot";
+
+	private static final long RACY_INTERVAL = 2000;
+
+	private final File stateDir;
+
+	private final Properties hashes = new Properties();
+
+	private boolean hashesChanged;
+
+	UpToDateCheck(File stateDir) {
+		this.stateDir = stateDir;
+		File hashesFile = new File(stateDir, HASHES_FILE);
+		if (hashesFile.isFile()) {
+			try {
+				FileOperations.load(hashes, hashesFile);
+			} catch (IOException e) {
+				hashes.clear();
+			}
+		}
+	}
+
+	/**
+	 * Computes the fingerprint of a ProGuard run.
+	 *
+	 * @param args the complete ProGuard argument list
+	 * @param configurationFiles configuration files whose content and references must be included as well
+	 * @param baseDir the directory relative paths in the argument list are resolved against
+	 * @param placeholders directories (e.g. the project directory) that are replaced by a name, so the same
+	 *            project checked out elsewhere gets the same fingerprint
+	 * @param identity additional values that influence the result, e.g. the ProGuard jar and main class
+	 */
+	String fingerprint(List<String> args, List<File> configurationFiles, File baseDir,
+			Map<File, String> placeholders, List<?> identity) throws IOException {
+		MessageDigest digest = newDigest();
+		for (String arg : args) {
+			update(digest, "arg", replace(arg, placeholders));
+		}
+		for (Object value : identity) {
+			if (value instanceof File) {
+				update(digest, "file", hash((File) value));
+			} else {
+				update(digest, "value", String.valueOf(value));
+			}
+		}
+		List<String> options = Arrays.asList("-injars", "-libraryjars", "-applymapping", "-obfuscationdictionary",
+				"-classobfuscationdictionary", "-packageobfuscationdictionary");
+		// the same file may be reached through the arguments and a configuration file
+		Set<File> inputs = new LinkedHashSet<File>(ProGuardArgs.files(args, options, baseDir));
+		for (File configurationFile : configurationFiles) {
+			inputs.add(configurationFile);
+			inputs.addAll(ProGuardArgs.files(configurationFile, options));
+		}
+		for (File input : inputs) {
+			update(digest, "input", replace(input.getAbsolutePath(), placeholders));
+			update(digest, "content", hash(input));
+		}
+		saveHashes();
+		return toHex(digest.digest());
+	}
+
+	private static String replace(String value, Map<File, String> placeholders) {
+		for (Map.Entry<File, String> placeholder : placeholders.entrySet()) {
+			value = value.replace(placeholder.getKey().getAbsolutePath(), "${" + placeholder.getValue() + "}");
+		}
+		return value;
+	}
+
+	/**
+	 * Restores the outputs recorded for the given fingerprint.
+	 *
+	 * @return false if there is no intact snapshot for this fingerprint, the outputs are then left untouched
+	 */
+	boolean restore(String fingerprint, List<File> outputs) throws IOException {
+		File snapshotDir = new File(stateDir, SNAPSHOT_DIR);
+		Properties info = OutputSnapshot.read(snapshotDir);
+		return info != null && fingerprint.equals(info.getProperty("fingerprint"))
+				&& OutputSnapshot.restore(snapshotDir, outputs);
+	}
+
+	/**
+	 * Takes a snapshot of the outputs of a successful run.
+	 */
+	void store(String fingerprint, List<File> outputs) throws IOException {
+		File snapshotDir = new File(stateDir, SNAPSHOT_DIR);
+		FileOperations.delete(snapshotDir);
+		Properties info = new Properties();
+		info.setProperty("fingerprint", fingerprint);
+		OutputSnapshot.save(snapshotDir, outputs, info);
+	}
+
+	/**
+	 * Returns the content hash of a file or directory, using the memoized value when size and modification time
+	 * did not change.
+	 */
+	String hash(File file) throws IOException {
+		if (!file.exists()) {
+			return "missing";
+		}
+		if (file.isDirectory()) {
+			MessageDigest digest = newDigest();
+			List<String> names = new ArrayList<String>();
+			listFiles(file, "", names);
+			Collections.sort(names);
+			for (String name : names) {
+				update(digest, "entry", name);
+				update(digest, "content", hash(new File(file, name)));
+			}
+			return toHex(digest.digest());
+		}
+		String key = file.getAbsolutePath();
+		String stamp = file.length() + ":" + file.lastModified() + ":";
+		String memo = hashes.getProperty(key);
+		if (memo != null && memo.startsWith(stamp)) {
+			return memo.substring(stamp.length());
+		}
+		String hash = isArchive(file) ? hashArchive(file) : hashContent(file);
+		// like git's racy-clean check: a file that was just written could change again within the same timestamp
+		if (file.lastModified() < System.currentTimeMillis() - RACY_INTERVAL) {
+			hashes.setProperty(key, stamp + hash);
+			hashesChanged = true;
+		}
+		return hash;
+	}
+
+	private static boolean isArchive(File file) throws IOException {
+		if (file.length() < 22) {
+			return false;
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return in.read() == 'P' && in.read() == 'K';
+		} finally {
+			in.close();
+		}
+	}
+
+	static String hashArchive(File file) throws IOException {
+		ZipFile zip;
+		try {
+			zip = new ZipFile(file);
+		} catch (ZipException e) {
+			return hashContent(file);
+		}
+		try {
+			List<String> entries = new ArrayList<String>();
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				entries.add(entry.getName() + "\u0000" + entry.getCrc() + ":" + entry.getSize());
+			}
+			Collections.sort(entries);
+			MessageDigest digest = newDigest();
+			for (String entry : entries) {
+				update(digest, "zip", entry);
+			}
+			return toHex(digest.digest());
+		} finally {
+			zip.close();
+		}
+	}
+
+	private static String hashContent(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long length = Math.min(size - position, Integer.MAX_VALUE);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				digest.update(buffer);
+				position += length;
+			}
+		} finally {
+			raf.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	private static void listFiles(File dir, String prefix, List<String> names) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				listFiles(file, prefix + file.getName() + "/", names);
+			} else {
+				names.add(prefix + file.getName());
+			}
+		}
+	}
+
+	private void saveHashes() throws IOException {
+		if (hashesChanged) {
+			FileOperations.store(hashes, new File(stateDir, HASHES_FILE));
+			hashesChanged = false;
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String kind, String value) {
+		try {
+			digest.update((kind + "=" + value + "\n").getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A WAR that is processed without extracting it as a whole. Only <code>WEB-INF/classes</code> and the
+ * <code>WEB-INF/lib</code> jars that are actually needed are extracted into the work directory; the output WAR is
+ * written by copying every other entry of the input without inflating it.
+ */
+final class WarArchive implements Closeable {
+
+	static final String CLASSES = "WEB-INF/classes/";
+
+	static final String LIB = "WEB-INF/lib/";
+
+	private final File file;
+
+	private final File workDir;
+
+	private RawZipFile zip;
+
+	private final List<String> libraryNames = new ArrayList<String>();
+
+	private final WarLibraryIndex libraryIndex;
+
+	private final Map<String, File> extracted = new HashMap<String, File>();
+
+	private final Set<String> removedEntries = new HashSet<String>();
+
+	private final List<String> removedTrees = new ArrayList<String>();
+
+	WarArchive(File file, File workDir, Log log) throws IOException {
+		this.file = file;
+		this.workDir = workDir;
+		for (RawZipFile.Entry entry : open().getEntries()) {
+			String name = entry.getName();
+			if (name.startsWith(LIB) && name.indexOf('/', LIB.length()) < 0 && name.length() > LIB.length()) {
+				libraryNames.add(name.substring(LIB.length()));
+			}
+		}
+		libraryIndex = new WarLibraryIndex(this, libraryNames, log);
+		File libraryDir = getLibraryDir();
+		if (!libraryDir.isDirectory() && !libraryDir.mkdirs()) {
+			throw new IOException("Can't create " + libraryDir);
+		}
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the directory that extracted <code>WEB-INF/lib</code> jars are written to.
+	 */
+	File getLibraryDir() {
+		return new File(workDir, LIB);
+	}
+
+	/**
+	 * Returns the file names of the jars in <code>WEB-INF/lib</code>, in archive order.
+	 */
+	List<String> getLibraryNames() {
+		return libraryNames;
+	}
+
+	WarLibraryIndex getLibraryIndex() {
+		return libraryIndex;
+	}
+
+	/**
+	 * Opens a stream over a jar of <code>WEB-INF/lib</code>, may be used from several threads.
+	 */
+	InputStream openLibrary(String name) throws IOException {
+		RawZipFile zip = open();
+		return zip.getInputStream(zip.getEntry(LIB + name));
+	}
+
+	/**
+	 * Extracts a jar of <code>WEB-INF/lib</code> into the library directory, once.
+	 */
+	File extractLibrary(String name) throws IOException {
+		File file = extracted.get(name);
+		if (file == null) {
+			file = new File(getLibraryDir(), name);
+			if (!FileOperations.isInside(getLibraryDir(), file)) {
+				throw new IOException("Entry " + LIB + name + " of " + this.file + " is outside of " + getLibraryDir());
+			}
+			extract(open().getEntry(LIB + name), file);
+			extracted.put(name, file);
+		}
+		return file;
+	}
+
+	/**
+	 * Extracts the content of <code>WEB-INF/classes</code>.
+	 *
+	 * @return the number of extracted files
+	 */
+	int extractClasses(File destDir) throws IOException {
+		return new ZipExtractor().extract(open(), CLASSES, destDir);
+	}
+
+	/**
+	 * Leaves an entry out of the output WAR.
+	 */
+	void remove(String name) {
+		removedEntries.add(name);
+	}
+
+	/**
+	 * Leaves all entries below a prefix out of the output WAR.
+	 */
+	void removeTree(String prefix) {
+		removedTrees.add(prefix);
+	}
+
+	/**
+	 * Copies all entries that were not removed, and that the writer does not contain yet, without recompressing
+	 * them.
+	 */
+	void copyTo(RawZipWriter writer) throws IOException {
+		RawZipFile zip = open();
+		for (RawZipFile.Entry entry : zip.getEntries()) {
+			String name = entry.getName();
+			if (!removedEntries.contains(name) && !isRemovedTree(name) && !writer.contains(name)) {
+				writer.copy(zip, entry);
+			}
+		}
+	}
+
+	boolean contains(String name) throws IOException {
+		return open().getEntry(name) != null;
+	}
+
+	private boolean isRemovedTree(String name) {
+		for (String prefix : removedTrees) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void extract(RawZipFile.Entry entry, File target) throws IOException {
+		File parent = target.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Can't create " + parent);
+		}
+		ZipExtractor.extract(zip, entry, target, new byte[64 * 1024]);
+	}
+
+	private synchronized RawZipFile open() throws IOException {
+		if (zip == null) {
+			zip = new RawZipFile(file);
+		}
+		return zip;
+	}
+
+	/**
+	 * Closes the input archive, it is opened again when needed.
+	 */
+	public synchronized void close() throws IOException {
+		if (zip != null) {
+			zip.close();
+			zip = null;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds the <code>WEB-INF/lib</code> jar of an artifact. The jar names are indexed once, by their exact file name
+ * and by every prefix that looks like <code>artifactId-</code> followed by a version. When several jars share an
+ * artifactId prefix, the <code>META-INF/maven/&#42;&#42;/pom.properties</code> of the candidates decide; those are
+ * read in parallel by {@link #prepare(Collection)}.
+ */
+final class WarLibraryIndex {
+
+	private final WarArchive war;
+
+	private final Log log;
+
+	private final Set<String> names = new LinkedHashSet<String>();
+
+	private final Map<String, List<String>> namesByArtifactId = new HashMap<String, List<String>>();
+
+	private final Map<String, List<Properties>> descriptors = new HashMap<String, List<Properties>>();
+
+	WarLibraryIndex(WarArchive war, List<String> libraryNames, Log log) {
+		this.war = war;
+		this.log = log;
+		for (String name : libraryNames) {
+			names.add(name);
+			for (int i = name.indexOf('-'); i > 0 && i < name.length() - 1; i = name.indexOf('-', i + 1)) {
+				// the first char after the base name is a digit (assuming version number)
+				if (Character.isDigit(name.charAt(i + 1))) {
+					String artifactId = name.substring(0, i);
+					List<String> candidates = namesByArtifactId.get(artifactId);
+					if (candidates == null) {
+						candidates = new ArrayList<String>(1);
+						namesByArtifactId.put(artifactId, candidates);
+					}
+					candidates.add(name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the Maven descriptors of all jars that can't be told apart by name alone, in parallel.
+	 */
+	void prepare(Collection<Artifact> artifacts) throws IOException {
+		Set<String> ambiguous = new LinkedHashSet<String>();
+		for (Artifact artifact : artifacts) {
+			if (findByName(artifact) == null) {
+				List<String> candidates = namesByArtifactId.get(artifact.getArtifactId());
+				if (candidates != null && candidates.size() > 1) {
+					ambiguous.addAll(candidates);
+				}
+			}
+		}
+		ambiguous.removeAll(descriptors.keySet());
+		if (ambiguous.isEmpty()) {
+			return;
+		}
+		int threads = Math.min(ambiguous.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Map<String, Future<List<Properties>>> results = new HashMap<String, Future<List<Properties>>>();
+			for (final String name : ambiguous) {
+				results.put(name, executor.submit(new Callable<List<Properties>>() {
+					public List<Properties> call() throws IOException {
+						return readDescriptors(name);
+					}
+				}));
+			}
+			for (Map.Entry<String, Future<List<Properties>>> result : results.entrySet()) {
+				try {
+					descriptors.put(result.getKey(), result.getValue().get());
+				} catch (ExecutionException e) {
+					log.warn("Can't read Maven descriptor of " + result.getKey() + ": " + e.getCause());
+					descriptors.put(result.getKey(), Collections.<Properties>emptyList());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while reading " + WarArchive.LIB);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the file name of the artifact's jar in <code>WEB-INF/lib</code>, or null if there is none.
+	 */
+	String find(Artifact artifact) throws IOException {
+		String name = findByName(artifact);
+		if (name != null) {
+			return name;
+		}
+		List<String> candidates = namesByArtifactId.get(artifact.getArtifactId());
+		if (candidates == null) {
+			return null;
+		}
+		if (candidates.size() == 1) {
+			return candidates.get(0);
+		}
+		prepare(Collections.singleton(artifact));
+		List<String> matches = new ArrayList<String>();
+		for (String candidate : candidates) {
+			for (Properties descriptor : descriptors.get(candidate)) {
+				if (artifact.getGroupId().equals(descriptor.getProperty("groupId"))
+						&& artifact.getArtifactId().equals(descriptor.getProperty("artifactId"))
+						&& isVersion(artifact, descriptor.getProperty("version"))) {
+					matches.add(candidate);
+					break;
+				}
+			}
+		}
+		if (matches.size() == 1) {
+			log.debug("Found " + matches.get(0) + " for " + artifact + " by its Maven descriptor");
+			return matches.get(0);
+		}
+		List<String> choices = matches.isEmpty() ? candidates : matches;
+		log.warn("Found more than one library for artifact " + artifact + " in " + WarArchive.LIB + ": " + choices
+				+ ", using " + choices.get(0));
+		return choices.get(0);
+	}
+
+	private String findByName(Artifact artifact) {
+		for (String version : versions(artifact)) {
+			String suffix = artifact.getArtifactId() + "-" + version + "." + extension(artifact);
+			// the war plugin prefixes the groupId when artifactIds clash
+			if (names.contains(artifact.getGroupId() + "-" + suffix)) {
+				return artifact.getGroupId() + "-" + suffix;
+			}
+			if (names.contains(suffix)) {
+				return suffix;
+			}
+		}
+		return null;
+	}
+
+	private static List<String> versions(Artifact artifact) {
+		List<String> versions = new ArrayList<String>(2);
+		if (artifact.getVersion() != null) {
+			versions.add(artifact.getVersion());
+		}
+		if (artifact.getBaseVersion() != null && !versions.contains(artifact.getBaseVersion())) {
+			versions.add(artifact.getBaseVersion());
+		}
+		return versions;
+	}
+
+	private static boolean isVersion(Artifact artifact, String version) {
+		return version != null && versions(artifact).contains(version);
+	}
+
+	private static String extension(Artifact artifact) {
+		if (artifact.getArtifactHandler() != null && artifact.getArtifactHandler().getExtension() != null) {
+			return artifact.getArtifactHandler().getExtension();
+		}
+		return "jar";
+	}
+
+	private List<Properties> readDescriptors(String name) throws IOException {
+		List<Properties> result = new ArrayList<Properties>(1);
+		ZipInputStream in = new ZipInputStream(war.openLibrary(name));
+		try {
+			ZipEntry entry;
+			while ((entry = in.getNextEntry()) != null) {
+				String entryName = entry.getName();
+				if (entryName.startsWith("META-INF/maven/") && entryName.endsWith("/pom.properties")) {
+					Properties properties = new Properties();
+					properties.load(in);
+					result.add(properties);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+}
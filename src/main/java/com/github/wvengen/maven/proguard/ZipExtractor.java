@@ -0,0 +1,182 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.wvengen.maven.proguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts entries of a {@link RawZipFile} with a bounded pool of workers. The largest entries are handed out
+ * first so the workers finish at about the same time; target files are preallocated, and stored entries are copied
+ * from the archive with {@link FileChannel#transferTo} instead of going through a stream. Entries whose path would
+ * leave the target directory are rejected.
+ */
+final class ZipExtractor {
+
+	/** Below this many entries per worker it is not worth starting another thread */
+	private static final int ENTRIES_PER_THREAD = 32;
+
+	private final int maxThreads;
+
+	ZipExtractor(int maxThreads) {
+		this.maxThreads = Math.max(1, maxThreads);
+	}
+
+	ZipExtractor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Extracts the file entries below a prefix, with the prefix removed from their path.
+	 *
+	 * @return the number of extracted files
+	 */
+	int extract(final RawZipFile zip, String prefix, final File destDir) throws IOException {
+		final List<RawZipFile.Entry> entries = new ArrayList<RawZipFile.Entry>();
+		final List<File> targets = new ArrayList<File>();
+		Set<File> dirs = new LinkedHashSet<File>();
+		dirs.add(destDir);
+		List<RawZipFile.Entry> sorted = new ArrayList<RawZipFile.Entry>();
+		for (RawZipFile.Entry entry : zip.getEntries()) {
+			if (entry.getName().startsWith(prefix) && !entry.isDirectory()) {
+				sorted.add(entry);
+			}
+		}
+		Collections.sort(sorted, new Comparator<RawZipFile.Entry>() {
+			public int compare(RawZipFile.Entry a, RawZipFile.Entry b) {
+				return a.getSize() < b.getSize() ? 1 : (a.getSize() == b.getSize() ? 0 : -1);
+			}
+		});
+		for (RawZipFile.Entry entry : sorted) {
+			File target = new File(destDir, entry.getName().substring(prefix.length()));
+			if (!FileOperations.isInside(destDir, target)) {
+				throw new IOException("Entry " + entry.getName() + " of " + zip.getFile() + " is outside of " + destDir);
+			}
+			entries.add(entry);
+			targets.add(target);
+			dirs.add(target.getParentFile());
+		}
+		for (File dir : dirs) {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Can't create " + dir);
+			}
+		}
+
+		int threads = Math.min(maxThreads, Math.max(1, entries.size() / ENTRIES_PER_THREAD));
+		final AtomicInteger next = new AtomicInteger();
+		Callable<Void> worker = new Callable<Void>() {
+			public Void call() throws IOException {
+				byte[] buffer = new byte[64 * 1024];
+				for (int i = next.getAndIncrement(); i < entries.size(); i = next.getAndIncrement()) {
+					extract(zip, entries.get(i), targets.get(i), buffer);
+				}
+				return null;
+			}
+		};
+		if (threads == 1) {
+			try {
+				worker.call();
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return entries.size();
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(worker));
+			}
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					// let the other workers stop early
+					next.set(entries.size());
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IOException("Can't extract " + zip.getFile() + ": " + e.getCause(), e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while extracting " + zip.getFile());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return entries.size();
+	}
+
+	/**
+	 * Extracts a single entry to a file.
+	 */
+	static void extract(RawZipFile zip, RawZipFile.Entry entry, File target, byte[] buffer) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(target, "rw");
+		try {
+			out.setLength(entry.getSize());
+			FileChannel channel = out.getChannel();
+			if (entry.getMethod() == RawZipFile.STORED) {
+				long position = zip.getDataOffset(entry);
+				long written = 0;
+				while (written < entry.getSize()) {
+					long n = zip.getChannel().transferTo(position + written, entry.getSize() - written, channel);
+					if (n <= 0) {
+						throw new IOException("Unexpected end of " + zip.getFile() + " extracting " + entry.getName());
+					}
+					written += n;
+				}
+			} else {
+				InputStream in = zip.getInputStream(entry);
+				try {
+					long written = 0;
+					int n;
+					while ((n = in.read(buffer)) > 0) {
+						ByteBuffer data = ByteBuffer.wrap(buffer, 0, n);
+						while (data.hasRemaining()) {
+							written += channel.write(data);
+						}
+					}
+					if (written != entry.getSize()) {
+						out.setLength(written);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+		target.setLastModified(entry.getTime());
+	}
+}
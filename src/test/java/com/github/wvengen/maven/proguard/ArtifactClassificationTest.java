@@ -0,0 +1,98 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ArtifactClassificationTest {
+
+    @Test
+    public void firstDeclaredInclusionClaimsAnArtifact() {
+        Inclusion all = inclusion("com.example", "*", true);
+        Inclusion core = inclusion("com.example", "core", false);
+        ArtifactClassification classification = classify(Arrays.asList(artifact("core", "compile")),
+                Arrays.asList(all, core), false);
+
+        List<ArtifactClassification.Entry> merged = classification.getEntries(ArtifactClassification.Role.ASSEMBLY_MERGE);
+        Assert.assertEquals(Arrays.asList("core"), artifactIds(merged));
+        Assert.assertSame(all, merged.get(0).getInclusion());
+    }
+
+    @Test
+    public void overlappingInclusionsAreAllMatched() {
+        Inclusion all = inclusion("com.example", "*", false);
+        Inclusion core = inclusion("com.example", "core", false);
+        Inclusion missing = inclusion("com.example", "missing", false);
+        ArtifactClassification classification = classify(Arrays.asList(artifact("core", "compile")),
+                Arrays.asList(all, core, missing), false);
+
+        Assert.assertEquals(Collections.singletonList(missing), classification.getUnmatchedInclusions());
+    }
+
+    @Test
+    public void includedArtifactsComeInInclusionOrder() {
+        List<Artifact> artifacts = Arrays.asList(artifact("a", "compile"), artifact("b", "compile"),
+                artifact("c", "compile"), artifact("d", "compile"));
+        ArtifactClassification classification = classify(artifacts,
+                Arrays.asList(inclusion("com.example", "c", false), inclusion("com.example", "a", false)), true);
+
+        Assert.assertEquals(Arrays.asList("c", "a", "b", "d"),
+                artifactIds(classification.getEntries(ArtifactClassification.Role.INJAR)));
+    }
+
+    @Test
+    public void otherArtifactsAreClassifiedByScope() {
+        List<Artifact> artifacts = Arrays.asList(artifact("lib", "compile"), artifact("api", "provided"),
+                artifact("junit", "test"), artifact("rt", "runtime"));
+        ArtifactClassification classification = classify(artifacts, Collections.<Inclusion>emptyList(), false);
+
+        Assert.assertEquals(Arrays.asList("lib", "api"),
+                artifactIds(classification.getEntries(ArtifactClassification.Role.LIBRARY)));
+        Assert.assertEquals(Arrays.asList("junit", "rt"),
+                artifactIds(classification.getEntries(ArtifactClassification.Role.EXCLUDED)));
+        Assert.assertEquals("scope test",
+                classification.getEntries(ArtifactClassification.Role.EXCLUDED).get(0).getRule());
+    }
+
+    private static ArtifactClassification classify(List<Artifact> artifacts, List<Inclusion> inclusions,
+            boolean includeDependencyInjar) {
+        return ArtifactClassification.classify(artifacts, new ArtifactMatcher<Inclusion>(inclusions),
+                new ArtifactMatcher<Exclusion>(Collections.<Exclusion>emptyList()), true, includeDependencyInjar);
+    }
+
+    private static Inclusion inclusion(String groupId, String artifactId, boolean library) {
+        Inclusion inclusion = new Inclusion();
+        inclusion.groupId = groupId;
+        inclusion.artifactId = artifactId;
+        inclusion.library = library;
+        return inclusion;
+    }
+
+    private static Artifact artifact(String artifactId, String scope) {
+        DefaultArtifactHandler handler = new DefaultArtifactHandler("jar") {
+            @Override
+            public boolean isAddedToClasspath() {
+                return true;
+            }
+        };
+        return new DefaultArtifact("com.example", artifactId, VersionRange.createFromVersion("1.0"), scope, "jar",
+                null, handler);
+    }
+
+    private static List<String> artifactIds(List<ArtifactClassification.Entry> entries) {
+        List<String> ids = new ArrayList<String>();
+        for (ArtifactClassification.Entry entry : entries) {
+            ids.add(entry.getArtifact().getArtifactId());
+        }
+        return ids;
+    }
+}
@@ -7,6 +7,8 @@ import org.apache.maven.artifact.versioning.VersionRange;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 public class ArtifactFilterTest {
 
     private ArtifactFilter artifactFilter = new ArtifactFilter();
@@ -53,13 +55,87 @@ public class ArtifactFilterTest {
         Assert.assertFalse(artifactFilter.match(getArtifact()));
     }
 
-    @Test(expected = IllegalArgumentException.class)
-    public void invalidRegex() {
+    @Test
+    public void invalidRegexMatchesLiterally() {
         artifactFilter.groupId = "com.mahifx";
         artifactFilter.artifactId = "+";
-        artifactFilter.match(getArtifact());
+        Assert.assertFalse(artifactFilter.match(getArtifact()));
+        Assert.assertTrue(artifactFilter.match(getArtifact("com.mahifx", "+")));
     }
 
+    @Test
+    public void literalMatchWithRegexTokens() {
+        artifactFilter.groupId = "com.mahifx";
+        artifactFilter.artifactId = "c++-lib";
+        Assert.assertTrue(artifactFilter.match(getArtifact("com.mahifx", "c++-lib")));
+        artifactFilter.artifactId = "foo+bar";
+        Assert.assertTrue(artifactFilter.match(getArtifact("com.mahifx", "foo+bar")));
+        Assert.assertFalse(artifactFilter.match(getArtifact()));
+    }
+
+    @Test
+    public void groupIdWildcardMatch() {
+        artifactFilter.groupId = "com.*";
+        artifactFilter.artifactId = "libA";
+        Assert.assertTrue(artifactFilter.match(getArtifact()));
+    }
+
+    @Test
+    public void groupIdIsNotARegex() {
+        artifactFilter.groupId = "com.mahif.";
+        artifactFilter.artifactId = "libA";
+        Assert.assertFalse(artifactFilter.match(getArtifact()));
+    }
+
+    @Test
+    public void classifierWildcardMatch() {
+        artifactFilter.groupId = "com.mahifx";
+        artifactFilter.artifactId = "libA";
+        artifactFilter.classifier = "*";
+        Assert.assertTrue(artifactFilter.match(getArtifact()));
+        Assert.assertTrue(artifactFilter.match(getArtifact("tests")));
+        artifactFilter.classifier = "test?";
+        Assert.assertFalse(artifactFilter.match(getArtifact()));
+        Assert.assertTrue(artifactFilter.match(getArtifact("tests")));
+    }
+
+    @Test
+    public void matcherReturnsFirstDeclaredFilter() {
+        ArtifactFilter regex = filter("com.mahifx", "lib.*");
+        ArtifactFilter literal = filter("com.mahifx", "libA");
+        ArtifactFilter other = filter("org.other", "libA");
+        ArtifactMatcher<ArtifactFilter> matcher = new ArtifactMatcher<ArtifactFilter>(Arrays.asList(other, regex, literal));
+        Assert.assertSame(regex, matcher.firstMatch(getArtifact()));
+        matcher = new ArtifactMatcher<ArtifactFilter>(Arrays.asList(literal, regex));
+        Assert.assertSame(literal, matcher.firstMatch(getArtifact()));
+        matcher = new ArtifactMatcher<ArtifactFilter>(Arrays.asList(other));
+        Assert.assertNull(matcher.firstMatch(getArtifact()));
+    }
+
+    @Test
+    public void matcherMatchesRegexTokensLiterally() {
+        ArtifactFilter invalid = filter("com.mahifx", "+");
+        ArtifactFilter literal = filter("com.mahifx", "c++-lib");
+        ArtifactMatcher<ArtifactFilter> matcher = new ArtifactMatcher<ArtifactFilter>(Arrays.asList(invalid, literal));
+        Assert.assertSame(invalid, matcher.firstMatch(getArtifact("com.mahifx", "+")));
+        Assert.assertSame(literal, matcher.firstMatch(getArtifact("com.mahifx", "c++-lib")));
+        Assert.assertNull(matcher.firstMatch(getArtifact()));
+    }
+
+    private ArtifactFilter filter(String groupId, String artifactId) {
+        ArtifactFilter filter = new ArtifactFilter();
+        filter.groupId = groupId;
+        filter.artifactId = artifactId;
+        return filter;
+    }
+
+    private DefaultArtifact getArtifact(String groupId, String artifactId) {
+        return new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersion("1.0.0"), "compile", "jar", null, new DefaultArtifactHandler());
+    }
+
+    private DefaultArtifact getArtifact(String classifier) {
+        return new DefaultArtifact("com.mahifx", "libA", VersionRange.createFromVersion("1.0.0"), "compile", "jar", classifier, new DefaultArtifactHandler());
+    }
 
     private DefaultArtifact getArtifact() {
         return new DefaultArtifact("com.mahifx", "libA", VersionRange.createFromVersion("1.0.0"), "compile", "jar", null, new DefaultArtifactHandler());
@@ -0,0 +1,67 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+public class BuildCacheTest {
+
+    private static final String KEY = "0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresStoredOutputs() throws IOException {
+        File out = write(new File(folder.getRoot(), "out.jar"), "processed");
+        List<File> outputs = Collections.singletonList(out);
+        BuildCache cache = new BuildCache(folder.newFolder("cache"), 1L << 20);
+
+        Assert.assertFalse(cache.restore(KEY, outputs));
+        cache.store(KEY, outputs);
+        Assert.assertTrue(out.delete());
+        Assert.assertTrue(cache.restore(KEY, outputs));
+        Assert.assertEquals("processed", read(out));
+    }
+
+    @Test
+    public void rewritingARestoredOutputInPlaceKeepsTheEntry() throws IOException {
+        File out = write(new File(folder.getRoot(), "out.jar"), "processed");
+        List<File> outputs = Collections.singletonList(out);
+        BuildCache cache = new BuildCache(folder.newFolder("cache"), 1L << 20);
+        cache.store(KEY, outputs);
+        Assert.assertTrue(out.delete());
+        Assert.assertTrue(cache.restore(KEY, outputs));
+
+        // same length and modification time, so only the content tells the rewrite apart
+        long modified = out.lastModified();
+        RandomAccessFile file = new RandomAccessFile(out, "rw");
+        try {
+            file.write("corrupted".getBytes("UTF-8"));
+        } finally {
+            file.close();
+        }
+        Assert.assertTrue(out.setLastModified(modified));
+
+        Assert.assertTrue(cache.restore(KEY, outputs));
+        Assert.assertEquals("processed", read(out));
+    }
+
+    private static File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+public class ClassDataSharingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dumpsAnArchiveOnceAndThenUsesIt() throws IOException {
+        File cache = new File(folder.getRoot(), "cds");
+        ClassDataSharing sharing = forClassPath(cache, jar("proguard.jar", "1"));
+
+        List<String> dumpArgs = sharing.jvmArgs();
+        Assert.assertTrue(sharing.isDumping());
+        File dump = new File(value(dumpArgs, "-XX:ArchiveClassesAtExit="));
+        Files.write(dump.toPath(), new byte[] { 1 });
+        sharing.completed(true);
+        Assert.assertTrue(sharing.getArchive().isFile());
+        Assert.assertFalse(dump.exists());
+
+        List<String> args = sharing.jvmArgs();
+        Assert.assertFalse(sharing.isDumping());
+        Assert.assertEquals(sharing.getArchive().getAbsolutePath(), value(args, "-XX:SharedArchiveFile="));
+    }
+
+    @Test
+    public void failedForksPublishNothing() throws IOException {
+        File cache = new File(folder.getRoot(), "cds");
+        ClassDataSharing sharing = forClassPath(cache, jar("proguard.jar", "1"));
+
+        File dump = new File(value(sharing.jvmArgs(), "-XX:ArchiveClassesAtExit="));
+        Files.write(dump.toPath(), new byte[] { 1 });
+        sharing.completed(false);
+        Assert.assertEquals(0, cache.list().length);
+    }
+
+    @Test
+    public void aNewClassPathReplacesTheOldArchive() throws IOException {
+        File cache = new File(folder.getRoot(), "cds");
+        File jar = jar("proguard.jar", "1");
+        ClassDataSharing old = forClassPath(cache, jar);
+        publish(old);
+
+        Files.write(jar.toPath(), "changed".getBytes("UTF-8"));
+        ClassDataSharing current = forClassPath(cache, jar);
+        Assert.assertFalse(current.getArchive().equals(old.getArchive()));
+        Assert.assertTrue(current.getArchive().getName().startsWith("proguard-"));
+        publish(current);
+        Assert.assertFalse(old.getArchive().exists());
+        Assert.assertTrue(current.getArchive().isFile());
+    }
+
+    private static ClassDataSharing forClassPath(File cache, File jar) throws IOException {
+        ClassDataSharing sharing = ClassDataSharing.forClassPath(cache, Collections.singletonList(jar));
+        Assume.assumeNotNull(sharing);
+        return sharing;
+    }
+
+    private static void publish(ClassDataSharing sharing) throws IOException {
+        Files.write(new File(value(sharing.jvmArgs(), "-XX:ArchiveClassesAtExit=")).toPath(), new byte[] { 1 });
+        sharing.completed(true);
+    }
+
+    private static String value(List<String> args, String prefix) {
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        throw new AssertionError(prefix + " not in " + args);
+    }
+
+    private File jar(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+}
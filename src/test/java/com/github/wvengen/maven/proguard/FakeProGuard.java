@@ -0,0 +1,93 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A ProGuard jar for tests that run ProGuard in process or in the daemon.
+ */
+final class FakeProGuard {
+
+    /**
+     * A ProGuard stand-in: the parser records its arguments and base directory in the configuration, execute()
+     * publishes them with the identity of the class loader as system properties and prints them with the name of
+     * the JVM.
+     */
+    private static final String[][] SOURCES = {
+            { "proguard/Configuration.java", "package proguard;\n"
+                    + "public class Configuration { public String args; }\n" },
+            { "proguard/ConfigurationParser.java", "package proguard;\n"
+                    + "public class ConfigurationParser {\n"
+                    + "  private final String[] args; private final java.io.File baseDir;\n"
+                    + "  public ConfigurationParser(String[] args, java.io.File baseDir, java.util.Properties p) {\n"
+                    + "    this.args = args; this.baseDir = baseDir; }\n"
+                    + "  public void parse(Configuration c) {\n"
+                    + "    if (c.args != null) throw new IllegalStateException(\"reused configuration\");\n"
+                    + "    c.args = String.join(\" \", args) + \" @\" + baseDir.getName(); }\n"
+                    + "  public void close() {}\n"
+                    + "}\n" },
+            { "proguard/ProGuard.java", "package proguard;\n"
+                    + "public class ProGuard {\n"
+                    + "  private final Configuration c;\n"
+                    + "  public ProGuard(Configuration c) { this.c = c; }\n"
+                    + "  public void execute() throws Exception {\n"
+                    + "    String id = c.args.split(\" \")[0];\n"
+                    + "    System.setProperty(\"inprocess.\" + id + \".args\", c.args);\n"
+                    + "    System.setProperty(\"inprocess.\" + id + \".loader\",\n"
+                    + "        Integer.toString(System.identityHashCode(getClass().getClassLoader())));\n"
+                    + "    System.setProperty(\"inprocess.\" + id + \".context\",\n"
+                    + "        String.valueOf(Thread.currentThread().getContextClassLoader() == getClass().getClassLoader()));\n"
+                    + "    System.out.println(\"processed \" + c.args + \" in \"\n"
+                    + "        + java.lang.management.ManagementFactory.getRuntimeMXBean().getName());\n"
+                    + "    if (c.args.contains(\"-fail\")) throw new java.io.IOException(\"failed \" + id);\n"
+                    + "    if (c.args.contains(\"-wait\")) Thread.sleep(500);\n"
+                    + "  }\n"
+                    + "}\n" } };
+
+    private FakeProGuard() {
+    }
+
+    /**
+     * Compiles the stand-in into a new jar, one per test as loaders are kept per jar for the whole JVM.
+     */
+    static File jar(TemporaryFolder folder) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        File sources = folder.newFolder();
+        File classes = folder.newFolder();
+        String[] arguments = new String[SOURCES.length + 3];
+        arguments[0] = "-proc:none";
+        arguments[1] = "-d";
+        arguments[2] = classes.getPath();
+        for (int i = 0; i < SOURCES.length; i++) {
+            File source = new File(sources, SOURCES[i][0]);
+            source.getParentFile().mkdirs();
+            Files.write(source.toPath(), SOURCES[i][1].getBytes("UTF-8"));
+            arguments[i + 3] = source.getPath();
+        }
+        Assert.assertEquals(0, compiler.run(null, null, null, arguments));
+
+        File jar = new File(folder.newFolder(), "proguard.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (File file : new File(classes, "proguard").listFiles()) {
+                out.putNextEntry(new ZipEntry("proguard/" + file.getName()));
+                out.write(Files.readAllBytes(file.toPath()));
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class FileCleanerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void movesTreesAsideAndDeletesThemInTheBackground() throws Exception {
+        File trash = new File(folder.getRoot(), "trash");
+        File leftover = new File(trash, "expanded-1234");
+        tree(leftover);
+        File expanded = tree(new File(folder.getRoot(), "expanded"));
+        File jar = folder.newFile("out.jar");
+
+        FileCleaner cleaner = FileCleaner.forTrash(trash);
+        cleaner.delete(expanded);
+        cleaner.delete(jar);
+        Assert.assertFalse(expanded.exists());
+        Assert.assertFalse(jar.exists());
+
+        cleaner.awaitIdle();
+        Assert.assertArrayEquals(new String[0], trash.list());
+        Assert.assertTrue(cleaner.takeFailures().isEmpty());
+    }
+
+    @Test
+    public void reportsFailuresToTheCleanerThatScheduledTheDeletion() throws Exception {
+        File trash = new File(folder.getRoot(), "trash");
+        File expanded = tree(new File(folder.getRoot(), "expanded"));
+        File locked = new File(expanded, "WEB-INF/classes");
+        Assert.assertTrue(locked.setWritable(false));
+        try {
+            Assume.assumeFalse("permissions don't apply", locked.canWrite());
+            FileCleaner failing = FileCleaner.forTrash(trash);
+            FileCleaner other = FileCleaner.forTrash(trash);
+            failing.delete(expanded);
+            failing.awaitIdle();
+
+            Assert.assertTrue(other.takeFailures().isEmpty());
+            List<String> failures = failing.takeFailures();
+            Assert.assertEquals(1, failures.size());
+            Assert.assertTrue(failures.get(0), failures.get(0).startsWith("Can't delete "));
+            Assert.assertTrue(failing.takeFailures().isEmpty());
+        } finally {
+            File[] moved = trash.listFiles();
+            for (File dir : moved != null ? moved : new File[0]) {
+                new File(dir, "WEB-INF/classes").setWritable(true);
+            }
+        }
+    }
+
+    @Test
+    public void sweepsLeftoversOnlyOnce() throws Exception {
+        File trash = new File(folder.getRoot(), "trash");
+        FileCleaner first = FileCleaner.forTrash(trash);
+        first.awaitIdle();
+
+        File leftover = tree(new File(trash, "expanded-5678"));
+        FileCleaner second = FileCleaner.forTrash(trash);
+        second.awaitIdle();
+        Assert.assertTrue(leftover.isDirectory());
+    }
+
+    @Test
+    public void namesThePathThatCantBeDeleted() throws Exception {
+        File dir = folder.newFolder("locked");
+        File file = new File(dir, "A.class");
+        Files.write(file.toPath(), new byte[] { 1 });
+        Assert.assertTrue(dir.setWritable(false));
+        try {
+            Assume.assumeFalse("permissions don't apply", dir.canWrite());
+            FileCleaner.deleteNow(dir);
+            Assert.fail("deleted " + file);
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Can't delete " + file));
+        } finally {
+            dir.setWritable(true);
+        }
+    }
+
+    private static File tree(File root) throws IOException {
+        File dir = new File(root, "WEB-INF/classes/com/example");
+        Assert.assertTrue(dir.mkdirs());
+        Files.write(new File(dir, "A.class").toPath(), new byte[] { 1, 2, 3 });
+        return root;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class HeapEstimatorTest {
+
+    private static final long MB = 1024L * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void smallInputsGetTheMinimumHeap() throws IOException {
+        HeapEstimator estimator = new HeapEstimator();
+        estimator.addProgram(jar("small.jar", 10, 1000));
+        Assert.assertEquals(HeapEstimator.MIN_HEAP, estimator.estimate(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void programClassesWeighMoreThanLibraryClasses() throws IOException {
+        File jar = jar("large.jar", 100, MB);
+        HeapEstimator program = new HeapEstimator();
+        program.addProgram(jar);
+        HeapEstimator library = new HeapEstimator();
+        library.addLibrary(jar);
+
+        long programHeap = program.estimate(Long.MAX_VALUE);
+        Assert.assertTrue(programHeap > library.estimate(Long.MAX_VALUE));
+        Assert.assertEquals(0, programHeap % (32 * MB));
+        Assert.assertEquals(300 * MB, program.estimate(300 * MB));
+        Assert.assertEquals("100 program classes (100m), 0 library classes (0m)", program.toString());
+    }
+
+    @Test
+    public void countsOnlyClassesOfJarsAndDirectories() throws IOException {
+        File classes = folder.newFolder("classes");
+        Assert.assertTrue(new File(classes, "a/b").mkdirs());
+        Files.write(new File(classes, "a/b/C.class").toPath(), new byte[100]);
+        Files.write(new File(classes, "a/b/readme.txt").toPath(), new byte[100]);
+        File notAJar = folder.newFile("notes.jar");
+        Files.write(notAJar.toPath(), "no zip".getBytes("UTF-8"));
+
+        HeapEstimator estimator = new HeapEstimator();
+        estimator.addProgram(classes);
+        estimator.addLibrary(notAJar);
+        estimator.addLibrary(new File(folder.getRoot(), "missing.jar"));
+        Assert.assertEquals("1 program classes (0m), 0 library classes (0m)", estimator.toString());
+    }
+
+    private File jar(String name, int classes, long classSize) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            byte[] content = new byte[(int) classSize];
+            for (int i = 0; i < classes; i++) {
+                out.putNextEntry(new ZipEntry("p/C" + i + ".class"));
+                out.write(content);
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write(content);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class InProcessProGuardTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void passesArgumentsAndBaseDirectoryToTheParser() throws Exception {
+        File jar = FakeProGuard.jar(folder);
+        File baseDir = folder.newFolder("module");
+        ClassLoader context = Thread.currentThread().getContextClassLoader();
+
+        InProcessProGuard.run(jar, "proguard.ProGuard", Arrays.asList("first", "-injars", "in dir/a.jar"), baseDir);
+
+        Assert.assertEquals("first -injars in dir/a.jar @module", System.getProperty("inprocess.first.args"));
+        Assert.assertEquals("true", System.getProperty("inprocess.first.context"));
+        Assert.assertSame(context, Thread.currentThread().getContextClassLoader());
+    }
+
+    @Test
+    public void reusesIdleLoadersWithAFreshConfiguration() throws Exception {
+        File jar = FakeProGuard.jar(folder);
+        InProcessProGuard.run(jar, "proguard.ProGuard", Collections.singletonList("one"), folder.getRoot());
+        InProcessProGuard.run(jar, "proguard.ProGuard", Collections.singletonList("two"), folder.getRoot());
+        Assert.assertEquals(System.getProperty("inprocess.one.loader"), System.getProperty("inprocess.two.loader"));
+    }
+
+    @Test
+    public void givesConcurrentRunsTheirOwnLoader() throws Exception {
+        final File jar = FakeProGuard.jar(folder);
+        final Exception[] failure = new Exception[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    InProcessProGuard.run(jar, "proguard.ProGuard", Arrays.asList("slow", "-wait"),
+                            folder.getRoot());
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        other.start();
+        // the slow run holds its loader until it is done
+        while (System.getProperty("inprocess.slow.loader") == null) {
+            Thread.sleep(10);
+        }
+        InProcessProGuard.run(jar, "proguard.ProGuard", Collections.singletonList("fast"), folder.getRoot());
+        other.join();
+        Assert.assertNull(failure[0]);
+        Assert.assertNotEquals(System.getProperty("inprocess.slow.loader"),
+                System.getProperty("inprocess.fast.loader"));
+    }
+
+    @Test
+    public void rethrowsWhatProGuardThrows() throws Exception {
+        File jar = FakeProGuard.jar(folder);
+        try {
+            InProcessProGuard.run(jar, "proguard.ProGuard", Arrays.asList("broken", "-fail"), folder.getRoot());
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("failed broken", e.getMessage());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void rejectsMainClassesWithoutTheConfigurationApi() throws Exception {
+        InProcessProGuard.run(FakeProGuard.jar(folder), "proguard.Missing", Collections.<String>emptyList(), folder.getRoot());
+    }
+}
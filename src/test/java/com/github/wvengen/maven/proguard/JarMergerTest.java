@@ -0,0 +1,105 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class JarMergerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergesJarsAndDirectories() throws IOException {
+        File first = jar("first.jar", "META-INF/MANIFEST.MF", "com/example/A.class", "LICENSE");
+        File second = jar("second.jar", "META-INF/MANIFEST.MF", "org/lib/B.class", "LICENSE");
+        File classes = folder.newFolder("classes");
+        new File(classes, "net/module").mkdirs();
+        Files.write(new File(classes, "net/module/C.class").toPath(), new byte[] { 1, 2, 3 });
+
+        File target = new File(folder.getRoot(), "out.jar");
+        RawZipWriter writer = new RawZipWriter(target);
+        JarMerger merger = new JarMerger(writer, JarMerger.WARN);
+        try {
+            merger.addJar(first);
+            merger.addJar(second);
+            merger.addDirectory(classes);
+        } finally {
+            writer.close();
+        }
+
+        Assert.assertEquals(Collections.singletonList("LICENSE (second.jar)"), merger.getDuplicates());
+        ZipFile zip = new ZipFile(target);
+        try {
+            Assert.assertNull(zip.getEntry("META-INF/MANIFEST.MF"));
+            Assert.assertEquals("first.jar", new String(read(zip, "LICENSE"), "UTF-8"));
+            for (String name : new String[] { "com/", "com/example/", "org/lib/", "net/module/" }) {
+                Assert.assertTrue(name, zip.getEntry(name).isDirectory());
+            }
+            Assert.assertEquals("org/lib/B.class", new String(read(zip, "org/lib/B.class"), "UTF-8"));
+            Assert.assertEquals(3, read(zip, "net/module/C.class").length);
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void failsOnDuplicates() throws IOException {
+        File first = jar("first.jar", "LICENSE");
+        File second = jar("second.jar", "LICENSE");
+        RawZipWriter writer = new RawZipWriter(new File(folder.getRoot(), "out.jar"));
+        try {
+            JarMerger merger = new JarMerger(writer, JarMerger.FAIL);
+            merger.addJar(first);
+            merger.addJar(second);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes a jar whose entries contain the name of the jar, or their own name for classes.
+     */
+    private File jar(String name, String... entries) throws IOException {
+        File jar = folder.newFile(name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write((entry.endsWith(".class") ? entry : name).getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        InputStream in = zip.getInputStream(zip.getEntry(name));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
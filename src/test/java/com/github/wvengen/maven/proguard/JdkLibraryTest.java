@@ -0,0 +1,67 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.ZipFile;
+
+public class JdkLibraryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void usesTheRtJarOfOldJdks() throws IOException {
+        File home = folder.newFolder("jdk8");
+        File rtJar = new File(new File(home, "jre/lib"), "rt.jar");
+        Assert.assertTrue(rtJar.getParentFile().mkdirs());
+        Assert.assertTrue(rtJar.createNewFile());
+
+        Assert.assertEquals(rtJar.getCanonicalFile(),
+                JdkLibrary.resolve(home, Collections.<String>emptyList(), folder.newFolder("cache")));
+    }
+
+    @Test
+    public void writesAndCachesTheRequestedModules() throws IOException {
+        assumeModularJdk();
+        File cache = folder.newFolder("cache");
+
+        File jar = JdkLibrary.resolve(null, Collections.singletonList("java.logging"), cache);
+        ZipFile zip = new ZipFile(jar);
+        try {
+            Assert.assertNotNull(zip.getEntry("java/lang/Object.class"));
+            Assert.assertNotNull(zip.getEntry("java/util/logging/Logger.class"));
+            Assert.assertNull(zip.getEntry("module-info.class"));
+            Assert.assertNull(zip.getEntry("java/sql/Connection.class"));
+        } finally {
+            zip.close();
+        }
+        Assert.assertEquals(jar, JdkLibrary.resolve(null, Collections.singletonList("java.logging"), cache));
+        Assert.assertFalse(jar.equals(JdkLibrary.resolve(null, Collections.singletonList("java.sql"), cache)));
+        Assert.assertEquals(2, cache.list().length);
+    }
+
+    @Test
+    public void rejectsUnknownModules() throws IOException {
+        assumeModularJdk();
+        File cache = folder.newFolder("cache");
+        try {
+            JdkLibrary.resolve(null, Collections.singletonList("no.such.module"), cache);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("no.such.module"));
+        }
+        Assert.assertEquals(0, cache.list().length);
+    }
+
+    private static void assumeModularJdk() {
+        Assume.assumeTrue(new File(System.getProperty("java.home"), "lib/modules").isFile());
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LibraryStagingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stagesEachLibraryOnceUnderAUniqueName() throws IOException {
+        File a = jar("one", "lib.jar", "a");
+        File b = jar("two", "lib.jar", "b");
+        File staging = new File(folder.getRoot(), "staging");
+
+        LibraryStaging libraries = new LibraryStaging(staging);
+        libraries.stage(Arrays.asList(a, b, a));
+
+        Assert.assertEquals("a", read(new File(staging, "lib.jar")));
+        Assert.assertEquals("b", read(new File(staging, "1-lib.jar")));
+        Assert.assertTrue(libraries.toString(), libraries.toString().contains("0 unchanged, 2 hard linked"));
+    }
+
+    @Test
+    public void keepsUnchangedLibrariesAndRemovesOthers() throws IOException {
+        File a = jar("one", "a.jar", "a");
+        File b = jar("one", "b.jar", "b");
+        File staging = new File(folder.getRoot(), "staging");
+        new LibraryStaging(staging).stage(Arrays.asList(a, b));
+
+        LibraryStaging libraries = new LibraryStaging(staging);
+        libraries.stage(Collections.singletonList(a));
+
+        Assert.assertTrue(libraries.toString(), libraries.toString().contains("1 unchanged, 0 hard linked"));
+        Assert.assertTrue(new File(staging, "a.jar").isFile());
+        Assert.assertFalse(new File(staging, "b.jar").exists());
+    }
+
+    @Test
+    public void restagesRewrittenLibraries() throws IOException {
+        File a = jar("one", "a.jar", "a");
+        File staging = new File(folder.getRoot(), "staging");
+        new LibraryStaging(staging).stage(Collections.singletonList(a));
+
+        // replaced rather than rewritten in place, as a build does
+        Assert.assertTrue(a.delete());
+        jar("one", "a.jar", "changed");
+        LibraryStaging libraries = new LibraryStaging(staging);
+        libraries.stage(Collections.singletonList(a));
+
+        Assert.assertTrue(libraries.toString(), libraries.toString().contains("0 unchanged, 1 hard linked"));
+        Assert.assertEquals("changed", read(new File(staging, "a.jar")));
+    }
+
+    @Test
+    public void restagingKeepsTheFingerprint() throws IOException {
+        File a = jar("one", "a.jar", "a");
+        File staging = new File(folder.getRoot(), "staging");
+        UpToDateCheck check = new UpToDateCheck(new File(folder.getRoot(), "state"));
+        List<String> args = Arrays.asList("-libraryjars", staging.getPath());
+
+        new LibraryStaging(staging).stage(Collections.singletonList(a));
+        String first = check.fingerprint(args, Collections.<File>emptyList(), folder.getRoot(),
+                Collections.<File, String>emptyMap(), Collections.emptyList());
+        new LibraryStaging(staging).stage(Collections.singletonList(a));
+        String second = check.fingerprint(args, Collections.<File>emptyList(), folder.getRoot(),
+                Collections.<File, String>emptyMap(), Collections.emptyList());
+
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(Collections.singletonList("a.jar"), Arrays.asList(staging.list()));
+    }
+
+    @Test
+    public void linksDirectories() throws IOException {
+        File classes = folder.newFolder("classes");
+        Files.write(new File(classes, "A.class").toPath(), new byte[] { 1 });
+        File staging = new File(folder.getRoot(), "staging");
+
+        LibraryStaging libraries = new LibraryStaging(staging);
+        libraries.stage(Collections.singletonList(classes));
+
+        Assert.assertTrue(new File(staging, "classes/A.class").isFile());
+        Assert.assertFalse(libraries.toString(), libraries.toString().contains("1 hard linked"));
+    }
+
+    private File jar(String dir, String name, String content) throws IOException {
+        File parent = new File(folder.getRoot(), dir);
+        Assert.assertTrue(parent.isDirectory() || parent.mkdirs());
+        File file = new File(parent, name);
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class LibraryStubberTest {
+
+    @Test
+    public void stubKeepsSignaturesAndDropsCode() throws IOException {
+        byte[] classFile = read("/com/github/wvengen/maven/proguard/ArtifactFilter.class");
+        byte[] stub = LibraryStubber.stubClass(classFile);
+
+        Assert.assertNotNull(stub);
+        Assert.assertTrue(stub.length < classFile.length);
+        Assert.assertTrue(contains(classFile, "Code"));
+        Assert.assertFalse(contains(stub, "Code"));
+        Assert.assertTrue(contains(stub, "com/github/wvengen/maven/proguard/ArtifactFilter"));
+        Assert.assertTrue(contains(stub, "isArtifactIdPattern"));
+        Assert.assertTrue(contains(stub, "(Lorg/apache/maven/artifact/Artifact;)Z"));
+    }
+
+    @Test
+    public void unknownContentIsKept() {
+        Assert.assertNull(LibraryStubber.stubClass(new byte[] { 1, 2, 3, 4 }));
+    }
+
+    private static boolean contains(byte[] data, String value) throws IOException {
+        return new String(data, "ISO-8859-1").contains(value);
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        InputStream in = LibraryStubberTest.class.getResourceAsStream(resource);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
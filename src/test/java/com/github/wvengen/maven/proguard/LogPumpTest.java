@@ -0,0 +1,79 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LogPumpTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void summarizesRepeatedWarningsAndKeepsTheRawLog() throws IOException {
+        RecordingLog log = new RecordingLog();
+        File raw = new File(folder.getRoot(), "proguard.log");
+        LogPump pump = new LogPump(log, "[app:default] ", 2, 2, false, raw);
+        OutputStream out = pump.stream();
+        OutputStream statistics = pump.debugStream();
+        out.write("Reading program jar [app.jar]\n".getBytes("UTF-8"));
+        for (int i = 0; i < 5; i++) {
+            out.write(("Warning: com.example.A" + i + ": can't find referenced class org.lib.B" + i + "\n")
+                    .getBytes("UTF-8"));
+        }
+        statistics.write("Number of optimization passes: 1\n".getBytes("UTF-8"));
+        out.write("Error: Please correct the above warnings first.".getBytes("UTF-8"));
+        out.close();
+        pump.close();
+
+        Assert.assertEquals(Arrays.asList(
+                "info [app:default] Reading program jar [app.jar]",
+                "warn [app:default] Warning: com.example.A0: can't find referenced class org.lib.B0",
+                "warn [app:default] Warning: com.example.A1: can't find referenced class org.lib.B1",
+                "error [app:default] Error: Please correct the above warnings first.",
+                "warn [app:default] 3 more like: Warning: *: can't find referenced class *"), log.lines);
+        Assert.assertEquals(8, Files.readAllLines(raw.toPath(), Charset.forName("UTF-8")).size());
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+
+        final List<String> lines = new ArrayList<String>();
+
+        @Override
+        public boolean isDebugEnabled() {
+            return false;
+        }
+
+        @Override
+        public void debug(CharSequence content) {
+            lines.add("debug " + content);
+        }
+
+        @Override
+        public void info(CharSequence content) {
+            lines.add("info " + content);
+        }
+
+        @Override
+        public void warn(CharSequence content) {
+            lines.add("warn " + content);
+        }
+
+        @Override
+        public void error(CharSequence content) {
+            lines.add("error " + content);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class MappingDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void countsRenamedAddedAndRemovedNames() throws IOException {
+        File previous = mapping("previous.txt",
+                "com.example.Service -> a.a:",
+                "    int count -> a",
+                "    1:4:void start():20:23 -> a",
+                "com.example.Old -> a.b:");
+        File current = mapping("current.txt",
+                "com.example.Service -> a.a:",
+                "    int count -> b",
+                "    3:6:void start():22:25 -> a",
+                "    void stop() -> c",
+                "com.example.New -> a.c:");
+
+        MappingDiff diff = MappingDiff.compare(previous, current);
+        Assert.assertEquals(5, diff.getNames());
+        Assert.assertEquals(1, diff.getRenamed());
+        Assert.assertEquals(2, diff.getAdded());
+        Assert.assertEquals(1, diff.getRemoved());
+    }
+
+    private File mapping(String name, String... lines) throws IOException {
+        File file = folder.newFile(name);
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        Files.write(file.toPath(), content.toString().getBytes("UTF-8"));
+        return file;
+    }
+}
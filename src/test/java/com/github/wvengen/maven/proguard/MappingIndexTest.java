@@ -0,0 +1,135 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class MappingIndexTest {
+
+    private static final String MAPPING = ""
+            + "com.example.Service -> a.b:\n"
+            + "    java.lang.String name -> a\n"
+            + "    int count -> b\n"
+            + "    1:4:void start():20:23 -> a\n"
+            + "    5:5:void check():40:40 -> a\n"
+            + "    5:5:void start():24:24 -> a\n"
+            + "    void stop() -> b\n"
+            + "    void close() -> b\n"
+            + "com.example.Main -> a.a:\n"
+            + "    7:9:void main(java.lang.String[]) -> main\n"
+            + "com.example.Error -> a.c:\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappingIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        File mapping = folder.newFile("proguard_map.txt");
+        Files.write(mapping.toPath(), MAPPING.getBytes("UTF-8"));
+        File file = new File(folder.getRoot(), "proguard_map.idx");
+        Assert.assertEquals(3, MappingIndex.write(mapping, file));
+        Assert.assertTrue(MappingIndex.isIndex(file));
+        Assert.assertFalse(MappingIndex.isIndex(mapping));
+        index = MappingIndex.open(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    public void looksUpClassesFieldsAndMethods() {
+        Assert.assertEquals("com.example.Service", index.originalClass("a.b"));
+        Assert.assertNull(index.originalClass("a.d"));
+        Assert.assertEquals(Collections.singletonList("count"), index.originalFields("a.b", "b"));
+        Assert.assertEquals("[com.example.Service.start:22]", index.originalFrames("a.b", "a", 3).toString());
+        Assert.assertEquals("[com.example.Service.check:40, com.example.Service.start:24]",
+                index.originalFrames("a.b", "a", 5).toString());
+        Assert.assertEquals("[com.example.Service.stop, com.example.Service.close]",
+                index.originalFrames("a.b", "b", 0).toString());
+        Assert.assertTrue(index.originalFrames("a.b", "c", 1).isEmpty());
+    }
+
+    @Test
+    public void retracesLogFilesInChunks() throws Exception {
+        String[] log = {
+                "INFO starting",
+                "Exception in thread \"main\" a.c: failed",
+                "\tat a.b.a(SourceFile:5)",
+                "\tat a.b.b(SourceFile)",
+                "\tat a.a.main(SourceFile:8)",
+                "\tat java.lang.Thread.run(Thread.java:750)",
+                "Caused by: java.io.IOException: a.b" };
+        String[] expected = {
+                "INFO starting",
+                "Exception in thread \"main\" com.example.Error: failed",
+                "\tat com.example.Service.check(SourceFile:40)",
+                "\tat com.example.Service.start(SourceFile:24)",
+                "\tat com.example.Service.stop|close(SourceFile)",
+                "\tat com.example.Main.main(SourceFile:8)",
+                "\tat java.lang.Thread.run(Thread.java:750)",
+                "Caused by: java.io.IOException: com.example.Service" };
+        StringBuilder in = new StringBuilder();
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            in.append(join(log));
+            out.append(join(expected));
+        }
+        File input = folder.newFile("app.log");
+        File output = new File(folder.getRoot(), "app.log.retraced");
+        Files.write(input.toPath(), in.toString().getBytes("UTF-8"));
+
+        Retracer retracer = new Retracer(index);
+        retracer.retrace(input, output, 4, 1000);
+        Assert.assertEquals(out.toString(), new String(Files.readAllBytes(output.toPath()), "UTF-8"));
+        Assert.assertEquals(500 * log.length, retracer.getLines());
+        Assert.assertEquals(500 * 5, retracer.getRetraced());
+    }
+
+    @Test
+    public void splitsLinesLongerThanTwoChunksBetweenCharacters() throws Exception {
+        StringBuilder longLine = new StringBuilder("payload ");
+        for (int i = 0; i < 5000; i++) {
+            longLine.append(i % 3 == 0 ? "\u00e9" : i % 3 == 1 ? "\u20ac" : "\ud83d\ude00");
+        }
+        String[] log = { longLine.toString(), "\tat a.b.a(SourceFile:3)", longLine.toString() };
+        String[] expected = { longLine.toString(), "\tat com.example.Service.start(SourceFile:22)",
+                longLine.toString() };
+        File input = folder.newFile("app.log");
+        File output = new File(folder.getRoot(), "app.log.retraced");
+        Files.write(input.toPath(), join(log).getBytes("UTF-8"));
+
+        Retracer retracer = new Retracer(index);
+        retracer.retrace(input, output, 2, 100);
+        Assert.assertEquals(join(expected), new String(Files.readAllBytes(output.toPath()), "UTF-8"));
+        Assert.assertEquals(1, retracer.getRetraced());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsChunksThatCantBeDoubled() throws Exception {
+        File input = folder.newFile("app.log");
+        new Retracer(index).retrace(input, new File(folder.getRoot(), "app.log.retraced"), 1,
+                Integer.MAX_VALUE / 2 + 1);
+    }
+
+    private static String join(String[] lines) {
+        StringBuilder joined = new StringBuilder();
+        for (String line : Arrays.asList(lines)) {
+            joined.append(line).append("\r\n");
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class PhaseMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void startingAPhaseEndsThePreviousOne() {
+        PhaseMetrics metrics = new PhaseMetrics("g:a:e");
+        metrics.start("extract").read(2048).files(3);
+        metrics.current().written(1024);
+        metrics.start("proguard");
+        metrics.end();
+        metrics.current().read(1);
+
+        List<PhaseMetrics.Phase> phases = metrics.getPhases();
+        Assert.assertEquals(2, phases.size());
+        Assert.assertEquals("extract", phases.get(0).getName());
+        Assert.assertEquals("proguard", phases.get(1).getName());
+
+        String summary = metrics.summary();
+        Assert.assertTrue(summary, summary.matches("(?s).*extract +\\d+ +2k +1k +3\n.*"));
+        Assert.assertTrue(summary, summary.contains("total"));
+    }
+
+    @Test
+    public void writesJsonWithSections() {
+        PhaseMetrics metrics = new PhaseMetrics("g:a:\"quoted\"");
+        metrics.start("extract").read(10).files(1);
+        metrics.end();
+
+        String json = metrics.toJson("heap", "{\"estimate\": 1}");
+        Assert.assertTrue(json, json.contains("\"execution\": \"g:a:\\\"quoted\\\"\""));
+        Assert.assertTrue(json, json.contains("\"name\": \"extract\""));
+        Assert.assertTrue(json, json.contains("\"bytesRead\": 10, \"bytesWritten\": 0, \"files\": 1}"));
+        Assert.assertTrue(json, json.contains("\"heap\": {\"estimate\": 1}\n}"));
+    }
+
+    @Test
+    public void executionsAppendToOneTrace() throws IOException {
+        File trace = new File(folder.getRoot(), "traces/trace.json");
+        PhaseMetrics first = new PhaseMetrics("g:a:first");
+        first.start("extract");
+        first.end();
+        first.appendTrace(trace);
+        PhaseMetrics second = new PhaseMetrics("g:b:second");
+        second.start("proguard");
+        second.end();
+        second.appendTrace(trace);
+
+        String events = new String(Files.readAllBytes(trace.toPath()), "UTF-8");
+        Assert.assertTrue(events, events.startsWith("[\n{\"name\": \"process_name\""));
+        Assert.assertEquals(events.indexOf('['), events.lastIndexOf('['));
+        Assert.assertTrue(events, events.contains("\"name\": \"g:a:first\""));
+        Assert.assertTrue(events, events.contains("\"name\": \"proguard\", \"cat\": \"proguard\", \"ph\": \"X\""));
+    }
+
+    @Test
+    public void quotesControlCharacters() {
+        Assert.assertEquals("\"a\\\\b\\u000a\"", PhaseMetrics.quote("a\\b\n"));
+    }
+}
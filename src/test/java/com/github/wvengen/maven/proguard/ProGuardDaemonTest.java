@@ -0,0 +1,86 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ProGuardDaemonTest {
+
+    private static final long IDLE_TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void startsAWorkerOnceAndRelaysItsOutput() throws Exception {
+        File jar = FakeProGuard.jar(folder);
+        File registry = folder.newFolder("daemons");
+        File baseDir = folder.newFolder("module");
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        Assert.assertEquals(0, ProGuardDaemon.execute(registry, jar, "proguard.ProGuard",
+                Collections.<String>emptyList(), IDLE_TIMEOUT, Arrays.asList("first", "-injars", "a.jar"), baseDir,
+                first));
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        Assert.assertEquals(0, ProGuardDaemon.execute(registry, jar, "proguard.ProGuard",
+                Collections.<String>emptyList(), IDLE_TIMEOUT, Collections.singletonList("second"), baseDir, second));
+
+        String firstJvm = jvm(first.toString("UTF-8"), "processed first -injars a.jar @module in ");
+        String secondJvm = jvm(second.toString("UTF-8"), "processed second @module in ");
+        Assert.assertEquals(firstJvm, secondJvm);
+        Assert.assertNotEquals(ManagementFactory.getRuntimeMXBean().getName(), firstJvm);
+        Assert.assertEquals(1, registry.list(new java.io.FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".properties");
+            }
+        }).length);
+    }
+
+    @Test
+    public void reportsFailuresAndUnsupportedMainClasses() throws Exception {
+        File jar = FakeProGuard.jar(folder);
+        File registry = folder.newFolder("daemons");
+        List<String> noJvmArgs = Collections.emptyList();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(1, ProGuardDaemon.execute(registry, jar, "proguard.ProGuard", noJvmArgs, IDLE_TIMEOUT,
+                Arrays.asList("broken", "-fail"), folder.getRoot(), out));
+        Assert.assertTrue(out.toString("UTF-8"), out.toString("UTF-8").contains("Error: java.io.IOException: failed broken"));
+
+        try {
+            ProGuardDaemon.execute(registry, jar, "proguard.Missing", noJvmArgs, IDLE_TIMEOUT,
+                    Collections.<String>emptyList(), folder.getRoot(), new ByteArrayOutputStream());
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("proguard.Missing"));
+        }
+    }
+
+    @Test
+    public void keysWorkersByJvmArguments() throws Exception {
+        File jar = FakeProGuard.jar(folder);
+        String plain = ProGuardDaemon.compatibilityKey(jar, "proguard.ProGuard", Collections.<String>emptyList());
+        Assert.assertEquals(plain,
+                ProGuardDaemon.compatibilityKey(jar, "proguard.ProGuard", Collections.<String>emptyList()));
+        Assert.assertNotEquals(plain,
+                ProGuardDaemon.compatibilityKey(jar, "proguard.ProGuard", Collections.singletonList("-Xmx1g")));
+        Assert.assertNotEquals(plain,
+                ProGuardDaemon.compatibilityKey(jar, "proguard.DexGuard", Collections.<String>emptyList()));
+    }
+
+    private static String jvm(String output, String prefix) {
+        int start = output.indexOf(prefix);
+        Assert.assertTrue(output, start >= 0);
+        int end = output.indexOf('\n', start);
+        return output.substring(start + prefix.length(), end).trim();
+    }
+}
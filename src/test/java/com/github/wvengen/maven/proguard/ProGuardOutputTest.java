@@ -0,0 +1,46 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class ProGuardOutputTest {
+
+    @Test
+    public void parsesVerboseOutput() {
+        ProGuardOutput output = new ProGuardOutput();
+        Assert.assertFalse(output.line("ProGuard, version 5.2.1", 0));
+        Assert.assertTrue(output.line("Reading input...", 0));
+        Assert.assertFalse(output.line("Reading program jar [/tmp/app.jar] (filtered)", 0));
+        Assert.assertFalse(output.line("Reading library jar [/tmp/lib.jar]", 0));
+        Assert.assertTrue(output.line("Shrinking...", 100));
+        Assert.assertTrue(output.line("  Original number of program classes: 120", 100));
+        Assert.assertTrue(output.line("  Final number of program classes:    80", 100));
+        Assert.assertTrue(output.line("Optimizing (pass 1/2)...", 150));
+        Assert.assertTrue(output.line("  Number of finalized classes:                 3", 150));
+        Assert.assertTrue(output.line("Optimizing (pass 2/2)...", 170));
+        Assert.assertTrue(output.line("  Number of finalized classes:                 2", 170));
+        Assert.assertTrue(output.line("Shrinking...", 200));
+        Assert.assertTrue(output.line("  Original number of program classes: 80", 200));
+        Assert.assertTrue(output.line("  Final number of program classes:    75", 200));
+        Assert.assertTrue(output.line("Writing output...", 220));
+        Assert.assertFalse(output.line("Preparing output jar [/tmp/app-small.jar] (filtered)", 220));
+        output.finish(4096);
+
+        Map<String, String> properties = output.toProperties("");
+        Assert.assertEquals("1", properties.get("programJars"));
+        Assert.assertEquals("1", properties.get("libraryJars"));
+        Assert.assertEquals("120", properties.get("programClasses.input"));
+        Assert.assertEquals("75", properties.get("programClasses.kept"));
+        Assert.assertEquals("45", properties.get("programClasses.removed"));
+        Assert.assertEquals("2", properties.get("optimizationPasses"));
+        Assert.assertEquals("5", properties.get("optimization.finalizedClasses"));
+        Assert.assertEquals("100", properties.get("stage.readingInput.millis"));
+        Assert.assertEquals("70", properties.get("stage.shrinking.millis"));
+        Assert.assertEquals("50", properties.get("stage.optimizing.millis"));
+        Assert.assertEquals("4096", properties.get("outputBytes"));
+        Assert.assertTrue(output.toJson().contains("\"/tmp/app-small.jar\""));
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ProGuardSchedulerTest {
+
+    @Test
+    public void runsWithinTheBudgetAreAdmittedAtOnce() throws InterruptedException {
+        ProGuardScheduler scheduler = new ProGuardScheduler(100);
+        Assert.assertEquals(60, scheduler.acquire(60));
+        Assert.assertEquals(40, scheduler.acquire(40));
+        Assert.assertEquals(100, scheduler.getUsed());
+        scheduler.release(60);
+        scheduler.release(40);
+        Assert.assertEquals(0, scheduler.getUsed());
+    }
+
+    @Test
+    public void aRunLargerThanTheBudgetRunsAlone() throws InterruptedException {
+        ProGuardScheduler scheduler = new ProGuardScheduler(100);
+        Assert.assertEquals(100, scheduler.acquire(500));
+        Acquire small = Acquire.start(scheduler, 1);
+        Assert.assertFalse(small.admitted(200));
+        scheduler.release(100);
+        Assert.assertTrue(small.admitted(5000));
+    }
+
+    @Test
+    public void runsAreAdmittedInTheOrderTheyAsked() throws InterruptedException {
+        ProGuardScheduler scheduler = new ProGuardScheduler(100);
+        long taken = scheduler.acquire(60);
+        Acquire large = Acquire.start(scheduler, 60);
+        Assert.assertFalse(large.admitted(200));
+        // fits, but must not overtake the large run
+        Acquire small = Acquire.start(scheduler, 10);
+        Assert.assertFalse(small.admitted(200));
+
+        scheduler.release(taken);
+        Assert.assertTrue(large.admitted(5000));
+        Assert.assertTrue(small.admitted(5000));
+        Assert.assertEquals(70, scheduler.getUsed());
+    }
+
+    @Test
+    public void anInterruptedRunGivesUpItsTurn() throws InterruptedException {
+        ProGuardScheduler scheduler = new ProGuardScheduler(100);
+        scheduler.acquire(60);
+        Acquire large = Acquire.start(scheduler, 60);
+        Acquire small = Acquire.start(scheduler, 10);
+        Assert.assertFalse(small.admitted(200));
+
+        large.thread.interrupt();
+        Assert.assertTrue(small.admitted(5000));
+        Assert.assertFalse(large.admitted(200));
+        Assert.assertEquals(70, scheduler.getUsed());
+    }
+
+    @Test
+    public void heapOfUsesMaxMemoryOrAShareOfPhysicalMemory() {
+        Assert.assertEquals(512L << 20, ProGuardScheduler.heapOf("512m"));
+        Assert.assertEquals(ProGuardScheduler.physicalMemory() / 4, ProGuardScheduler.heapOf(null));
+        Assert.assertTrue(ProGuardScheduler.physicalMemory() > 0);
+    }
+
+    private static final class Acquire implements Runnable {
+
+        private final ProGuardScheduler scheduler;
+
+        private final long heap;
+
+        private final Thread thread = new Thread(this);
+
+        private volatile boolean admitted;
+
+        private Acquire(ProGuardScheduler scheduler, long heap) {
+            this.scheduler = scheduler;
+            this.heap = heap;
+        }
+
+        static Acquire start(ProGuardScheduler scheduler, long heap) throws InterruptedException {
+            Acquire acquire = new Acquire(scheduler, heap);
+            acquire.thread.setDaemon(true);
+            acquire.thread.start();
+            // let it queue up before the next one
+            TimeUnit.MILLISECONDS.sleep(50);
+            return acquire;
+        }
+
+        public void run() {
+            try {
+                scheduler.acquire(heap);
+                admitted = true;
+            } catch (InterruptedException e) {
+                // gave up
+            }
+        }
+
+        boolean admitted(long millis) throws InterruptedException {
+            thread.join(millis);
+            return admitted;
+        }
+    }
+}
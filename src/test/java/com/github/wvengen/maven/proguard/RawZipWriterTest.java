@@ -0,0 +1,182 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class RawZipWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void copiesEntriesWithoutRecompressing() throws IOException {
+        File source = folder.newFile("in.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(source));
+        try {
+            out.putNextEntry(new ZipEntry("a/"));
+            out.putNextEntry(new ZipEntry("a/deflated.txt"));
+            out.write(repeat("deflated ", 1000));
+            ZipEntry stored = new ZipEntry("a/stored.txt");
+            byte[] storedContent = "stored".getBytes("UTF-8");
+            CRC32 crc = new CRC32();
+            crc.update(storedContent);
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(storedContent.length);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(storedContent);
+            out.putNextEntry(new ZipEntry("removed.txt"));
+            out.write(1);
+        } finally {
+            out.close();
+        }
+
+        File target = new File(folder.getRoot(), "out.zip");
+        RawZipFile in = new RawZipFile(source);
+        RawZipWriter writer = new RawZipWriter(target);
+        try {
+            writer.add("added.txt", new ByteArrayInputStream(repeat("added ", 100)), 0L, Deflater.DEFAULT_COMPRESSION);
+            for (RawZipFile.Entry entry : in.getEntries()) {
+                if (!entry.getName().equals("removed.txt")) {
+                    writer.copy(in, entry);
+                }
+            }
+        } finally {
+            writer.close();
+            in.close();
+        }
+
+        ZipFile result = new ZipFile(target);
+        try {
+            Assert.assertEquals(4, result.size());
+            Assert.assertNull(result.getEntry("removed.txt"));
+            Assert.assertTrue(result.getEntry("a/").isDirectory());
+            Assert.assertArrayEquals(repeat("added ", 100), read(result, "added.txt"));
+            Assert.assertArrayEquals(repeat("deflated ", 1000), read(result, "a/deflated.txt"));
+            Assert.assertArrayEquals("stored".getBytes("UTF-8"), read(result, "a/stored.txt"));
+            Assert.assertEquals(ZipEntry.STORED, result.getEntry("a/stored.txt").getMethod());
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void compressesInParallelInAddOrder() throws IOException {
+        File dir = folder.newFolder("tree");
+        for (int i = 0; i < 50; i++) {
+            File file = new File(dir, "p" + (i % 5) + "/F" + i + (i % 10 == 0 ? ".png" : ".class"));
+            file.getParentFile().mkdirs();
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(repeat("entry " + i + " ", 200 + i));
+            } finally {
+                out.close();
+            }
+            file.setLastModified(1400000000000L);
+        }
+        for (int i = 0; i < 5; i++) {
+            new File(dir, "p" + i).setLastModified(1400000000000L);
+        }
+
+        File sequential = new File(folder.getRoot(), "sequential.zip");
+        File parallel = new File(folder.getRoot(), "parallel.zip");
+        for (File target : new File[] { sequential, parallel }) {
+            RawZipWriter writer = new RawZipWriter(target, new Compression(Deflater.DEFAULT_COMPRESSION,
+                    target == parallel ? 4 : 1, Compression.DEFAULT_STORED_EXTENSIONS));
+            try {
+                writer.addDirectory("META-INF/", 0L);
+                writer.addTree("classes/", dir);
+                writer.add("last.txt", new ByteArrayInputStream(repeat("last ", 10)), 0L);
+            } finally {
+                writer.close();
+            }
+        }
+
+        Assert.assertArrayEquals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+        ZipFile result = new ZipFile(parallel);
+        try {
+            Assert.assertEquals(ZipEntry.STORED, result.getEntry("classes/p0/F10.png").getMethod());
+            Assert.assertEquals(ZipEntry.DEFLATED, result.getEntry("classes/p1/F11.class").getMethod());
+            Assert.assertArrayEquals(repeat("entry 11 ", 211), read(result, "classes/p1/F11.class"));
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void largeFilesKeepAddOrderWithinTheByteBudget() throws IOException {
+        File dir = folder.newFolder("large");
+        for (int i = 0; i < 12; i++) {
+            // more than the pending bytes of two threads together, and one file above the parallel size
+            File file = new File(dir, "F" + (i < 10 ? "0" : "") + i + ".class");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(repeat("large " + i + " ", i == 5 ? 200000 : 100000));
+            } finally {
+                out.close();
+            }
+            file.setLastModified(1400000000000L);
+        }
+
+        File sequential = new File(folder.getRoot(), "sequential.zip");
+        File parallel = new File(folder.getRoot(), "parallel.zip");
+        for (File target : new File[] { sequential, parallel }) {
+            RawZipWriter writer = new RawZipWriter(target, new Compression(Deflater.DEFAULT_COMPRESSION,
+                    target == parallel ? 2 : 1, Compression.DEFAULT_STORED_EXTENSIONS));
+            try {
+                writer.addTree("", dir);
+            } finally {
+                writer.close();
+            }
+        }
+
+        Assert.assertArrayEquals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+        ZipFile result = new ZipFile(parallel);
+        try {
+            Assert.assertEquals(12, result.size());
+            Assert.assertArrayEquals(repeat("large 5 ", 200000), read(result, "F05.class"));
+            Assert.assertArrayEquals(repeat("large 11 ", 100000), read(result, "F11.class"));
+        } finally {
+            result.close();
+        }
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        InputStream in = zip.getInputStream(zip.getEntry(name));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] repeat(String value, int count) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString().getBytes("UTF-8");
+    }
+}
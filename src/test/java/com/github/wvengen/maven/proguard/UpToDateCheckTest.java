@@ -0,0 +1,120 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class UpToDateCheckTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void jarTimestampsAreIgnored() throws IOException {
+        File jar = writeJar("lib.jar", 1000L, "a");
+        String first = fingerprint(jar);
+        writeJar("lib.jar", 5000000L, "a");
+        Assert.assertEquals(first, fingerprint(jar));
+    }
+
+    @Test
+    public void jarContentChangesFingerprint() throws IOException {
+        File jar = writeJar("lib.jar", 1000L, "a");
+        String first = fingerprint(jar);
+        writeJar("lib.jar", 1000L, "b");
+        Assert.assertFalse(first.equals(fingerprint(jar)));
+    }
+
+    @Test
+    public void restoresStoredOutputs() throws IOException {
+        File jar = writeJar("in.jar", 1000L, "a");
+        File out = writeJar("out.jar", 1000L, "processed");
+        File map = folder.newFile("map.txt");
+        List<File> outputs = Arrays.asList(out, map);
+
+        UpToDateCheck check = new UpToDateCheck(new File(folder.getRoot(), "state"));
+        String fingerprint = fingerprint(jar);
+        Assert.assertFalse(check.restore(fingerprint, outputs));
+        check.store(fingerprint, outputs);
+
+        Assert.assertTrue(out.delete());
+        Assert.assertTrue(map.delete());
+        Assert.assertTrue(check.restore(fingerprint, outputs));
+        Assert.assertTrue(out.isFile());
+        Assert.assertTrue(map.isFile());
+        Assert.assertFalse(check.restore(fingerprint + "0", outputs));
+    }
+
+    @Test
+    public void filesInSingleArgumentOptionsChangeFingerprint() throws IOException {
+        writeJar("lib.jar", 1000L, "a");
+        write("extra.pro", "-keep class a.A");
+        List<String> args = Arrays.asList("-libraryjars lib.jar(!META-INF/**)", "-include extra.pro", "-dontobfuscate");
+        String first = fingerprint(args);
+        Assert.assertEquals(first, fingerprint(args));
+
+        write("extra.pro", "-keep class a.B");
+        String second = fingerprint(args);
+        Assert.assertFalse(first.equals(second));
+
+        writeJar("lib.jar", 1000L, "b");
+        Assert.assertFalse(second.equals(fingerprint(args)));
+    }
+
+    @Test
+    public void filesIncludedFromSingleArgumentOptionsChangeFingerprint() throws IOException {
+        writeJar("lib.jar", 1000L, "a");
+        write("extra.pro", "-libraryjars lib.jar");
+        List<String> args = Arrays.asList("@extra.pro");
+        String first = fingerprint(args);
+        writeJar("lib.jar", 1000L, "b");
+        Assert.assertFalse(first.equals(fingerprint(args)));
+    }
+
+    private String fingerprint(File jar) throws IOException {
+        return fingerprint(Arrays.asList("-injars", "'" + jar + "'(!META-INF/maven/**)", "-dontobfuscate"));
+    }
+
+    private String fingerprint(List<String> args) throws IOException {
+        UpToDateCheck check = new UpToDateCheck(new File(folder.getRoot(), "state"));
+        return check.fingerprint(args, Collections.<File>emptyList(), folder.getRoot(),
+                Collections.singletonMap(folder.getRoot(), "basedir"), Collections.emptyList());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File writeJar(String name, long time, String content) throws IOException {
+        File jar = new File(folder.getRoot(), name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            ZipEntry entry = new ZipEntry("a/A.class");
+            entry.setTime(time);
+            out.putNextEntry(entry);
+            out.write(content.getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
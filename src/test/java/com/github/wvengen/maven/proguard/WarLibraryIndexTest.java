@@ -0,0 +1,103 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class WarLibraryIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsLibrariesByName() throws IOException {
+        WarArchive war = writeWar(lib("libA-1.0.jar", "com.mahifx", "libA", "1.0"),
+                lib("libA-utils-1.0.jar", "com.mahifx", "libA-utils", "1.0"),
+                lib("org.other-libB-2.0.jar", "org.other", "libB", "2.0"));
+        try {
+            WarLibraryIndex index = war.getLibraryIndex();
+            Assert.assertEquals("libA-1.0.jar", index.find(artifact("com.mahifx", "libA", "1.0")));
+            Assert.assertEquals("libA-utils-1.0.jar", index.find(artifact("com.mahifx", "libA-utils", "1.0")));
+            Assert.assertEquals("org.other-libB-2.0.jar", index.find(artifact("org.other", "libB", "2.0")));
+            Assert.assertEquals("libA-1.0.jar", index.find(artifact("com.mahifx", "libA", "1.1")));
+            Assert.assertNull(index.find(artifact("com.mahifx", "libC", "1.0")));
+        } finally {
+            war.close();
+        }
+    }
+
+    @Test
+    public void resolvesAmbiguousNamesFromMavenDescriptor() throws IOException {
+        WarArchive war = writeWar(lib("core-1.0-patched.jar", "org.first", "core", "1.0"),
+                lib("core-1.0-repackaged.jar", "org.second", "core", "1.0"));
+        try {
+            WarLibraryIndex index = war.getLibraryIndex();
+            DefaultArtifact second = artifact("org.second", "core", "1.0");
+            index.prepare(Arrays.<Artifact>asList(second));
+            Assert.assertEquals("core-1.0-repackaged.jar", index.find(second));
+            Assert.assertEquals("core-1.0-patched.jar", index.find(artifact("org.first", "core", "1.0")));
+        } finally {
+            war.close();
+        }
+    }
+
+    @Test
+    public void rejectsLibrariesOutsideTheLibraryDirectory() throws IOException {
+        WarArchive war = writeWar(lib("..", "com.mahifx", "libA", "1.0"));
+        try {
+            war.extractLibrary("..");
+            Assert.fail("extracted a library outside of " + war.getLibraryDir());
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage().contains("is outside of"));
+        } finally {
+            war.close();
+        }
+    }
+
+    private WarArchive writeWar(byte[][]... libs) throws IOException {
+        File file = new File(folder.getRoot(), "test.war");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (byte[][] lib : libs) {
+                out.putNextEntry(new ZipEntry(WarArchive.LIB + new String(lib[0], "UTF-8")));
+                out.write(lib[1]);
+            }
+        } finally {
+            out.close();
+        }
+        return new WarArchive(file, folder.newFolder("work"), new SystemStreamLog());
+    }
+
+    private static byte[][] lib(String name, String groupId, String artifactId, String version) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(jar);
+        try {
+            out.putNextEntry(new ZipEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+            out.write(("groupId=" + groupId + "\nartifactId=" + artifactId + "\nversion=" + version + "\n")
+                    .getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return new byte[][] { name.getBytes("UTF-8"), jar.toByteArray() };
+    }
+
+    private static DefaultArtifact artifact(String groupId, String artifactId, String version) {
+        return new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersion(version), "compile", "jar",
+                null, new DefaultArtifactHandler("jar"));
+    }
+}
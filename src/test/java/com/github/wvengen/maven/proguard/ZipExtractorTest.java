@@ -0,0 +1,75 @@
+package com.github.wvengen.maven.proguard;
+
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipExtractorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void extractsEntriesBelowPrefix() throws IOException {
+        File zip = folder.newFile("test.war");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            for (int i = 0; i < 200; i++) {
+                out.putNextEntry(new ZipEntry("WEB-INF/classes/p" + (i % 7) + "/C" + i + ".class"));
+                out.write(("class " + i).getBytes("UTF-8"));
+            }
+            byte[] stored = new byte[100000];
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry entry = new ZipEntry("WEB-INF/classes/big.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(stored);
+            out.putNextEntry(new ZipEntry("index.html"));
+            out.write(1);
+        } finally {
+            out.close();
+        }
+
+        File dest = new File(folder.getRoot(), "classes");
+        RawZipFile in = new RawZipFile(zip);
+        try {
+            Assert.assertEquals(201, new ZipExtractor(4).extract(in, "WEB-INF/classes/", dest));
+        } finally {
+            in.close();
+        }
+        Assert.assertEquals("class 42", new String(Files.readAllBytes(new File(dest, "p0/C42.class").toPath()), "UTF-8"));
+        Assert.assertEquals(100000, new File(dest, "big.bin").length());
+        Assert.assertFalse(new File(dest, "index.html").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEntriesOutsideTarget() throws IOException {
+        File zip = folder.newFile("evil.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(new ZipEntry("WEB-INF/classes/../../../evil.txt"));
+            out.write(1);
+        } finally {
+            out.close();
+        }
+        RawZipFile in = new RawZipFile(zip);
+        try {
+            new ZipExtractor(1).extract(in, "WEB-INF/classes/", new File(folder.getRoot(), "classes"));
+        } finally {
+            in.close();
+        }
+    }
+}